@@ -0,0 +1,144 @@
+package com.mycompany.etstrainsystem.benchmarks;
+
+import com.mycompany.etstrainsystem.engine.BfsTraversal;
+import com.mycompany.etstrainsystem.engine.Graph;
+import com.mycompany.etstrainsystem.engine.MultiSourceBfs;
+import com.mycompany.etstrainsystem.engine.NetworkCriticality;
+import com.mycompany.etstrainsystem.engine.NetworkCuts;
+import com.mycompany.etstrainsystem.engine.ParallelBfs;
+import com.mycompany.etstrainsystem.engine.ReachabilityMatrix;
+import com.mycompany.etstrainsystem.engine.RouteFinder;
+import com.mycompany.etstrainsystem.engine.WeightedRouter;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BfsBenchmark {
+
+    @Param({"LINE", "GRID", "RANDOM_SPARSE", "SCALE_FREE"})
+    public GraphShape shape;
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private Graph graph;
+    private ParallelBfs parallelBfs;
+    private MultiSourceBfs multiSourceBfs;
+    private NetworkCriticality criticality;
+    private RouteFinder routeFinder;
+    private WeightedRouter weightedRouter;
+    private int[] sources;
+    private int[] manySources;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        graph = shape.build(size, 42);
+        parallelBfs = new ParallelBfs(graph);
+        multiSourceBfs = new MultiSourceBfs(graph);
+        criticality = new NetworkCriticality(graph);
+        routeFinder = new RouteFinder(graph);
+        weightedRouter = new WeightedRouter(graph);
+        Random random = new Random(7);
+        sources = new int[64];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = random.nextInt(size);
+        }
+        manySources = new int[256];
+        for (int i = 0; i < manySources.length; i++) {
+            manySources[i] = random.nextInt(size);
+        }
+    }
+
+    private int nextSource() {
+        next = (next + 1) & (sources.length - 1);
+        return sources[next];
+    }
+
+    @Benchmark
+    public List<String> reachable() {
+        return graph.bfs(GraphShape.name(nextSource()));
+    }
+
+    /** The first 100 stations of a lazy traversal; should not grow with the graph. */
+    @Benchmark
+    public void reachableFirst100(Blackhole blackhole) {
+        BfsTraversal traversal = new BfsTraversal(graph, nextSource(), BfsTraversal.UNLIMITED, 100);
+        while (traversal.hasNext()) {
+            blackhole.consume(traversal.nextInt());
+        }
+    }
+
+    @Benchmark
+    public void reachableWithin3Hops(Blackhole blackhole) {
+        BfsTraversal traversal = new BfsTraversal(graph, nextSource(), 3, BfsTraversal.UNLIMITED);
+        while (traversal.hasNext()) {
+            blackhole.consume(traversal.nextInt());
+        }
+    }
+
+    @Benchmark
+    public int[] reachableParallel() {
+        return parallelBfs.reachable(nextSource());
+    }
+
+    /** One BFS per source, for comparison with {@link #reachableFromMany()}. */
+    @Benchmark
+    public int reachableFromManySeparately() {
+        int total = 0;
+        for (int source : manySources) {
+            total += graph.bfs(GraphShape.name(source)).size();
+        }
+        return total;
+    }
+
+    @Benchmark
+    public ReachabilityMatrix reachableFromMany() {
+        return multiSourceBfs.reachable(manySources, false);
+    }
+
+    @Benchmark
+    public NetworkCuts cuts() {
+        return criticality.cuts();
+    }
+
+    /** Betweenness from 16 sampled sources; the exact scores take one source per station. */
+    @Benchmark
+    public double[] betweennessSampled() {
+        return criticality.betweenness(16, 42);
+    }
+
+    @Benchmark
+    public int[] route() {
+        return routeFinder.route(nextSource(), nextSource());
+    }
+
+    @Benchmark
+    public int[] dijkstra() {
+        return weightedRouter.dijkstra(nextSource(), nextSource());
+    }
+
+    @Benchmark
+    public int[] aStar() {
+        return weightedRouter.aStar(nextSource(), nextSource());
+    }
+
+    /** Walks every adjacency row once; the per-node cost getNeighbors used to have. */
+    @Benchmark
+    public void scanNeighbors(Blackhole blackhole) {
+        for (int id = 0; id < graph.idCount(); id++) {
+            int[] row = graph.neighbors(id);
+            for (int i = 0; i < graph.degree(id); i++) {
+                blackhole.consume(row[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.mycompany.etstrainsystem.benchmarks;
+
+import com.mycompany.etstrainsystem.engine.Graph;
+import com.mycompany.etstrainsystem.engine.MutationResult;
+import com.mycompany.etstrainsystem.engine.NodePlacer;
+import java.util.Random;
+
+/**
+ * Graph topologies the benchmarks run against. Every shape is built through
+ * the normal mutation API from a fixed seed, and stations are laid out on a
+ * grid {@link NodePlacer#MIN_NODE_DISTANCE} apart so placement checks see a
+ * valid, densely filled map.
+ */
+public enum GraphShape {
+
+    /** A single corridor: 0 - 1 - 2 - ... */
+    LINE {
+        @Override
+        void connect(Graph graph, int size, Random random) {
+            for (int i = 1; i < size; i++) {
+                graph.addEdge(name(i - 1), name(i));
+            }
+        }
+    },
+
+    /** Square lattice with each station linked to its right and lower neighbour. */
+    GRID {
+        @Override
+        void connect(Graph graph, int size, Random random) {
+            int columns = columns(size);
+            for (int i = 0; i < size; i++) {
+                if ((i + 1) % columns != 0 && i + 1 < size) {
+                    graph.addEdge(name(i), name(i + 1));
+                }
+                if (i + columns < size) {
+                    graph.addEdge(name(i), name(i + columns));
+                }
+            }
+        }
+    },
+
+    /** Uniformly random edges, about three per station on average. */
+    RANDOM_SPARSE {
+        @Override
+        void connect(Graph graph, int size, Random random) {
+            for (int i = 0; i < size * 3 / 2; i++) {
+                graph.addEdge(name(random.nextInt(size)), name(random.nextInt(size)));
+            }
+        }
+    },
+
+    /** Barabási–Albert preferential attachment, two edges per new station. */
+    SCALE_FREE {
+        @Override
+        void connect(Graph graph, int size, Random random) {
+            int[] endpoints = new int[4 * size];
+            int count = 0;
+            graph.addEdge(name(0), name(1));
+            endpoints[count++] = 0;
+            endpoints[count++] = 1;
+            for (int i = 2; i < size; i++) {
+                for (int k = 0; k < 2; k++) {
+                    int target = endpoints[random.nextInt(count)];
+                    if (graph.addEdge(name(i), name(target)) == MutationResult.OK) {
+                        endpoints[count++] = i;
+                        endpoints[count++] = target;
+                    }
+                }
+            }
+        }
+    };
+
+    public Graph build(int size, long seed) {
+        Graph graph = new Graph();
+        int columns = columns(size);
+        for (int i = 0; i < size; i++) {
+            graph.addNode(name(i), (i % columns + 1) * NodePlacer.MIN_NODE_DISTANCE,
+                    (i / columns + 1) * NodePlacer.MIN_NODE_DISTANCE);
+        }
+        connect(graph, size, new Random(seed));
+        return graph;
+    }
+
+    /** Width, and height, of the square drawing area {@link #build} fills. */
+    public static double extent(int size) {
+        return (columns(size) + 1) * NodePlacer.MIN_NODE_DISTANCE;
+    }
+
+    public static String name(int index) {
+        return "S" + index;
+    }
+
+    static int columns(int size) {
+        return Math.max(1, (int) Math.ceil(Math.sqrt(size)));
+    }
+
+    abstract void connect(Graph graph, int size, Random random);
+}
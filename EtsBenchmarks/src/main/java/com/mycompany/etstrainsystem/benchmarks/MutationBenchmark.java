@@ -0,0 +1,85 @@
+package com.mycompany.etstrainsystem.benchmarks;
+
+import com.mycompany.etstrainsystem.engine.Graph;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Edits are benchmarked in do/undo pairs so the graph stays the same size
+ * for the whole measurement.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MutationBenchmark {
+
+    @Param({"LINE", "GRID", "RANDOM_SPARSE", "SCALE_FREE"})
+    public GraphShape shape;
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private Graph graph;
+    private String[][] newEdges;
+    private String[] hubs;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        graph = shape.build(size, 42);
+        Random random = new Random(7);
+        newEdges = new String[64][];
+        for (int i = 0; i < newEdges.length; ) {
+            int a = random.nextInt(size);
+            int b = random.nextInt(size);
+            if (a != b && !graph.hasEdge(GraphShape.name(a), GraphShape.name(b))) {
+                newEdges[i++] = new String[]{GraphShape.name(a), GraphShape.name(b)};
+            }
+        }
+        // the busiest stations, where removeNode has the most edges to detach
+        hubs = new String[8];
+        int[] hubDegree = new int[hubs.length];
+        for (int id = 0; id < graph.idCount(); id++) {
+            for (int k = 0; k < hubs.length; k++) {
+                if (hubs[k] == null || graph.degree(id) > hubDegree[k]) {
+                    System.arraycopy(hubs, k, hubs, k + 1, hubs.length - k - 1);
+                    System.arraycopy(hubDegree, k, hubDegree, k + 1, hubs.length - k - 1);
+                    hubs[k] = graph.nameOf(id);
+                    hubDegree[k] = graph.degree(id);
+                    break;
+                }
+            }
+        }
+    }
+
+    /** createEdge with its duplicate check, then deleteEdge. */
+    @Benchmark
+    public Graph addAndRemoveEdge() {
+        String[] edge = newEdges[next++ & (newEdges.length - 1)];
+        graph.addEdge(edge[0], edge[1]);
+        graph.removeEdge(edge[0], edge[1]);
+        return graph;
+    }
+
+    /** deleteNode on a hub, then rebuilding it with the same edges. */
+    @Benchmark
+    public Graph removeAndRestoreHub() {
+        String hub = hubs[next++ & (hubs.length - 1)];
+        int id = graph.idOf(hub);
+        int degree = graph.degree(id);
+        int[] neighbors = Arrays.copyOf(graph.neighbors(id), degree);
+        double x = graph.x(id);
+        double y = graph.y(id);
+        graph.removeNode(hub);
+        graph.addNode(hub, x, y);
+        for (int neighbor : neighbors) {
+            graph.addEdge(hub, graph.nameOf(neighbor));
+        }
+        return graph;
+    }
+}
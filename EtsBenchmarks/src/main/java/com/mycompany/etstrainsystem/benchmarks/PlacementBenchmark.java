@@ -0,0 +1,54 @@
+package com.mycompany.etstrainsystem.benchmarks;
+
+import com.mycompany.etstrainsystem.engine.Graph;
+import com.mycompany.etstrainsystem.engine.NodePlacer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PlacementBenchmark {
+
+    @Param({"LINE", "GRID", "RANDOM_SPARSE", "SCALE_FREE"})
+    public GraphShape shape;
+
+    @Param({"1000", "10000"})
+    public int size;
+
+    private NodePlacer placer;
+    private double[] points;
+    private double extent;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Graph graph = shape.build(size, 42);
+        extent = GraphShape.extent(size);
+        placer = new NodePlacer(graph, extent, extent, new Random(7));
+        Random random = new Random(11);
+        points = new double[128];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = random.nextDouble() * extent;
+        }
+    }
+
+    @Benchmark
+    public boolean isValidNodePosition() {
+        double x = points[next++ & (points.length - 1)];
+        double y = points[next++ & (points.length - 1)];
+        return placer.isValidNodePosition(x, y);
+    }
+
+    /** The full createNode search on a map with no free spot: 200 random tries, then the grid scan. */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double[] findPosition() {
+        return placer.findPosition();
+    }
+}
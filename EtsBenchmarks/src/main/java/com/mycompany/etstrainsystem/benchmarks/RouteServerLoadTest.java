@@ -0,0 +1,209 @@
+package com.mycompany.etstrainsystem.benchmarks;
+
+import com.mycompany.etstrainsystem.engine.ConnectionThreads;
+import com.mycompany.etstrainsystem.engine.Graph;
+import com.mycompany.etstrainsystem.engine.NodePlacer;
+import com.mycompany.etstrainsystem.engine.RouteServer;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Load generator for {@link RouteServer}. Opens many connections at once,
+ * each sending random route, fastest-route and reachability queries in
+ * pipelined bursts, and reports throughput and latency percentiles. A
+ * request's latency runs from writing its burst to reading its response.
+ *
+ * Without {@code --port} it builds a {@link GraphShape} graph and serves it
+ * in-process on a free port; with one, the target server is expected to hold
+ * a graph of the same shape and size, since queries name stations
+ * {@code S0 .. S(size-1)}.
+ *
+ * <pre>
+ * java -cp EtsBenchmarks/target/benchmarks.jar com.mycompany.etstrainsystem.benchmarks.RouteServerLoadTest \
+ *     [--port P] [--shape GRID] [--size 10000] [--connections 2000] [--requests 100] [--pipeline 8]
+ * </pre>
+ */
+public class RouteServerLoadTest {
+
+    private final int port;
+    private final int size;
+    private final int connections;
+    private final int requests;
+    private final int pipeline;
+
+    RouteServerLoadTest(int port, int size, int connections, int requests, int pipeline) {
+        this.port = port;
+        this.size = size;
+        this.connections = connections;
+        this.requests = requests;
+        this.pipeline = pipeline;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = -1;
+        GraphShape shape = GraphShape.GRID;
+        int size = 10_000;
+        int connections = 2_000;
+        int requests = 100;
+        int pipeline = 8;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--shape":
+                    shape = GraphShape.valueOf(args[i + 1]);
+                    break;
+                case "--size":
+                    size = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--connections":
+                    connections = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--requests":
+                    requests = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--pipeline":
+                    pipeline = Integer.parseInt(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        RouteServer server = null;
+        if (port < 0) {
+            Graph graph = shape.build(size, 42);
+            double extent = GraphShape.extent(size);
+            server = new RouteServer(graph, new NodePlacer(graph, extent, extent, new Random(1)), null);
+            server.start(0);
+            port = server.port();
+            System.out.println("Serving " + shape + " graph of " + size + " stations on port " + port);
+        }
+        System.out.println((ConnectionThreads.virtual() ? "Virtual" : "Platform") + " threads, "
+                + connections + " connections x " + requests + " requests, pipeline depth " + pipeline);
+        try {
+            new RouteServerLoadTest(port, size, connections, requests, pipeline).run();
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+
+    void run() throws Exception {
+        ExecutorService executor = ConnectionThreads.newPerTaskExecutor("load-client");
+        CountDownLatch ready = new CountDownLatch(connections);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<long[]>> results = new ArrayList<>();
+        for (int c = 0; c < connections; c++) {
+            long seed = c;
+            results.add(executor.submit(() -> runConnection(seed, ready, go)));
+        }
+        ready.await();
+        long start = System.nanoTime();
+        go.countDown();
+
+        long[] all = new long[connections * requests];
+        int count = 0;
+        for (Future<long[]> result : results) {
+            long[] latencies = result.get();
+            System.arraycopy(latencies, 0, all, count, latencies.length);
+            count += latencies.length;
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+
+        Arrays.sort(all, 0, count);
+        System.out.printf("%d requests in %.2f s: %.0f QPS%n", count, elapsed / 1e9, count / (elapsed / 1e9));
+        System.out.printf("latency p50 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms%n",
+                percentile(all, count, 0.50), percentile(all, count, 0.99),
+                percentile(all, count, 0.999), all[count - 1] / 1e6);
+    }
+
+    private long[] runConnection(long seed, CountDownLatch ready, CountDownLatch go) throws Exception {
+        Random random = new Random(seed);
+        long[] latencies = new long[requests];
+        long[] sent = new long[pipeline];
+        try (Socket socket = connect(ready);
+             BufferedReader in = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), 1 << 16);
+             Writer out = new BufferedWriter(
+                     new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), 1 << 16)) {
+            socket.setTcpNoDelay(true);
+            go.await();
+            int done = 0;
+            while (done < requests) {
+                int burst = Math.min(pipeline, requests - done);
+                long burstStart = System.nanoTime();
+                for (int i = 0; i < burst; i++) {
+                    out.write(randomRequest(random));
+                    sent[i] = burstStart;
+                }
+                out.flush();
+                for (int i = 0; i < burst; i++) {
+                    readResponse(in);
+                    latencies[done + i] = System.nanoTime() - sent[i];
+                }
+                done += burst;
+            }
+            out.write("quit\n");
+            out.flush();
+        }
+        return latencies;
+    }
+
+    /** Connects, counting down {@code ready} even on failure so the run never hangs. */
+    private Socket connect(CountDownLatch ready) throws IOException {
+        try {
+            return new Socket(InetAddress.getLoopbackAddress(), port);
+        } finally {
+            ready.countDown();
+        }
+    }
+
+    private String randomRequest(Random random) {
+        String from = GraphShape.name(random.nextInt(size));
+        String to = GraphShape.name(random.nextInt(size));
+        int kind = random.nextInt(10);
+        if (kind < 6) {
+            return "route," + from + "," + to + "\n";
+        }
+        if (kind < 9) {
+            return "fastest," + from + "," + to + "\n";
+        }
+        return "reachable," + from + "\n";
+    }
+
+    private static void readResponse(BufferedReader in) throws IOException {
+        String header = in.readLine();
+        if (header == null) {
+            throw new IOException("Server closed the connection");
+        }
+        if (!header.startsWith("OK ")) {
+            throw new IOException("Unexpected response: " + header);
+        }
+        int rows = Integer.parseInt(header.substring(3));
+        for (int i = 0; i < rows; i++) {
+            in.readLine();
+        }
+    }
+
+    private static double percentile(long[] sorted, int count, double fraction) {
+        return sorted[Math.min(count - 1, (int) Math.ceil(fraction * count) - 1)] / 1e6;
+    }
+}
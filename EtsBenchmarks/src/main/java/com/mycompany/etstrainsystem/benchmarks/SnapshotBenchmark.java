@@ -0,0 +1,68 @@
+package com.mycompany.etstrainsystem.benchmarks;
+
+import com.mycompany.etstrainsystem.engine.Graph;
+import com.mycompany.etstrainsystem.engine.GraphSnapshot;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Readers running BFS on snapshots while one writer keeps editing. Scale the
+ * readers with {@code -tg 1,N} to see read throughput per core.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Group)
+public class SnapshotBenchmark {
+
+    @Param({"RANDOM_SPARSE", "SCALE_FREE"})
+    public GraphShape shape;
+
+    @Param({"10000"})
+    public int size;
+
+    private Graph graph;
+    private String[][] newEdges;
+
+    @Setup
+    public void setUp() {
+        graph = shape.build(size, 42);
+        Random random = new Random(7);
+        newEdges = new String[64][];
+        for (int i = 0; i < newEdges.length; ) {
+            int a = random.nextInt(size);
+            int b = random.nextInt(size);
+            if (a != b && !graph.hasEdge(GraphShape.name(a), GraphShape.name(b))) {
+                newEdges[i++] = new String[]{GraphShape.name(a), GraphShape.name(b)};
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        Random random = new Random(Thread.currentThread().getId());
+        int next;
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(1)
+    public Graph write(Cursor cursor) {
+        String[] edge = newEdges[cursor.next++ & (newEdges.length - 1)];
+        graph.addEdge(edge[0], edge[1]);
+        graph.removeEdge(edge[0], edge[1]);
+        return graph;
+    }
+
+    @Benchmark
+    @Group("readWhileWriting")
+    @GroupThreads(3)
+    public List<String> read(Cursor cursor) {
+        GraphSnapshot snapshot = graph.snapshot();
+        return snapshot.bfs(GraphShape.name(cursor.random.nextInt(size)));
+    }
+}
@@ -0,0 +1,122 @@
+package com.mycompany.etstrainsystem.benchmarks;
+
+import com.mycompany.etstrainsystem.engine.ArrivalProfile;
+import com.mycompany.etstrainsystem.engine.ConnectionScan;
+import com.mycompany.etstrainsystem.engine.Graph;
+import com.mycompany.etstrainsystem.engine.Journey;
+import com.mycompany.etstrainsystem.engine.Timetable;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Connection Scan queries on a full-day timetable: one line per 50
+ * stations, each a 40-stop walk over the graph, served in both directions
+ * every 10 minutes from 05:00 to midnight with 2 minutes between stops.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TimetableBenchmark {
+
+    private static final int STOPS = 40;
+    private static final int HEADWAY = 600;
+    private static final int HOP_TIME = 120;
+    private static final int FIRST_TRAIN = 5 * 3600;
+    private static final int LAST_TRAIN = 24 * 3600;
+
+    @Param({"GRID", "SCALE_FREE"})
+    public GraphShape shape;
+
+    @Param({"1000", "10000"})
+    public int size;
+
+    private Timetable timetable;
+    private ConnectionScan scan;
+    private int[] stations;
+    private int[] times;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Graph graph = shape.build(size, 42);
+        timetable = build(graph, new Random(7));
+        scan = new ConnectionScan(timetable);
+        Random random = new Random(11);
+        stations = new int[256];
+        times = new int[256];
+        for (int i = 0; i < stations.length; i++) {
+            stations[i] = random.nextInt(timetable.stationCount());
+            times[i] = 6 * 3600 + random.nextInt(14 * 3600);
+        }
+    }
+
+    static Timetable build(Graph graph, Random random) {
+        Timetable.Builder builder = new Timetable.Builder(graph);
+        int lines = Math.max(1, graph.nodeCount() / 50);
+        for (int line = 0; line < lines; line++) {
+            int[] route = walk(graph, random);
+            for (int start = FIRST_TRAIN; start < LAST_TRAIN; start += HEADWAY) {
+                addTrip(builder, graph, "L" + line + "-up-" + start, route, start, false);
+                addTrip(builder, graph, "L" + line + "-down-" + start, route, start, true);
+            }
+        }
+        return builder.build();
+    }
+
+    /** A walk of up to {@link #STOPS} stations that never revisits one. */
+    private static int[] walk(Graph graph, Random random) {
+        int[] route = new int[STOPS];
+        boolean[] used = new boolean[graph.idCount()];
+        int current = random.nextInt(graph.idCount());
+        int length = 0;
+        while (length < STOPS) {
+            route[length++] = current;
+            used[current] = true;
+            int next = -1;
+            int[] row = graph.neighbors(current);
+            for (int tries = 0; tries < 8 && graph.degree(current) > 0; tries++) {
+                int candidate = row[random.nextInt(graph.degree(current))];
+                if (!used[candidate]) {
+                    next = candidate;
+                    break;
+                }
+            }
+            if (next < 0) {
+                break;
+            }
+            current = next;
+        }
+        return Arrays.copyOf(route, length);
+    }
+
+    private static void addTrip(Timetable.Builder builder, Graph graph, String trip, int[] route, int start, boolean reverse) {
+        for (int i = 0; i < route.length; i++) {
+            int station = route[reverse ? route.length - 1 - i : i];
+            int time = start + i * HOP_TIME;
+            builder.addStop(trip, graph.nameOf(station), time, i == route.length - 1 ? -1 : time);
+        }
+    }
+
+    private int nextQuery() {
+        next = (next + 1) & (stations.length - 1);
+        return next;
+    }
+
+    @Benchmark
+    public Journey earliestArrival() {
+        int i = nextQuery();
+        return scan.earliestArrival(stations[i], stations[(i + 1) & (stations.length - 1)], times[i]);
+    }
+
+    /** Every journey over a one-hour departure window. */
+    @Benchmark
+    public ArrivalProfile profile() {
+        int i = nextQuery();
+        return scan.profile(stations[i], stations[(i + 1) & (stations.length - 1)], times[i], times[i] + 3600);
+    }
+}
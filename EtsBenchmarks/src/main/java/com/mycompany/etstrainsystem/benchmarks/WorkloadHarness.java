@@ -0,0 +1,354 @@
+package com.mycompany.etstrainsystem.benchmarks;
+
+import com.mycompany.etstrainsystem.engine.BfsTraversal;
+import com.mycompany.etstrainsystem.engine.ConnectivityIndex;
+import com.mycompany.etstrainsystem.engine.Graph;
+import com.mycompany.etstrainsystem.engine.LatencyHistogram;
+import com.mycompany.etstrainsystem.engine.Metrics;
+import com.mycompany.etstrainsystem.engine.NetworkGenerator;
+import com.mycompany.etstrainsystem.engine.RouteCache;
+import com.mycompany.etstrainsystem.engine.RouteFinder;
+import com.mycompany.etstrainsystem.engine.WeightedRouter;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Headless end-to-end load test. For every scenario, a topology and size,
+ * it generates a network with {@link NetworkGenerator}, wires up the same
+ * engine pieces the CLI uses, and replays a seeded mix of queries and edits
+ * on one thread. Most queries start from a small set of busy stations, the
+ * way dashboards and booking front ends ask the same questions again.
+ *
+ * Each scenario reports throughput, latency percentiles per operation, the
+ * heap the graph and its indexes hold once collected, and the garbage
+ * collector's stop-the-world pauses during the measured run. A warm-up of a
+ * fifth as many operations runs first and is not counted. The latencies go
+ * to {@link Metrics} histograms named {@code workload.*}, so a JMX console
+ * can watch them while the harness runs.
+ *
+ * <pre>
+ * java -Xmx8g -cp EtsBenchmarks/target/benchmarks.jar com.mycompany.etstrainsystem.benchmarks.WorkloadHarness \
+ *     [--topologies CORRIDOR,GRID,HUB_AND_SPOKE,SCALE_FREE] [--sizes 1000,10000,100000] \
+ *     [--ops 20000] [--writes 10] [--seed 42]
+ * </pre>
+ */
+public class WorkloadHarness {
+
+    private static final int HOT_STATIONS = 256;
+    private static final int HOT_SHARE_PERCENT = 80;
+    private static final int NEARBY_HOPS = 3;
+    private static final int NEARBY_LIMIT = 1000;
+    private static final long CACHE_IDS = 1 << 22;
+
+    private static final String[] OPERATIONS = {
+        "route", "fastest", "nearby", "connected", "addEdge", "removeEdge", "addNode", "removeNode"
+    };
+
+    private final int operations;
+    private final int writePercent;
+    private final long seed;
+    private final LatencyHistogram gcPauses = Metrics.histogram("workload.gcPause");
+    private final List<String> summary = new ArrayList<>();
+
+    WorkloadHarness(int operations, int writePercent, long seed) {
+        this.operations = operations;
+        this.writePercent = writePercent;
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) {
+        List<NetworkGenerator.Topology> topologies = List.of(NetworkGenerator.Topology.values());
+        List<Integer> sizes = List.of(1_000, 10_000, 100_000);
+        int operations = 20_000;
+        int writePercent = 10;
+        long seed = 42;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--topologies":
+                    List<NetworkGenerator.Topology> chosen = new ArrayList<>();
+                    for (String name : args[i + 1].split(",")) {
+                        chosen.add(NetworkGenerator.Topology.valueOf(name.trim()));
+                    }
+                    topologies = chosen;
+                    break;
+                case "--sizes":
+                    List<Integer> parsed = new ArrayList<>();
+                    for (String size : args[i + 1].split(",")) {
+                        parsed.add(Integer.parseInt(size.trim()));
+                    }
+                    sizes = parsed;
+                    break;
+                case "--ops":
+                    operations = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--writes":
+                    writePercent = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[i + 1]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        WorkloadHarness harness = new WorkloadHarness(operations, writePercent, seed);
+        harness.watchCollectors();
+        for (int size : sizes) {
+            for (NetworkGenerator.Topology topology : topologies) {
+                harness.runScenario(topology, size);
+            }
+        }
+        System.out.printf("%n%-14s %9s %9s %9s %10s %9s %9s %9s %9s %7s %9s%n", "scenario", "stations", "edges",
+                "build ms", "ops/s", "p50 ms", "p99 ms", "p99.9 ms", "heap MB", "pauses", "max ms");
+        harness.summary.forEach(System.out::println);
+    }
+
+    void runScenario(NetworkGenerator.Topology topology, int size) {
+        long heapBefore = collectedHeap();
+        Graph graph = new Graph();
+        long buildStart = System.nanoTime();
+        new NetworkGenerator(topology, size, seed).load(graph);
+        long buildTime = System.nanoTime() - buildStart;
+        Workload workload = new Workload(graph, new Random(seed));
+        System.out.printf("%n%s, %d stations, %d edges, %d components: generated in %.0f ms%n", topology, size,
+                graph.edgeCount(), workload.connectivity.componentCount(), buildTime / 1e6);
+
+        LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            latencies[op] = Metrics.histogram("workload." + OPERATIONS[op]);
+        }
+        LatencyHistogram all = Metrics.histogram("workload.all");
+        for (int i = 0; i < operations / 5; i++) {
+            workload.run(workload.nextOperation());
+        }
+        for (LatencyHistogram histogram : latencies) {
+            histogram.reset();
+        }
+        all.reset();
+        gcPauses.reset();
+        long pauseTime = collectionTime();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            int op = workload.nextOperation();
+            long opStart = System.nanoTime();
+            workload.run(op);
+            long elapsed = System.nanoTime() - opStart;
+            latencies[op].record(elapsed);
+            all.record(elapsed);
+        }
+        long elapsed = System.nanoTime() - start;
+        pauseTime = collectionTime() - pauseTime;
+        long pauses = gcPauses.count();
+        long maxPause = gcPauses.max();
+        double heap = (collectedHeap() - heapBefore) / 1e6;
+
+        System.out.printf("  %-12s %8s %10s %10s %10s %10s%n", "operation", "count", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (LatencyHistogram histogram : latencies) {
+            if (histogram.count() > 0) {
+                System.out.printf("  %-12s %8d %10.3f %10.3f %10.3f %10.3f%n",
+                        histogram.name().substring("workload.".length()), histogram.count(),
+                        histogram.valueAtPercentile(50) / 1e6, histogram.valueAtPercentile(99) / 1e6,
+                        histogram.valueAtPercentile(99.9) / 1e6, histogram.max() / 1e6);
+            }
+        }
+        double throughput = operations / (elapsed / 1e9);
+        System.out.printf("  %d operations in %.2f s: %.0f ops/s; route cache hit rate %.0f%%%n",
+                operations, elapsed / 1e9, throughput, workload.cache.hitRate() * 100);
+        System.out.printf("  heap held %.1f MB; %d GC pauses, %d ms in all, longest %.0f ms%n",
+                heap, pauses, pauseTime, maxPause / 1e6);
+        summary.add(String.format("%-14s %9d %9d %9.0f %10.0f %9.3f %9.3f %9.3f %9.1f %7d %9.0f",
+                topology, size, graph.edgeCount(), buildTime / 1e6, throughput, all.valueAtPercentile(50) / 1e6,
+                all.valueAtPercentile(99) / 1e6, all.valueAtPercentile(99.9) / 1e6, heap, pauses, maxPause / 1e6));
+    }
+
+    /** Records every stop-the-world pause; concurrent collector cycles are left out. */
+    private void watchCollectors() {
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (!isPause(collector.getName()) || !(collector instanceof NotificationEmitter)) {
+                continue;
+            }
+            ((NotificationEmitter) collector).addNotificationListener((Notification notification, Object handback) -> {
+                if (notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                    GarbageCollectionNotificationInfo info =
+                            GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                    gcPauses.record(info.getGcInfo().getDuration() * 1_000_000);
+                }
+            }, null, null);
+        }
+    }
+
+    /** Milliseconds spent in stop-the-world collections so far. */
+    private static long collectionTime() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (isPause(collector.getName())) {
+                total += Math.max(0, collector.getCollectionTime());
+            }
+        }
+        return total;
+    }
+
+    private static boolean isPause(String collector) {
+        // G1 and ZGC report their concurrent work through beans of their own
+        return !collector.contains("Concurrent") && !collector.contains("Cycles");
+    }
+
+    private static long collectedHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /** The engine pieces the CLI keeps beside its graph, and a seeded stream of operations on them. */
+    private final class Workload {
+
+        final Graph graph;
+        final Random random;
+        final RouteFinder routeFinder;
+        final WeightedRouter weightedRouter;
+        final ConnectivityIndex connectivity;
+        final RouteCache cache;
+        final int[] hot = new int[HOT_STATIONS];
+        // stations the workload added, removed again oldest first
+        final ArrayDeque<String> added = new ArrayDeque<>();
+        // links the workload closed, reopened oldest first
+        final ArrayDeque<String[]> closed = new ArrayDeque<>();
+        int addedCount;
+
+        Workload(Graph graph, Random random) {
+            this.graph = graph;
+            this.random = random;
+            routeFinder = new RouteFinder(graph);
+            weightedRouter = new WeightedRouter(graph);
+            connectivity = new ConnectivityIndex(graph);
+            cache = new RouteCache(graph, connectivity, CACHE_IDS);
+            for (int i = 0; i < hot.length; i++) {
+                hot[i] = random.nextInt(graph.idCount());
+            }
+        }
+
+        int nextOperation() {
+            int roll = random.nextInt(100);
+            if (roll < writePercent) {
+                int write = random.nextInt(100);
+                return write < 35 ? 4 : write < 70 ? 5 : write < 85 ? 6 : 7;
+            }
+            int read = random.nextInt(100);
+            return read < 40 ? 0 : read < 60 ? 1 : read < 85 ? 2 : 3;
+        }
+
+        void run(int op) {
+            switch (op) {
+                case 0:
+                    route(origin(), origin());
+                    break;
+                case 1:
+                    weightedRouter.aStar(origin(), origin());
+                    break;
+                case 2:
+                    nearby(origin());
+                    break;
+                case 3:
+                    connectivity.connected(origin(), origin());
+                    break;
+                case 4:
+                    addEdge();
+                    break;
+                case 5:
+                    removeEdge();
+                    break;
+                case 6:
+                    addNode();
+                    break;
+                default:
+                    removeNode();
+                    break;
+            }
+        }
+
+        /** A busy station most of the time, otherwise any live one. */
+        int origin() {
+            if (random.nextInt(100) < HOT_SHARE_PERCENT) {
+                int id = hot[random.nextInt(hot.length)];
+                if (graph.isLive(id)) {
+                    return id;
+                }
+            }
+            while (true) {
+                int id = random.nextInt(graph.idCount());
+                if (graph.isLive(id)) {
+                    return id;
+                }
+            }
+        }
+
+        void route(int from, int to) {
+            long version = graph.version();
+            if (cache.getRoute(version, from, to) == null) {
+                cache.putRoute(version, from, to, routeFinder.route(from, to));
+            }
+        }
+
+        void nearby(int from) {
+            long version = graph.version();
+            if (cache.getReachable(version, from, NEARBY_HOPS, NEARBY_LIMIT) == null) {
+                cache.putReachable(version, from, NEARBY_HOPS, NEARBY_LIMIT,
+                        new BfsTraversal(graph, from, NEARBY_HOPS, NEARBY_LIMIT).toArray());
+            }
+        }
+
+        /**
+         * Reopens the longest-closed link, or when none is closed links a
+         * station to one two stops away, the way a new cut-off line would.
+         */
+        void addEdge() {
+            if (!closed.isEmpty()) {
+                String[] link = closed.poll();
+                graph.addEdge(link[0], link[1]);
+                return;
+            }
+            int from = origin();
+            if (graph.degree(from) > 0) {
+                int via = graph.neighbors(from)[random.nextInt(graph.degree(from))];
+                int to = graph.neighbors(via)[random.nextInt(graph.degree(via))];
+                if (to != from) {
+                    graph.addEdge(graph.nameOf(from), graph.nameOf(to));
+                }
+            }
+        }
+
+        /** Closes a link at any station, to be reopened later. */
+        void removeEdge() {
+            int from = random.nextInt(graph.idCount());
+            if (graph.isLive(from) && graph.degree(from) > 0) {
+                String[] link = {graph.nameOf(from), graph.nameOf(graph.neighbors(from)[random.nextInt(graph.degree(from))])};
+                graph.removeEdge(link[0], link[1]);
+                closed.add(link);
+            }
+        }
+
+        void addNode() {
+            int near = origin();
+            String name = "W" + addedCount++;
+            double angle = random.nextDouble() * 2 * Math.PI;
+            graph.addNode(name, graph.x(near) + Math.cos(angle) * 100, graph.y(near) + Math.sin(angle) * 100);
+            graph.addEdge(name, graph.nameOf(near));
+            added.add(name);
+        }
+
+        void removeNode() {
+            if (!added.isEmpty()) {
+                graph.removeNode(added.poll());
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.mycompany.etstrainsystem.engine;
+
+/**
+ * Result of a {@link ConnectionScan} profile query: departure and arrival
+ * pairs ordered by departure, where a later departure always means a
+ * later arrival.
+ */
+public final class ArrivalProfile {
+
+    private final int[] departures;
+    private final int[] arrivals;
+
+    ArrivalProfile(int[] departures, int[] arrivals) {
+        this.departures = departures;
+        this.arrivals = arrivals;
+    }
+
+    public int size() {
+        return departures.length;
+    }
+
+    public int departure(int index) {
+        return departures[index];
+    }
+
+    public int arrival(int index) {
+        return arrivals[index];
+    }
+
+    /** Earliest arrival when leaving at {@code time}, or {@link ConnectionScan#UNREACHABLE}. */
+    public int arrivalLeavingAt(int time) {
+        for (int i = 0; i < departures.length; i++) {
+            if (departures[i] >= time) {
+                return arrivals[i];
+            }
+        }
+        return ConnectionScan.UNREACHABLE;
+    }
+}
@@ -0,0 +1,50 @@
+package com.mycompany.etstrainsystem.engine;
+
+/** Outcome of {@link Graph#apply}: one {@link MutationResult} per edit, in batch order. */
+public class BatchResult {
+
+    private final MutationResult[] results;
+    private final boolean committed;
+    private final int appliedCount;
+
+    BatchResult(MutationResult[] results, boolean committed) {
+        this.results = results;
+        this.committed = committed;
+        int applied = 0;
+        if (committed) {
+            for (MutationResult result : results) {
+                if (result == MutationResult.OK) {
+                    applied++;
+                }
+            }
+        }
+        this.appliedCount = applied;
+    }
+
+    /** False when an atomic batch was rejected and nothing was applied. */
+    public boolean committed() {
+        return committed;
+    }
+
+    public int size() {
+        return results.length;
+    }
+
+    public MutationResult result(int index) {
+        return results[index];
+    }
+
+    public int appliedCount() {
+        return appliedCount;
+    }
+
+    public int failedCount() {
+        int failed = 0;
+        for (MutationResult result : results) {
+            if (result != MutationResult.OK) {
+                failed++;
+            }
+        }
+        return failed;
+    }
+}
@@ -0,0 +1,135 @@
+package com.mycompany.etstrainsystem.engine;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Breadth-first traversal that hands out station ids as they are needed
+ * rather than collecting the whole component first. A station's row is
+ * scanned only once the caller has consumed every station discovered
+ * before it, so stopping early leaves the rest of the graph untouched, and
+ * memory grows with what has been discovered, not with the graph.
+ *
+ * The traversal can be cut off at a hop count, giving a k-hop
+ * neighbourhood, and at a number of results. The start station comes
+ * first, at hop 0. The graph must not change while iterating; traverse a
+ * {@link GraphSnapshot} to run alongside edits.
+ */
+public class BfsTraversal implements PrimitiveIterator.OfInt {
+
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private final ReadableGraph graph;
+    private final int maxHops;
+    private final int maxResults;
+    private final BitSet seen = new BitSet();
+    private int[] queue = new int[16];
+    private int[] hops = new int[16];
+    private int head;
+    private int tail;
+    // queue entries before this have had their rows scanned
+    private int expanded;
+    private int lastHops = -1;
+
+    /**
+     * @throws IllegalArgumentException if {@code source} is not a live
+     *         station or a limit is negative
+     */
+    public BfsTraversal(ReadableGraph graph, int source, int maxHops, int maxResults) {
+        if (source < 0 || source >= graph.idCount() || !graph.isLive(source)) {
+            throw new IllegalArgumentException("Not a station id: " + source);
+        }
+        if (maxHops < 0 || maxResults < 0) {
+            throw new IllegalArgumentException("Limits must not be negative");
+        }
+        this.graph = graph;
+        this.maxHops = maxHops;
+        this.maxResults = maxResults;
+        seen.set(source);
+        queue[tail++] = source;
+    }
+
+    public BfsTraversal(ReadableGraph graph, int source) {
+        this(graph, source, UNLIMITED, UNLIMITED);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return head < maxResults && discover();
+    }
+
+    @Override
+    public int nextInt() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        lastHops = hops[head];
+        return queue[head++];
+    }
+
+    /** Hop count of the station last returned by {@link #nextInt()}. */
+    public int hops() {
+        return lastHops;
+    }
+
+    /** Number of stations returned so far. */
+    public int count() {
+        return head;
+    }
+
+    /**
+     * Whether the result limit stopped the traversal while more stations
+     * within the hop limit were still reachable.
+     */
+    public boolean truncated() {
+        return head >= maxResults && discover();
+    }
+
+    /** Returns every remaining station, in the order {@link #nextInt()} would. */
+    public int[] toArray() {
+        int[] ids = new int[16];
+        int count = 0;
+        while (hasNext()) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+            }
+            ids[count++] = nextInt();
+        }
+        return Arrays.copyOf(ids, count);
+    }
+
+    /** Scans rows until a station is waiting to be returned; false once none are left. */
+    private boolean discover() {
+        int discovered = tail;
+        long scanned = 0;
+        while (head == tail && expanded < tail) {
+            int u = queue[expanded];
+            int depth = hops[expanded++];
+            if (depth >= maxHops) {
+                // rows are scanned in hop order, so every later one is at the limit too
+                expanded = tail;
+                break;
+            }
+            int[] row = graph.neighbors(u);
+            scanned += graph.degree(u);
+            for (int i = 0; i < graph.degree(u); i++) {
+                int w = row[i];
+                if (!seen.get(w)) {
+                    seen.set(w);
+                    if (tail == queue.length) {
+                        queue = Arrays.copyOf(queue, tail * 2);
+                        hops = Arrays.copyOf(hops, tail * 2);
+                    }
+                    queue[tail] = w;
+                    hops[tail++] = depth + 1;
+                }
+            }
+        }
+        if (scanned > 0) {
+            Metrics.searched(tail - discovered, scanned);
+        }
+        return head < tail;
+    }
+}
@@ -0,0 +1,309 @@
+package com.mycompany.etstrainsystem.engine;
+
+import java.util.Arrays;
+
+/**
+ * Timetable queries by the Connection Scan Algorithm of Dibbelt et al.
+ *
+ * An earliest-arrival query scans connections forwards from the departure
+ * time, keeping the earliest known arrival at every station and whether
+ * each trip has been boarded; a connection can be taken if its trip is
+ * already boarded or its station is reached by the time it leaves. The
+ * scan stops at the first connection leaving after the destination has
+ * been reached, or at once if no chain of trips links the two stations.
+ *
+ * A profile query answers every departure in a window at once. It scans
+ * backwards, from the connection where the window's last departure would
+ * arrive, over just the connections the origin can reach in time when
+ * leaving at the window's start. It keeps for every station the Pareto
+ * set of departure and arrival pairs that reach the destination, and for
+ * every trip the arrival if one stays on board.
+ *
+ * Transfers are instant, and a train leaving at the minute another
+ * arrives can be caught. Scratch arrays are reused between queries and
+ * reset by bumping a stamp, as in {@link RouteFinder}. Not thread-safe;
+ * give each thread its own scan.
+ */
+public class ConnectionScan {
+
+    /** Arrival time of a station that cannot be reached. */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private static final LatencyHistogram EARLIEST_ARRIVAL_LATENCY = Metrics.histogram("query.earliestArrival");
+    private static final LatencyHistogram PROFILE_LATENCY = Metrics.histogram("query.profile");
+
+    private final Timetable timetable;
+    private final int[] connections;
+    private int stamp;
+    private final int[] stationStamp;
+    private final int[] arrival;
+    // offsets of the connections boarded and left to reach each station
+    private final int[] enteredBy;
+    private final int[] leftBy;
+    private final int[] tripStamp;
+    // earliest-arrival: offset of the connection the trip was boarded at; profile: arrival if staying on
+    private final int[] tripValue;
+    // profile pairs, linked per station with the latest-added, earliest departure first
+    private final int[] profileStamp;
+    private final int[] profileHead;
+    private int[] pairDeparture = new int[16];
+    private int[] pairArrival = new int[16];
+    private int[] pairNext = new int[16];
+    private int pairCount;
+    private int scannedCount;
+
+    public ConnectionScan(Timetable timetable) {
+        this.timetable = timetable;
+        this.connections = timetable.connections;
+        int stations = timetable.stationCount();
+        stationStamp = new int[stations];
+        arrival = new int[stations];
+        enteredBy = new int[stations];
+        leftBy = new int[stations];
+        profileStamp = new int[stations];
+        profileHead = new int[stations];
+        tripStamp = new int[timetable.tripCount()];
+        tripValue = new int[timetable.tripCount()];
+    }
+
+    /** Number of connections the last query looked at. */
+    public int scannedCount() {
+        return scannedCount;
+    }
+
+    /**
+     * Earliest journey from {@code from} to {@code to} leaving no earlier
+     * than {@code departure}, or null if there is none that day.
+     *
+     * @throws IllegalArgumentException if either station has no trips
+     */
+    public Journey earliestArrival(String from, String to, int departure) {
+        return earliestArrival(station(from), station(to), departure);
+    }
+
+    /** Like {@link #earliestArrival(String, String, int)}, by timetable station index. */
+    public Journey earliestArrival(int from, int to, int departure) {
+        QueryEvent event = QueryEvent.start();
+        long start = Metrics.start();
+        Journey journey = scanForwards(from, to, departure) ? buildJourney(from, to, departure) : null;
+        EARLIEST_ARRIVAL_LATENCY.recordSince(start);
+        event.finish("earliestArrival", null, -1, -1, journey == null ? 0 : journey.legCount(), scannedCount);
+        return journey;
+    }
+
+    /**
+     * The journeys from {@code from} to {@code to} that cover leaving at any
+     * time in {@code [windowStart, windowEnd]}: those leaving within the
+     * window that no journey beats by leaving later and arriving no later,
+     * plus the first one leaving after the window. The earliest arrival for
+     * leaving at time {@code t} is then that of the first journey in the
+     * profile leaving at or after {@code t}.
+     *
+     * @throws IllegalArgumentException if either station has no trips
+     */
+    public ArrivalProfile profile(String from, String to, int windowStart, int windowEnd) {
+        return profile(station(from), station(to), windowStart, windowEnd);
+    }
+
+    /** Like {@link #profile(String, String, int, int)}, by timetable station index. */
+    public ArrivalProfile profile(int from, int to, int windowStart, int windowEnd) {
+        QueryEvent event = QueryEvent.start();
+        long start = Metrics.start();
+        ArrivalProfile profile = scanBackwards(from, to, windowStart, windowEnd);
+        PROFILE_LATENCY.recordSince(start);
+        event.finish("profile", null, -1, -1, profile.size(), scannedCount);
+        return profile;
+    }
+
+    private int station(String name) {
+        int station = timetable.stationIndex(name);
+        if (station < 0) {
+            throw new IllegalArgumentException("No trips stop at '" + name + "'");
+        }
+        return station;
+    }
+
+    private boolean scanForwards(int from, int to, int departure) {
+        prepare();
+        reach(from, departure, -1, -1);
+        scannedCount = 0;
+        if (from == to) {
+            return true;
+        }
+        if (!timetable.linked(from, to)) {
+            return false;
+        }
+        relax(departure, to, UNREACHABLE);
+        return arrivalAt(to) != UNREACHABLE;
+    }
+
+    /**
+     * Scans connections leaving from {@code departure} on, until one leaves
+     * after {@code until} or after {@code to} has been reached; -1 for no
+     * destination.
+     */
+    private void relax(int departure, int to, int until) {
+        int end = timetable.connectionCount() * Timetable.FIELDS;
+        for (int c = timetable.firstDepartingAt(departure) * Timetable.FIELDS; c < end; c += Timetable.FIELDS) {
+            int leaves = connections[c + Timetable.DEPARTURE];
+            if (leaves > until || to >= 0 && leaves > arrivalAt(to)) {
+                break;
+            }
+            scannedCount++;
+            int trip = connections[c + Timetable.TRIP];
+            if (tripStamp[trip] != stamp) {
+                if (arrivalAt(connections[c + Timetable.FROM]) > leaves) {
+                    continue;
+                }
+                tripStamp[trip] = stamp;
+                tripValue[trip] = c;
+            }
+            int station = connections[c + Timetable.TO];
+            int arrives = connections[c + Timetable.ARRIVAL];
+            if (arrives < arrivalAt(station)) {
+                reach(station, arrives, tripValue[trip], c);
+            }
+        }
+    }
+
+    private Journey buildJourney(int from, int to, int departure) {
+        int legs = 0;
+        for (int station = to; station != from; station = connections[enteredBy[station] + Timetable.FROM]) {
+            legs++;
+        }
+        int[] entered = new int[legs];
+        int[] left = new int[legs];
+        int station = to;
+        for (int i = legs - 1; i >= 0; i--) {
+            entered[i] = enteredBy[station] / Timetable.FIELDS;
+            left[i] = leftBy[station] / Timetable.FIELDS;
+            station = connections[enteredBy[station] + Timetable.FROM];
+        }
+        return new Journey(timetable, from, to, departure, entered, left);
+    }
+
+    private ArrivalProfile scanBackwards(int from, int to, int windowStart, int windowEnd) {
+        // nothing leaving after the last departure's arrival can matter
+        int last = scanForwards(from, to, windowEnd) ? arrivalAt(to) : Integer.MAX_VALUE;
+        if (!timetable.linked(from, to)) {
+            return new ArrivalProfile(new int[0], new int[0]);
+        }
+        // earliest arrivals leaving at the window's start: connections leaving a station before then are out of reach
+        int lastScanned = scannedCount;
+        if (stamp >= Integer.MAX_VALUE - 2) {
+            // the reach stamp must survive the next prepare
+            clear();
+        }
+        prepare();
+        reach(from, windowStart, -1, -1);
+        scannedCount = lastScanned;
+        relax(windowStart, -1, last);
+        int reachable = stamp;
+        prepare();
+        pairCount = 0;
+        int first = timetable.firstDepartingAt(windowStart);
+        int end = last == Integer.MAX_VALUE ? timetable.connectionCount() : timetable.firstDepartingAt(last + 1);
+        for (int c = (end - 1) * Timetable.FIELDS; c >= first * Timetable.FIELDS; c -= Timetable.FIELDS) {
+            int leaving = connections[c + Timetable.FROM];
+            if (stationStamp[leaving] != reachable || arrival[leaving] > connections[c + Timetable.DEPARTURE]) {
+                continue;
+            }
+            scannedCount++;
+            int trip = connections[c + Timetable.TRIP];
+            int arrives = connections[c + Timetable.ARRIVAL];
+            int station = connections[c + Timetable.TO];
+            int best = station == to ? arrives : UNREACHABLE;
+            if (tripStamp[trip] == stamp) {
+                best = Math.min(best, tripValue[trip]);
+            }
+            best = Math.min(best, earliestFrom(station, arrives));
+            if (best == UNREACHABLE) {
+                continue;
+            }
+            tripStamp[trip] = stamp;
+            tripValue[trip] = best;
+            addPair(leaving, connections[c + Timetable.DEPARTURE], best);
+        }
+
+        int size = 0;
+        int head = profileStamp[from] == stamp && from != to ? profileHead[from] : -1;
+        for (int pair = head; pair >= 0; pair = pairNext[pair]) {
+            size++;
+            if (pairDeparture[pair] > windowEnd) {
+                break;
+            }
+        }
+        int[] departures = new int[size];
+        int[] arrivals = new int[size];
+        int i = 0;
+        for (int pair = head; i < size; pair = pairNext[pair]) {
+            departures[i] = pairDeparture[pair];
+            arrivals[i++] = pairArrival[pair];
+        }
+        return new ArrivalProfile(departures, arrivals);
+    }
+
+    /** Earliest arrival at the destination when at {@code station} by {@code time}, from the pairs so far. */
+    private int earliestFrom(int station, int time) {
+        if (profileStamp[station] != stamp) {
+            return UNREACHABLE;
+        }
+        // pairs run by departure, and on a Pareto front by arrival too, so the first one catchable is best
+        for (int pair = profileHead[station]; pair >= 0; pair = pairNext[pair]) {
+            if (pairDeparture[pair] >= time) {
+                return pairArrival[pair];
+            }
+        }
+        return UNREACHABLE;
+    }
+
+    private void addPair(int station, int departure, int arrives) {
+        int head = -1;
+        if (profileStamp[station] == stamp) {
+            head = profileHead[station];
+        } else {
+            profileStamp[station] = stamp;
+        }
+        if (head >= 0 && pairArrival[head] <= arrives) {
+            // leaving no earlier and arriving no later: the new pair adds nothing
+            return;
+        }
+        if (head >= 0 && pairDeparture[head] == departure) {
+            pairArrival[head] = arrives;
+            return;
+        }
+        if (pairCount == pairDeparture.length) {
+            pairDeparture = Arrays.copyOf(pairDeparture, pairCount * 2);
+            pairArrival = Arrays.copyOf(pairArrival, pairCount * 2);
+            pairNext = Arrays.copyOf(pairNext, pairCount * 2);
+        }
+        pairDeparture[pairCount] = departure;
+        pairArrival[pairCount] = arrives;
+        pairNext[pairCount] = head;
+        profileHead[station] = pairCount++;
+    }
+
+    private int arrivalAt(int station) {
+        return stationStamp[station] == stamp ? arrival[station] : UNREACHABLE;
+    }
+
+    private void reach(int station, int time, int entered, int left) {
+        stationStamp[station] = stamp;
+        arrival[station] = time;
+        enteredBy[station] = entered;
+        leftBy[station] = left;
+    }
+
+    private void prepare() {
+        if (++stamp == Integer.MAX_VALUE) {
+            clear();
+        }
+    }
+
+    private void clear() {
+        Arrays.fill(stationStamp, 0);
+        Arrays.fill(profileStamp, 0);
+        Arrays.fill(tripStamp, 0);
+        stamp = 1;
+    }
+}
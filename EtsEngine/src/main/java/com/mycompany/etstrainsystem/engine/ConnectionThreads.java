@@ -0,0 +1,50 @@
+package com.mycompany.etstrainsystem.engine;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors that run each task, typically one connection, on its own
+ * thread. On a JDK with virtual threads (21 and later) every task gets a
+ * virtual thread, so thousands of mostly idle connections cost little; on
+ * older JDKs it falls back to a cached pool of daemon platform threads.
+ * The lookup is reflective because the code is compiled for Java 11.
+ */
+public final class ConnectionThreads {
+
+    private static final Method NEW_VIRTUAL_EXECUTOR = findVirtualExecutor();
+
+    private ConnectionThreads() {
+    }
+
+    /** Whether {@link #newPerTaskExecutor} hands out virtual threads. */
+    public static boolean virtual() {
+        return NEW_VIRTUAL_EXECUTOR != null;
+    }
+
+    public static ExecutorService newPerTaskExecutor(String namePrefix) {
+        if (NEW_VIRTUAL_EXECUTOR != null) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // fall through to platform threads
+            }
+        }
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, namePrefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static Method findVirtualExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
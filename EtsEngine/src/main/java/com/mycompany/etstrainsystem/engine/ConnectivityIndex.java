@@ -0,0 +1,283 @@
+package com.mycompany.etstrainsystem.engine;
+
+import java.util.Arrays;
+
+/**
+ * Connected-component labels kept up to date as the graph changes, so
+ * "are A and B connected?" and "how big is A's component?" are array
+ * lookups instead of a BFS.
+ *
+ * Adding an edge merges the smaller component into the larger one. Removing
+ * an edge runs a BFS from both ends in lock step: if they meet, nothing
+ * changed; if one side runs dry first, the stations it saw have split off
+ * and are relabelled. Either way the work stays near the removed edge and
+ * never exceeds the smaller of the two resulting pieces by much.
+ *
+ * Members of each component form a doubly linked list through
+ * {@code next}/{@code prev}, so moving a station between components is O(1).
+ */
+public class ConnectivityIndex implements GraphListener {
+
+    private final Graph graph;
+    private int[] label = new int[0];
+    private int[] next = new int[0];
+    private int[] prev = new int[0];
+    private int[] head = new int[0];
+    private int[] size = new int[0];
+    private int[] freeLabels = new int[0];
+    private int freeCount;
+    private int labelCount;
+    private int componentCount;
+
+    private int[] markA = new int[0];
+    private int[] markB = new int[0];
+    private int[] queueA = new int[0];
+    private int[] queueB = new int[0];
+    private int stamp;
+
+    public ConnectivityIndex(Graph graph) {
+        this.graph = graph;
+        // under the graph's lock, so no edit falls between the labelling and the first event
+        synchronized (graph) {
+            rebuild();
+            graph.addListener(this);
+        }
+    }
+
+    public boolean connected(int a, int b) {
+        return label[a] == label[b];
+    }
+
+    public boolean connected(String node1Name, String node2Name) {
+        int a = graph.idOf(node1Name);
+        int b = graph.idOf(node2Name);
+        return a >= 0 && b >= 0 && connected(a, b);
+    }
+
+    public int componentSize(int id) {
+        return size[label[id]];
+    }
+
+    public int componentSize(String name) {
+        int id = graph.idOf(name);
+        return id < 0 ? 0 : componentSize(id);
+    }
+
+    /** Label of the component holding {@code id}; stable until that component merges or splits. */
+    public int componentOf(int id) {
+        return label[id];
+    }
+
+    public int componentCount() {
+        return componentCount;
+    }
+
+    /** Recomputes every label from scratch. */
+    public void rebuild() {
+        int n = graph.idCount();
+        label = new int[n];
+        next = new int[n];
+        prev = new int[n];
+        head = new int[Math.max(n, 1)];
+        size = new int[Math.max(n, 1)];
+        freeLabels = new int[Math.max(n, 1)];
+        freeCount = 0;
+        labelCount = 0;
+        componentCount = 0;
+        Arrays.fill(label, -1);
+        ensureScratch(n);
+
+        for (int id = 0; id < n; id++) {
+            if (!graph.isLive(id) || label[id] >= 0) {
+                continue;
+            }
+            int component = newLabel();
+            label[id] = component;
+            link(component, id);
+            int[] queue = queueA;
+            int tail = 0;
+            queue[tail++] = id;
+            for (int headIndex = 0; headIndex < tail; headIndex++) {
+                int u = queue[headIndex];
+                int[] row = graph.neighbors(u);
+                for (int i = 0; i < graph.degree(u); i++) {
+                    int w = row[i];
+                    if (label[w] < 0) {
+                        label[w] = component;
+                        link(component, w);
+                        queue[tail++] = w;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void graphReloaded() {
+        rebuild();
+    }
+
+    @Override
+    public void nodeAdded(int id) {
+        ensureNodeCapacity(graph.idCount());
+        int component = newLabel();
+        label[id] = component;
+        link(component, id);
+    }
+
+    @Override
+    public void nodeRemoved(int id) {
+        // edges are removed first, so the node is alone in its component here
+        int component = label[id];
+        unlink(component, id);
+        label[id] = -1;
+        releaseLabel(component);
+    }
+
+    @Override
+    public void edgeAdded(int node1, int node2) {
+        int a = label[node1];
+        int b = label[node2];
+        if (a == b) {
+            return;
+        }
+        int small = size[a] < size[b] ? a : b;
+        int large = small == a ? b : a;
+        while (head[small] >= 0) {
+            int id = head[small];
+            unlink(small, id);
+            label[id] = large;
+            link(large, id);
+        }
+        releaseLabel(small);
+    }
+
+    @Override
+    public void edgeRemoved(int node1, int node2) {
+        ensureScratch(graph.idCount());
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(markA, 0);
+            Arrays.fill(markB, 0);
+            stamp = 1;
+        }
+        markA[node1] = stamp;
+        markB[node2] = stamp;
+        queueA[0] = node1;
+        queueB[0] = node2;
+        int headA = 0;
+        int tailA = 1;
+        int headB = 0;
+        int tailB = 1;
+
+        while (headA < tailA && headB < tailB) {
+            int u = queueA[headA++];
+            int[] row = graph.neighbors(u);
+            for (int i = 0; i < graph.degree(u); i++) {
+                int w = row[i];
+                if (markB[w] == stamp) {
+                    return;
+                }
+                if (markA[w] != stamp) {
+                    markA[w] = stamp;
+                    queueA[tailA++] = w;
+                }
+            }
+
+            u = queueB[headB++];
+            row = graph.neighbors(u);
+            for (int i = 0; i < graph.degree(u); i++) {
+                int w = row[i];
+                if (markA[w] == stamp) {
+                    return;
+                }
+                if (markB[w] != stamp) {
+                    markB[w] = stamp;
+                    queueB[tailB++] = w;
+                }
+            }
+        }
+
+        // whichever side ran out of stations is the piece that broke away
+        int[] piece = headA >= tailA ? queueA : queueB;
+        int pieceSize = headA >= tailA ? tailA : tailB;
+        int oldComponent = label[node1];
+        int component = newLabel();
+        for (int i = 0; i < pieceSize; i++) {
+            int id = piece[i];
+            unlink(oldComponent, id);
+            label[id] = component;
+            link(component, id);
+        }
+    }
+
+    private int newLabel() {
+        int component;
+        if (freeCount > 0) {
+            component = freeLabels[--freeCount];
+        } else {
+            component = labelCount++;
+            if (component >= head.length) {
+                int length = Math.max(component + 1, head.length * 2);
+                head = Arrays.copyOf(head, length);
+                size = Arrays.copyOf(size, length);
+                freeLabels = Arrays.copyOf(freeLabels, length);
+            }
+        }
+        head[component] = -1;
+        size[component] = 0;
+        componentCount++;
+        return component;
+    }
+
+    private void releaseLabel(int component) {
+        freeLabels[freeCount++] = component;
+        componentCount--;
+    }
+
+    private void link(int component, int id) {
+        int first = head[component];
+        next[id] = first;
+        prev[id] = -1;
+        if (first >= 0) {
+            prev[first] = id;
+        }
+        head[component] = id;
+        size[component]++;
+    }
+
+    private void unlink(int component, int id) {
+        if (prev[id] >= 0) {
+            next[prev[id]] = next[id];
+        } else {
+            head[component] = next[id];
+        }
+        if (next[id] >= 0) {
+            prev[next[id]] = prev[id];
+        }
+        size[component]--;
+    }
+
+    private void ensureNodeCapacity(int capacity) {
+        if (capacity <= label.length) {
+            return;
+        }
+        int length = Math.max(capacity, label.length * 2);
+        int oldLength = label.length;
+        label = Arrays.copyOf(label, length);
+        Arrays.fill(label, oldLength, length, -1);
+        next = Arrays.copyOf(next, length);
+        prev = Arrays.copyOf(prev, length);
+    }
+
+    private void ensureScratch(int capacity) {
+        if (capacity <= markA.length) {
+            return;
+        }
+        int length = Math.max(capacity, markA.length * 2);
+        markA = new int[length];
+        markB = new int[length];
+        queueA = new int[length];
+        queueB = new int[length];
+        stamp = 0;
+    }
+}
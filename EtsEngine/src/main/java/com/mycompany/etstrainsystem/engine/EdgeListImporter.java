@@ -0,0 +1,408 @@
+package com.mycompany.etstrainsystem.engine;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Bulk loader for text edge lists. Each line holds two station names
+ * separated by a comma or a tab, optionally followed by the edge's travel
+ * time and distance; further columns are ignored, a line with a single name
+ * declares a station with no edges, and blank lines and lines starting with
+ * '#' are skipped. Edges without weights get the straight-line default, and
+ * when an edge is listed twice the first line wins.
+ *
+ * The file is memory-mapped and parsed straight from bytes. Station names
+ * are interned through a byte-keyed hash table, so a String is created once
+ * per distinct station rather than once per field. The adjacency is then
+ * built in CSR form with a counting pass and handed to {@link Graph#load}.
+ * An importer keeps its name table between calls, so use one per file.
+ */
+public class EdgeListImporter {
+
+    private static final long WINDOW = 1L << 30;
+    private static final int BLOCK = 1 << 23;
+    private static final long EMPTY = -1L;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private byte[] arena = new byte[1 << 16];
+    private int arenaSize;
+    private int[] nameOffset = new int[1024];
+    private String[] names = new String[1024];
+    private int nameCount;
+    // each slot packs the full hash above the id, so probing compares hashes
+    // without touching any other array
+    private long[] table = newTable(2048);
+
+    private int[] src = new int[1 << 16];
+    private int[] dst = new int[1 << 16];
+    // allocated on the first line that carries weights; NaN means "default"
+    private double[] rawTravelTimes;
+    private double[] rawDistances;
+    private int rawEdgeCount;
+    private int edgeCount;
+    private int skippedLines;
+
+    public void load(Path file, Graph graph) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            byte[] block = new byte[BLOCK];
+            int carry = 0;
+            while (position < size) {
+                long window = Math.min(WINDOW, size - position);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, window);
+                while (buffer.hasRemaining()) {
+                    if (carry == block.length) {
+                        block = Arrays.copyOf(block, block.length * 2);
+                    }
+                    int count = Math.min(block.length - carry, buffer.remaining());
+                    buffer.get(block, carry, count);
+                    int end = carry + count;
+                    int consumed = parseLines(block, end);
+                    carry = end - consumed;
+                    System.arraycopy(block, consumed, block, 0, carry);
+                }
+                position += window;
+            }
+            if (carry > 0) {
+                parseLine(block, 0, carry);
+            }
+        }
+        build(graph);
+    }
+
+    public int nodeCount() {
+        return nameCount;
+    }
+
+    /** Distinct edges loaded, after duplicates and self loops were dropped. */
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    public int skippedLines() {
+        return skippedLines;
+    }
+
+    /** Parses every complete line in {@code block[0, end)} and returns where the first incomplete one starts. */
+    private int parseLines(byte[] block, int end) {
+        int lineStart = 0;
+        for (int i = 0; i < end; i++) {
+            if (block[i] == '\n') {
+                parseLine(block, lineStart, i);
+                lineStart = i + 1;
+            }
+        }
+        return lineStart;
+    }
+
+    private void parseLine(byte[] line, int from, int to) {
+        while (to > from && isSpace(line[to - 1])) {
+            to--;
+        }
+        while (from < to && isSpace(line[from])) {
+            from++;
+        }
+        if (from == to || line[from] == '#') {
+            return;
+        }
+
+        int separator = findSeparator(line, from, to);
+        int firstTo = trimEnd(line, from, separator);
+        if (from == firstTo) {
+            skippedLines++;
+            return;
+        }
+        if (separator == to) {
+            intern(line, from, firstTo);
+            return;
+        }
+
+        int secondFrom = separator + 1;
+        while (secondFrom < to && isSpace(line[secondFrom])) {
+            secondFrom++;
+        }
+        int secondTo = trimEnd(line, secondFrom, findSeparator(line, secondFrom, to));
+        if (secondFrom == secondTo) {
+            skippedLines++;
+            return;
+        }
+        if (Arrays.equals(line, from, firstTo, line, secondFrom, secondTo)) {
+            skippedLines++;
+            return;
+        }
+
+        double travelTime = Double.NaN;
+        double distance = Double.NaN;
+        int next = findSeparator(line, secondFrom, to);
+        if (next < to) {
+            int timeTo = findSeparator(line, next + 1, to);
+            travelTime = parseWeight(line, next + 1, timeTo);
+            if (timeTo < to) {
+                distance = parseWeight(line, timeTo + 1, findSeparator(line, timeTo + 1, to));
+            }
+            if (travelTime < 0 || distance < 0) {
+                skippedLines++;
+                return;
+            }
+        }
+
+        // interned only once the line is known to be kept, so a skipped line adds no stations
+        int a = intern(line, from, firstTo);
+        int b = intern(line, secondFrom, secondTo);
+        if (rawEdgeCount == src.length) {
+            src = Arrays.copyOf(src, rawEdgeCount * 2);
+            dst = Arrays.copyOf(dst, rawEdgeCount * 2);
+            if (rawTravelTimes != null) {
+                rawTravelTimes = Arrays.copyOf(rawTravelTimes, rawEdgeCount * 2);
+                rawDistances = Arrays.copyOf(rawDistances, rawEdgeCount * 2);
+            }
+        }
+        if (rawTravelTimes == null && !(Double.isNaN(travelTime) && Double.isNaN(distance))) {
+            rawTravelTimes = new double[src.length];
+            rawDistances = new double[src.length];
+            Arrays.fill(rawTravelTimes, Double.NaN);
+            Arrays.fill(rawDistances, Double.NaN);
+        }
+        src[rawEdgeCount] = a;
+        dst[rawEdgeCount] = b;
+        if (rawTravelTimes != null) {
+            rawTravelTimes[rawEdgeCount] = travelTime;
+            rawDistances[rawEdgeCount] = distance;
+        }
+        rawEdgeCount++;
+    }
+
+    /** Parses a weight column; blank means the default (NaN), garbage means -1 so the line is skipped. */
+    private static double parseWeight(byte[] line, int from, int to) {
+        while (from < to && isSpace(line[from])) {
+            from++;
+        }
+        to = trimEnd(line, from, to);
+        if (from == to) {
+            return Double.NaN;
+        }
+        double plain = parsePlainDecimal(line, from, to);
+        if (plain >= 0) {
+            return plain;
+        }
+        try {
+            double value = Double.parseDouble(new String(line, from, to - from, StandardCharsets.ISO_8859_1));
+            return Double.isNaN(value) ? -1 : value;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Reads {@code digits[.digits]} straight from the bytes, or returns -1
+     * for anything else so the caller falls back to {@link Double#parseDouble}.
+     * With at most 15 significant digits and 22 decimals, both the digits and
+     * the power of ten are exact doubles, so one division rounds the same
+     * way the full parser does.
+     */
+    private static double parsePlainDecimal(byte[] line, int from, int to) {
+        long digits = 0;
+        int significant = 0;
+        int decimals = -1;
+        for (int i = from; i < to; i++) {
+            byte c = line[i];
+            if (c == '.' && decimals < 0 && i > from) {
+                decimals = 0;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            if (digits > 0 || c != '0') {
+                significant++;
+            }
+            digits = digits * 10 + (c - '0');
+            if (decimals >= 0) {
+                decimals++;
+            }
+        }
+        if (significant > 15 || decimals == 0 || decimals > 22) {
+            return -1;
+        }
+        return decimals > 0 ? digits / POWERS_OF_TEN[decimals] : digits;
+    }
+
+    private int intern(byte[] bytes, int from, int to) {
+        int length = to - from;
+        int hash = 0x811c9dc5;
+        for (int i = from; i < to; i++) {
+            hash = (hash ^ bytes[i]) * 0x01000193;
+        }
+        // FNV leaves the low bits poorly mixed for names that differ only in
+        // their last characters, and the table is indexed by the low bits
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != EMPTY) {
+            long entry = table[slot];
+            if ((int) (entry >>> 32) == hash) {
+                int id = (int) entry;
+                int offset = nameOffset[id];
+                if (nameOffset[id + 1] - offset == length
+                        && Arrays.equals(arena, offset, offset + length, bytes, from, to)) {
+                    return id;
+                }
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int id = nameCount++;
+        if (id + 1 == names.length) {
+            int newLength = names.length * 2;
+            names = Arrays.copyOf(names, newLength);
+            nameOffset = Arrays.copyOf(nameOffset, newLength);
+        }
+        if (arenaSize + length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arenaSize + length, arena.length * 2));
+        }
+        System.arraycopy(bytes, from, arena, arenaSize, length);
+        names[id] = new String(bytes, from, length, StandardCharsets.UTF_8);
+        arenaSize += length;
+        nameOffset[id + 1] = arenaSize;
+        table[slot] = ((long) hash << 32) | id;
+
+        if (nameCount * 2 > table.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        long[] old = table;
+        table = newTable(old.length * 2);
+        int mask = table.length - 1;
+        for (long entry : old) {
+            if (entry == EMPTY) {
+                continue;
+            }
+            int slot = (int) (entry >>> 32) & mask;
+            while (table[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = entry;
+        }
+    }
+
+    private void build(Graph graph) {
+        int n = nameCount;
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        int columns = Math.max(1, (int) Math.ceil(Math.sqrt(n)));
+        for (int id = 0; id < n; id++) {
+            xs[id] = NodePlacer.MIN_NODE_DISTANCE / 2 + (id % columns) * NodePlacer.MIN_NODE_DISTANCE;
+            ys[id] = NodePlacer.MIN_NODE_DISTANCE / 2 + (id / columns) * NodePlacer.MIN_NODE_DISTANCE;
+        }
+        edgeCount = loadEdges(graph, Arrays.copyOf(names, n), xs, ys, n, src, dst, rawEdgeCount, rawTravelTimes, rawDistances);
+    }
+
+    /**
+     * Builds the CSR adjacency of the first {@code count} edges
+     * {@code src[i] - dst[i]} with a counting pass, drops repeats and self
+     * loops, and hands it to {@link Graph#load}. Weight arrays may be null,
+     * or hold NaN for the default. Returns the number of distinct edges.
+     */
+    static int loadEdges(Graph graph, String[] names, double[] xs, double[] ys, int n, int[] src, int[] dst, int count,
+            double[] rawTravelTimes, double[] rawDistances) {
+        int[] offsets = new int[n + 1];
+        for (int i = 0; i < count; i++) {
+            if (src[i] == dst[i]) {
+                continue;
+            }
+            offsets[src[i] + 1]++;
+            offsets[dst[i] + 1]++;
+        }
+        for (int id = 0; id < n; id++) {
+            offsets[id + 1] += offsets[id];
+        }
+        int[] fill = Arrays.copyOf(offsets, n);
+        int[] targets = new int[offsets[n]];
+        boolean weighted = rawTravelTimes != null;
+        double[] travelTimes = weighted ? new double[offsets[n]] : null;
+        double[] distances = weighted ? new double[offsets[n]] : null;
+        for (int i = 0; i < count; i++) {
+            if (src[i] == dst[i]) {
+                continue;
+            }
+            int forward = fill[src[i]]++;
+            int backward = fill[dst[i]]++;
+            targets[forward] = dst[i];
+            targets[backward] = src[i];
+            if (weighted) {
+                travelTimes[forward] = rawTravelTimes[i];
+                travelTimes[backward] = rawTravelTimes[i];
+                distances[forward] = rawDistances[i];
+                distances[backward] = rawDistances[i];
+            }
+        }
+
+        // drop repeated edges, compacting rows in place; duplicates appear in
+        // both endpoint rows, so the result stays symmetric
+        int[] seen = new int[n];
+        Arrays.fill(seen, -1);
+        int write = 0;
+        int rowStart = 0;
+        for (int id = 0; id < n; id++) {
+            int rowEnd = offsets[id + 1];
+            offsets[id] = write;
+            for (int i = rowStart; i < rowEnd; i++) {
+                int neighbor = targets[i];
+                if (seen[neighbor] != id) {
+                    seen[neighbor] = id;
+                    if (weighted) {
+                        travelTimes[write] = travelTimes[i];
+                        distances[write] = distances[i];
+                    }
+                    targets[write++] = neighbor;
+                }
+            }
+            rowStart = rowEnd;
+        }
+        offsets[n] = write;
+
+        graph.load(names, xs, ys, n, offsets, Arrays.copyOf(targets, write),
+                weighted ? Arrays.copyOf(travelTimes, write) : null, weighted ? Arrays.copyOf(distances, write) : null);
+        return write / 2;
+    }
+
+    private static int findSeparator(byte[] line, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (line[i] == ',' || line[i] == '\t') {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    private static int trimEnd(byte[] line, int from, int to) {
+        while (to > from && isSpace(line[to - 1])) {
+            to--;
+        }
+        return to;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\r';
+    }
+
+    private static long[] newTable(int size) {
+        long[] result = new long[size];
+        Arrays.fill(result, EMPTY);
+        return result;
+    }
+}
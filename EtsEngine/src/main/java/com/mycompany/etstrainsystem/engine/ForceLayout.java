@@ -0,0 +1,574 @@
+package com.mycompany.etstrainsystem.engine;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Fruchterman–Reingold force-directed layout running on its own thread.
+ * Repulsion between all pairs of stations is approximated with a
+ * Barnes–Hut quadtree, so an iteration costs O(n log n) rather than O(n²);
+ * edges pull their ends together and a weak gravity keeps separate
+ * components from drifting apart.
+ *
+ * {@link #start()} copies the graph, and later changes reach the worker as
+ * queued events, so the worker never reads the graph while another thread
+ * edits it. Positions are handed to a sink as {@link Frame}s, at most
+ * {@code maxFramesPerSecond} times a second. The graph itself is only
+ * updated by {@link #stop()}, which writes the final positions back as one
+ * {@link GraphBatch} of moves. Both take the graph's lock, so other threads
+ * may keep editing meanwhile.
+ *
+ * The simulation cools down and idles once it has settled, and warms up
+ * again when stations or edges are added or removed.
+ */
+public class ForceLayout implements GraphListener {
+
+    /** Station positions at one point of the simulation, indexed by graph id. */
+    public static final class Frame {
+
+        /** Station names, {@code null} for ids that are not live. */
+        public final String[] names;
+        public final double[] xs;
+        public final double[] ys;
+        public final int iteration;
+        /** Whether the simulation has settled; no further frames follow until the graph changes. */
+        public final boolean settled;
+
+        Frame(String[] names, double[] xs, double[] ys, int iteration, boolean settled) {
+            this.names = names;
+            this.xs = xs;
+            this.ys = ys;
+            this.iteration = iteration;
+            this.settled = settled;
+        }
+    }
+
+    public static final double IDEAL_EDGE_LENGTH = 2 * NodePlacer.MIN_NODE_DISTANCE;
+
+    private static final double THETA = 0.9;
+    private static final double GRAVITY = 0.05;
+    private static final double COOLING = 0.95;
+    private static final double MIN_TEMPERATURE = 0.5;
+    private static final int MAX_DEPTH = 40;
+    private static final int CHUNK = 1024;
+
+    private static final int ADD_NODE = 1;
+    private static final int REMOVE_NODE = 2;
+    private static final int MOVE_NODE = 3;
+    private static final int ADD_EDGE = 4;
+    private static final int REMOVE_EDGE = 5;
+    private static final int RELOAD = 6;
+
+    private final Graph graph;
+    private final Consumer<Frame> sink;
+    private final long frameIntervalNanos;
+    private final Queue<Change> changes = new ConcurrentLinkedQueue<>();
+    private final Object signal = new Object();
+    private Thread worker;
+    private volatile boolean running;
+
+    // owned by the worker while it runs
+    private String[] names;
+    private double[] xs;
+    private double[] ys;
+    private int[][] adjacency;
+    private int[] degree;
+    private int idCount;
+    private double[] forceX;
+    private double[] forceY;
+    private double temperature;
+    private volatile int iteration;
+
+    private final QuadTree tree = new QuadTree();
+
+    public ForceLayout(Graph graph, Consumer<Frame> sink, int maxFramesPerSecond) {
+        this.graph = graph;
+        this.sink = sink;
+        this.frameIntervalNanos = 1_000_000_000L / Math.max(1, maxFramesPerSecond);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** Iterations run since the last {@link #start()}. */
+    public int iterations() {
+        return iteration;
+    }
+
+    public void start() {
+        if (running) {
+            return;
+        }
+        // under the graph's lock, so no edit falls between the copy and the first event
+        synchronized (graph) {
+            copyGraph(snapshot());
+            changes.clear();
+            temperature = Math.max(IDEAL_EDGE_LENGTH, Math.sqrt(graph.nodeCount()) * IDEAL_EDGE_LENGTH / 10);
+            graph.addListener(this);
+        }
+        iteration = 0;
+        running = true;
+        worker = new Thread(this::run, "force-layout");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /** Stops the simulation and moves the graph's stations to where it left them. */
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (graph) {
+            graph.removeListener(this);
+            applyChanges();
+            // one batch, so the journal and the views take the whole layout as a single update
+            GraphBatch moves = new GraphBatch();
+            for (int id = 0; id < idCount; id++) {
+                if (names[id] != null && graph.isLive(id) && names[id].equals(graph.nameOf(id))) {
+                    moves.moveNode(names[id], xs[id], ys[id]);
+                }
+            }
+            graph.apply(moves);
+        }
+    }
+
+    @Override
+    public void nodeAdded(int id) {
+        offer(new Change(ADD_NODE, id, -1, graph.nameOf(id), graph.x(id), graph.y(id), null));
+    }
+
+    @Override
+    public void nodeRemoved(int id) {
+        offer(new Change(REMOVE_NODE, id, -1, null, 0, 0, null));
+    }
+
+    @Override
+    public void nodeMoved(int id) {
+        offer(new Change(MOVE_NODE, id, -1, null, graph.x(id), graph.y(id), null));
+    }
+
+    @Override
+    public void edgeAdded(int node1, int node2) {
+        offer(new Change(ADD_EDGE, node1, node2, null, 0, 0, null));
+    }
+
+    @Override
+    public void edgeRemoved(int node1, int node2) {
+        offer(new Change(REMOVE_EDGE, node1, node2, null, 0, 0, null));
+    }
+
+    @Override
+    public void graphReloaded() {
+        offer(new Change(RELOAD, -1, -1, null, 0, 0, snapshot()));
+    }
+
+    private void offer(Change change) {
+        changes.add(change);
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+    }
+
+    private void run() {
+        long lastFrame = 0;
+        boolean published = false;
+        while (running) {
+            if (applyChanges()) {
+                temperature = Math.max(temperature, IDEAL_EDGE_LENGTH);
+                published = false;
+            }
+            if (temperature < MIN_TEMPERATURE) {
+                if (!published) {
+                    publish(true);
+                    published = true;
+                }
+                synchronized (signal) {
+                    if (running && changes.isEmpty()) {
+                        try {
+                            signal.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+                continue;
+            }
+            step();
+            long now = System.nanoTime();
+            if (now - lastFrame >= frameIntervalNanos) {
+                publish(false);
+                lastFrame = now;
+            }
+        }
+    }
+
+    private void publish(boolean settled) {
+        sink.accept(new Frame(names, Arrays.copyOf(xs, idCount), Arrays.copyOf(ys, idCount), iteration, settled));
+    }
+
+    /** One simulation step: accumulate forces, then move every station by at most the temperature. */
+    private void step() {
+        int n = idCount;
+        if (forceX == null || forceX.length < n) {
+            forceX = new double[Math.max(16, n)];
+            forceY = new double[Math.max(16, n)];
+        }
+        tree.build(names, xs, ys, n);
+        // a lone pair settles a little over MIN_NODE_DISTANCE apart
+        double k2 = NodePlacer.MIN_NODE_DISTANCE * NodePlacer.MIN_NODE_DISTANCE;
+        double centerX = tree.sumX[0] / Math.max(1, tree.mass[0]);
+        double centerY = tree.sumY[0] / Math.max(1, tree.mass[0]);
+
+        IntStream.range(0, (n + CHUNK - 1) / CHUNK).parallel().forEach(chunk -> {
+            int[] stack = new int[4 * MAX_DEPTH + 4];
+            int to = Math.min(n, (chunk + 1) * CHUNK);
+            for (int id = chunk * CHUNK; id < to; id++) {
+                if (names[id] == null) {
+                    continue;
+                }
+                tree.repulsion(id, xs[id], ys[id], k2, stack, forceX, forceY);
+                forceX[id] -= GRAVITY * (xs[id] - centerX);
+                forceY[id] -= GRAVITY * (ys[id] - centerY);
+            }
+        });
+
+        for (int a = 0; a < n; a++) {
+            int[] row = adjacency[a];
+            for (int i = 0; i < degree[a]; i++) {
+                int b = row[i];
+                if (b < a) {
+                    continue;
+                }
+                double dx = xs[b] - xs[a];
+                double dy = ys[b] - ys[a];
+                double pull = Math.sqrt(dx * dx + dy * dy) / IDEAL_EDGE_LENGTH;
+                forceX[a] += dx * pull;
+                forceY[a] += dy * pull;
+                forceX[b] -= dx * pull;
+                forceY[b] -= dy * pull;
+            }
+        }
+
+        for (int id = 0; id < n; id++) {
+            if (names[id] == null) {
+                continue;
+            }
+            double length = Math.sqrt(forceX[id] * forceX[id] + forceY[id] * forceY[id]);
+            if (length > 0) {
+                double move = Math.min(length, temperature) / length;
+                xs[id] += forceX[id] * move;
+                ys[id] += forceY[id] * move;
+            }
+        }
+        temperature *= COOLING;
+        iteration++;
+    }
+
+    /** Applies queued graph changes to the worker's copy; returns whether there were any. */
+    private boolean applyChanges() {
+        boolean changed = false;
+        Change change;
+        while ((change = changes.poll()) != null) {
+            changed = true;
+            switch (change.type) {
+                case ADD_NODE:
+                    ensureCapacity(change.a + 1);
+                    idCount = Math.max(idCount, change.a + 1);
+                    names = Arrays.copyOf(names, names.length);
+                    names[change.a] = change.name;
+                    xs[change.a] = change.x;
+                    ys[change.a] = change.y;
+                    degree[change.a] = 0;
+                    break;
+                case REMOVE_NODE:
+                    names = Arrays.copyOf(names, names.length);
+                    names[change.a] = null;
+                    break;
+                case MOVE_NODE:
+                    xs[change.a] = change.x;
+                    ys[change.a] = change.y;
+                    break;
+                case ADD_EDGE:
+                    appendToRow(change.a, change.b);
+                    appendToRow(change.b, change.a);
+                    break;
+                case REMOVE_EDGE:
+                    removeFromRow(change.a, change.b);
+                    removeFromRow(change.b, change.a);
+                    break;
+                case RELOAD:
+                    copyGraph(change.reload);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown layout change " + change.type);
+            }
+        }
+        return changed;
+    }
+
+    /** Copies the graph; must run under the graph's lock. */
+    private Change snapshot() {
+        int n = graph.idCount();
+        String[] copyNames = new String[n];
+        double[] copyXs = new double[n];
+        double[] copyYs = new double[n];
+        int[][] rows = new int[n][];
+        for (int id = 0; id < n; id++) {
+            rows[id] = Arrays.copyOf(graph.neighbors(id), graph.degree(id));
+            if (graph.isLive(id)) {
+                copyNames[id] = graph.nameOf(id);
+                copyXs[id] = graph.x(id);
+                copyYs[id] = graph.y(id);
+            }
+        }
+        Change reload = new Change(RELOAD, n, -1, null, 0, 0, null);
+        reload.names = copyNames;
+        reload.xs = copyXs;
+        reload.ys = copyYs;
+        reload.rows = rows;
+        return reload;
+    }
+
+    private void copyGraph(Change copy) {
+        idCount = copy.a;
+        names = copy.names;
+        xs = copy.xs;
+        ys = copy.ys;
+        adjacency = copy.rows;
+        degree = new int[idCount];
+        for (int id = 0; id < idCount; id++) {
+            degree[id] = adjacency[id].length;
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= names.length) {
+            return;
+        }
+        int length = Math.max(capacity, names.length * 2);
+        names = Arrays.copyOf(names, length);
+        xs = Arrays.copyOf(xs, length);
+        ys = Arrays.copyOf(ys, length);
+        adjacency = Arrays.copyOf(adjacency, length);
+        degree = Arrays.copyOf(degree, length);
+        for (int id = idCount; id < length; id++) {
+            adjacency[id] = new int[0];
+        }
+    }
+
+    private void appendToRow(int id, int neighbor) {
+        if (degree[id] == adjacency[id].length) {
+            adjacency[id] = Arrays.copyOf(adjacency[id], Math.max(4, degree[id] * 2));
+        }
+        adjacency[id][degree[id]++] = neighbor;
+    }
+
+    private void removeFromRow(int id, int neighbor) {
+        int[] row = adjacency[id];
+        for (int i = 0; i < degree[id]; i++) {
+            if (row[i] == neighbor) {
+                row[i] = row[--degree[id]];
+                return;
+            }
+        }
+    }
+
+    private static final class Change {
+
+        final int type;
+        final int a;
+        final int b;
+        final String name;
+        final double x;
+        final double y;
+        final Change reload;
+        String[] names;
+        double[] xs;
+        double[] ys;
+        int[][] rows;
+
+        Change(int type, int a, int b, String name, double x, double y, Change reload) {
+            this.type = type;
+            this.a = a;
+            this.b = b;
+            this.name = name;
+            this.x = x;
+            this.y = y;
+            this.reload = reload;
+        }
+    }
+
+    /**
+     * Point-region quadtree in flat arrays, rebuilt every step. Each cell
+     * keeps the mass and coordinate sums of the stations below it; a leaf
+     * holds one station, except at {@link #MAX_DEPTH}, where stations that
+     * sit on top of each other share a leaf.
+     */
+    private static final class QuadTree {
+
+        private static final int EMPTY = -2;
+        private static final int INTERNAL = -1;
+
+        int[] body = new int[64];
+        int[] children = new int[256];
+        double[] mass = new double[64];
+        double[] sumX = new double[64];
+        double[] sumY = new double[64];
+        double[] centerX = new double[64];
+        double[] centerY = new double[64];
+        double[] half = new double[64];
+        int cellCount;
+
+        void build(String[] names, double[] xs, double[] ys, int n) {
+            double minX = Double.MAX_VALUE;
+            double minY = Double.MAX_VALUE;
+            double maxX = -Double.MAX_VALUE;
+            double maxY = -Double.MAX_VALUE;
+            for (int id = 0; id < n; id++) {
+                if (names[id] != null) {
+                    minX = Math.min(minX, xs[id]);
+                    minY = Math.min(minY, ys[id]);
+                    maxX = Math.max(maxX, xs[id]);
+                    maxY = Math.max(maxY, ys[id]);
+                }
+            }
+            cellCount = 0;
+            if (minX > maxX) {
+                newCell(0, 0, 1);
+                return;
+            }
+            newCell((minX + maxX) / 2, (minY + maxY) / 2, Math.max(maxX - minX, maxY - minY) / 2 + 1);
+            for (int id = 0; id < n; id++) {
+                if (names[id] != null) {
+                    insert(id, xs[id], ys[id]);
+                }
+            }
+        }
+
+        /** Adds the Barnes–Hut repulsion on station {@code id} to its force. */
+        void repulsion(int id, double x, double y, double k2, int[] stack, double[] forceX, double[] forceY) {
+            double fx = 0;
+            double fy = 0;
+            int top = 0;
+            stack[top++] = 0;
+            while (top > 0) {
+                int cell = stack[--top];
+                double m = mass[cell];
+                if (m == 0) {
+                    continue;
+                }
+                int b = body[cell];
+                if (b == id) {
+                    m -= 1;
+                    if (m == 0) {
+                        continue;
+                    }
+                }
+                double dx = x - sumX[cell] / mass[cell];
+                double dy = y - sumY[cell] / mass[cell];
+                double d2 = dx * dx + dy * dy;
+                double size = 2 * half[cell];
+                if (b != INTERNAL || size * size < THETA * THETA * d2) {
+                    if (d2 < 1e-6) {
+                        // stations on the same spot: push apart along a direction picked from the id
+                        double angle = id * 2.399963;
+                        dx = Math.cos(angle);
+                        dy = Math.sin(angle);
+                        d2 = 1;
+                    }
+                    double push = k2 * m / d2;
+                    fx += dx * push;
+                    fy += dy * push;
+                } else {
+                    for (int q = 0; q < 4; q++) {
+                        int child = children[4 * cell + q];
+                        if (child >= 0) {
+                            stack[top++] = child;
+                        }
+                    }
+                }
+            }
+            forceX[id] = fx;
+            forceY[id] = fy;
+        }
+
+        private void insert(int id, double x, double y) {
+            int cell = 0;
+            int depth = 0;
+            while (true) {
+                mass[cell] += 1;
+                sumX[cell] += x;
+                sumY[cell] += y;
+                int b = body[cell];
+                if (b == EMPTY) {
+                    body[cell] = id;
+                    return;
+                }
+                if (b >= 0) {
+                    if (depth >= MAX_DEPTH) {
+                        return;
+                    }
+                    // push the resident station down a level before descending
+                    double bx = sumX[cell] - x;
+                    double by = sumY[cell] - y;
+                    body[cell] = INTERNAL;
+                    int child = childFor(cell, bx, by);
+                    mass[child] = 1;
+                    sumX[child] = bx;
+                    sumY[child] = by;
+                    body[child] = b;
+                }
+                cell = childFor(cell, x, y);
+                depth++;
+            }
+        }
+
+        private int childFor(int cell, double x, double y) {
+            int q = (x >= centerX[cell] ? 1 : 0) | (y >= centerY[cell] ? 2 : 0);
+            int child = children[4 * cell + q];
+            if (child < 0) {
+                double h = half[cell] / 2;
+                child = newCell(centerX[cell] + ((q & 1) != 0 ? h : -h), centerY[cell] + ((q & 2) != 0 ? h : -h), h);
+                children[4 * cell + q] = child;
+            }
+            return child;
+        }
+
+        private int newCell(double cx, double cy, double h) {
+            if (cellCount == body.length) {
+                int length = cellCount * 2;
+                body = Arrays.copyOf(body, length);
+                children = Arrays.copyOf(children, 4 * length);
+                mass = Arrays.copyOf(mass, length);
+                sumX = Arrays.copyOf(sumX, length);
+                sumY = Arrays.copyOf(sumY, length);
+                centerX = Arrays.copyOf(centerX, length);
+                centerY = Arrays.copyOf(centerY, length);
+                half = Arrays.copyOf(half, length);
+            }
+            int cell = cellCount++;
+            body[cell] = EMPTY;
+            Arrays.fill(children, 4 * cell, 4 * cell + 4, -1);
+            mass[cell] = 0;
+            sumX[cell] = 0;
+            sumY[cell] = 0;
+            centerX[cell] = cx;
+            centerY[cell] = cy;
+            half[cell] = h;
+            return cell;
+        }
+    }
+}
@@ -0,0 +1,642 @@
+package com.mycompany.etstrainsystem.engine;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Station graph with a per-node adjacency index. Every station name is given
+ * a dense int id by a {@link StationDictionary} the first time it is seen,
+ * and past that point the graph works on ids only; each id owns an int row holding
+ * the ids of its neighbours, so BFS touches only the edges of the nodes it
+ * visits instead of scanning the whole edge list. Two double rows run in
+ * step with each int row and hold every edge's travel time and distance;
+ * edges added without them get the straight-line length for both.
+ *
+ * The graph has no UI dependencies. Views observe it through
+ * {@link GraphListener}, which is called on the thread that made the change.
+ *
+ * Edits are serialized on the graph's monitor and its own accessors are
+ * meant for the editing thread. Other threads read through
+ * {@link #snapshot()}, which returns an immutable {@link GraphSnapshot} of
+ * the latest version without blocking once that version has been taken.
+ */
+public class Graph implements ReadableGraph {
+
+    private static final int[] EMPTY_ROW = new int[0];
+    private static final double[] EMPTY_WEIGHTS = new double[0];
+    private static final LatencyHistogram ADD_NODE_LATENCY = Metrics.histogram("graph.addNode");
+    private static final LatencyHistogram REMOVE_NODE_LATENCY = Metrics.histogram("graph.removeNode");
+    private static final LatencyHistogram MOVE_NODE_LATENCY = Metrics.histogram("graph.moveNode");
+    private static final LatencyHistogram ADD_EDGE_LATENCY = Metrics.histogram("graph.addEdge");
+    private static final LatencyHistogram REMOVE_EDGE_LATENCY = Metrics.histogram("graph.removeEdge");
+    private static final LatencyHistogram BATCH_LATENCY = Metrics.histogram("graph.batch");
+    private static final LatencyHistogram LOAD_LATENCY = Metrics.histogram("graph.load");
+
+    private StationDictionary dictionary = new StationDictionary();
+    // copied on write, so listeners may come and go from any thread while an edit notifies them
+    private final List<GraphListener> listeners = new CopyOnWriteArrayList<>();
+    private boolean[] live = new boolean[16];
+    private double[] xs = new double[16];
+    private double[] ys = new double[16];
+    private int[][] adjacency = new int[16][];
+    private double[][] travelTimes = new double[16][];
+    private double[][] distances = new double[16][];
+    private int[] degree = new int[16];
+    private int idCount;
+    private int nodeCount;
+    private int edgeCount;
+    // lowered as edges arrive or stations move and kept on removal, where it stays a valid bound
+    private double minRate = Double.POSITIVE_INFINITY;
+    // rows whose rowEpoch is behind snapshotEpoch may be shared with a snapshot
+    private long[] rowEpoch = new long[16];
+    private long snapshotEpoch;
+    private volatile long version;
+    private volatile GraphSnapshot published;
+
+    public void addListener(GraphListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(GraphListener listener) {
+        listeners.remove(listener);
+    }
+
+    public synchronized MutationResult addNode(String name, double x, double y) {
+        MutationEvent event = MutationEvent.start();
+        long start = Metrics.start();
+        MutationResult result = insertNode(name, x, y);
+        ADD_NODE_LATENCY.recordSince(start);
+        event.finish("addNode", name, null, result);
+        return result;
+    }
+
+    private MutationResult insertNode(String name, double x, double y) {
+        int id = dictionary.intern(name);
+        if (id < idCount) {
+            if (live[id]) {
+                return MutationResult.NODE_EXISTS;
+            }
+        } else {
+            idCount = id + 1;
+            ensureCapacity(idCount);
+        }
+        live[id] = true;
+        xs[id] = x;
+        ys[id] = y;
+        adjacency[id] = EMPTY_ROW;
+        travelTimes[id] = EMPTY_WEIGHTS;
+        distances[id] = EMPTY_WEIGHTS;
+        degree[id] = 0;
+        nodeCount++;
+        version++;
+
+        for (GraphListener listener : listeners) {
+            listener.nodeAdded(id);
+        }
+        return MutationResult.OK;
+    }
+
+    public synchronized MutationResult removeNode(String name) {
+        MutationEvent event = MutationEvent.start();
+        long start = Metrics.start();
+        MutationResult result = deleteNode(name);
+        REMOVE_NODE_LATENCY.recordSince(start);
+        event.finish("removeNode", name, null, result);
+        return result;
+    }
+
+    private MutationResult deleteNode(String name) {
+        int id = idOf(name);
+        if (id < 0) {
+            return MutationResult.NODE_NOT_FOUND;
+        }
+        // detach edges one at a time so observers see every edge removal
+        // before the node itself goes away
+        while (degree[id] > 0) {
+            int neighbor = adjacency[id][degree[id] - 1];
+            unlink(id, neighbor);
+        }
+        adjacency[id] = EMPTY_ROW;
+        travelTimes[id] = EMPTY_WEIGHTS;
+        distances[id] = EMPTY_WEIGHTS;
+        live[id] = false;
+        nodeCount--;
+        version++;
+
+        for (GraphListener listener : listeners) {
+            listener.nodeRemoved(id);
+        }
+        return MutationResult.OK;
+    }
+
+    public synchronized MutationResult moveNode(String name, double x, double y) {
+        MutationEvent event = MutationEvent.start();
+        long start = Metrics.start();
+        MutationResult result = relocateNode(name, x, y);
+        MOVE_NODE_LATENCY.recordSince(start);
+        event.finish("moveNode", name, null, result);
+        return result;
+    }
+
+    private MutationResult relocateNode(String name, double x, double y) {
+        int id = idOf(name);
+        if (id < 0) {
+            return MutationResult.NODE_NOT_FOUND;
+        }
+        xs[id] = x;
+        ys[id] = y;
+        // only this station's edges changed length; a shorter edge can only raise its rate
+        for (int i = 0; i < degree[id]; i++) {
+            lowerRate(id, adjacency[id][i], travelTimes[id][i]);
+        }
+        version++;
+
+        for (GraphListener listener : listeners) {
+            listener.nodeMoved(id);
+        }
+        return MutationResult.OK;
+    }
+
+    public synchronized MutationResult addEdge(String node1Name, String node2Name) {
+        return addEdge(node1Name, node2Name, Double.NaN, Double.NaN);
+    }
+
+    /**
+     * Adds an edge with the given travel time and distance; NaN for either
+     * stands for the straight-line length between the two stations.
+     */
+    public synchronized MutationResult addEdge(String node1Name, String node2Name, double travelTime, double distance) {
+        if (travelTime < 0 || distance < 0) {
+            throw new IllegalArgumentException("Travel time and distance must not be negative");
+        }
+        MutationEvent event = MutationEvent.start();
+        long start = Metrics.start();
+        MutationResult result = insertEdge(node1Name, node2Name, travelTime, distance);
+        ADD_EDGE_LATENCY.recordSince(start);
+        event.finish("addEdge", node1Name, node2Name, result);
+        return result;
+    }
+
+    private MutationResult insertEdge(String node1Name, String node2Name, double travelTime, double distance) {
+        int a = idOf(node1Name);
+        if (a < 0) {
+            return MutationResult.NODE_NOT_FOUND;
+        }
+        int b = idOf(node2Name);
+        if (b < 0) {
+            return MutationResult.NODE_NOT_FOUND;
+        }
+        if (a == b) {
+            return MutationResult.SELF_LOOP;
+        }
+        if (hasEdge(a, b)) {
+            return MutationResult.EDGE_EXISTS;
+        }
+        double length = Math.hypot(xs[a] - xs[b], ys[a] - ys[b]);
+        travelTime = Double.isNaN(travelTime) ? length : travelTime;
+        distance = Double.isNaN(distance) ? length : distance;
+        appendToRow(a, b, travelTime, distance);
+        appendToRow(b, a, travelTime, distance);
+        lowerRate(a, b, travelTime);
+        edgeCount++;
+        version++;
+
+        for (GraphListener listener : listeners) {
+            listener.edgeAdded(a, b);
+        }
+        return MutationResult.OK;
+    }
+
+    public synchronized MutationResult removeEdge(String node1Name, String node2Name) {
+        MutationEvent event = MutationEvent.start();
+        long start = Metrics.start();
+        MutationResult result = deleteEdge(node1Name, node2Name);
+        REMOVE_EDGE_LATENCY.recordSince(start);
+        event.finish("removeEdge", node1Name, node2Name, result);
+        return result;
+    }
+
+    private MutationResult deleteEdge(String node1Name, String node2Name) {
+        int a = idOf(node1Name);
+        int b = idOf(node2Name);
+        if (a < 0 || b < 0 || !hasEdge(a, b)) {
+            return MutationResult.EDGE_NOT_FOUND;
+        }
+        unlink(a, b);
+        return MutationResult.OK;
+    }
+
+    public BatchResult apply(GraphBatch batch) {
+        return apply(batch, null);
+    }
+
+    /**
+     * Validates and applies a batch of edits; stations added without a
+     * position are placed by {@code placer} as they are added.
+     */
+    public synchronized BatchResult apply(GraphBatch batch, NodePlacer placer) {
+        MutationEvent event = MutationEvent.start();
+        long start = Metrics.start();
+        BatchResult result = applyBatch(batch, placer);
+        BATCH_LATENCY.recordSince(start);
+        event.finish("batch", null, null, result.committed() ? result.appliedCount() + " applied" : "rejected");
+        return result;
+    }
+
+    private BatchResult applyBatch(GraphBatch batch, NodePlacer placer) {
+        MutationResult[] results = batch.validate(this);
+        for (int i = 0; i < results.length; i++) {
+            GraphBatch.Op op = batch.ops.get(i);
+            if (results[i] == MutationResult.OK && op.type == GraphBatch.ADD_NODE && Double.isNaN(op.x) && placer == null) {
+                throw new IllegalArgumentException("Station '" + op.name1 + "' has no position and no placer was given");
+            }
+            if (results[i] != MutationResult.OK && batch.isAtomic()) {
+                return new BatchResult(results, false);
+            }
+        }
+
+        for (GraphListener listener : listeners) {
+            listener.batchStarted();
+        }
+        try {
+            for (int i = 0; i < results.length; i++) {
+                if (results[i] != MutationResult.OK) {
+                    continue;
+                }
+                GraphBatch.Op op = batch.ops.get(i);
+                switch (op.type) {
+                    case GraphBatch.ADD_NODE:
+                        if (Double.isNaN(op.x)) {
+                            double[] position = placer.findPosition();
+                            addNode(op.name1, position[0], position[1]);
+                        } else {
+                            addNode(op.name1, op.x, op.y);
+                        }
+                        break;
+                    case GraphBatch.REMOVE_NODE:
+                        removeNode(op.name1);
+                        break;
+                    case GraphBatch.MOVE_NODE:
+                        moveNode(op.name1, op.x, op.y);
+                        break;
+                    case GraphBatch.ADD_EDGE:
+                        addEdge(op.name1, op.name2, op.x, op.y);
+                        break;
+                    default:
+                        removeEdge(op.name1, op.name2);
+                        break;
+                }
+            }
+        } finally {
+            for (GraphListener listener : listeners) {
+                listener.batchFinished();
+            }
+        }
+        return new BatchResult(results, true);
+    }
+
+    /**
+     * Replaces the whole graph in one pass from an adjacency in CSR form:
+     * the neighbours of station {@code i} are
+     * {@code targets[offsets[i]] .. targets[offsets[i + 1] - 1]}, and their
+     * travel times and distances sit at the same positions of
+     * {@code travelTimes} and {@code distances}. Either array may be null,
+     * and NaN entries get the straight-line default. The adjacency must be
+     * symmetric and free of self loops and duplicates, and is checked to be
+     * before anything changes, so a bad input leaves the graph as it was.
+     * Listeners get a single {@link GraphListener#graphReloaded()} instead
+     * of one event per station and edge.
+     *
+     * @throws IllegalArgumentException if the names repeat or the adjacency is malformed
+     */
+    public synchronized void load(String[] names, double[] xs, double[] ys, int nodeCount, int[] offsets, int[] targets,
+            double[] travelTimes, double[] distances) {
+        MutationEvent event = MutationEvent.start();
+        long start = Metrics.start();
+        if (names.length < nodeCount || xs.length < nodeCount || ys.length < nodeCount) {
+            throw new IllegalArgumentException("Fewer names or positions than " + nodeCount + " stations");
+        }
+        checkAdjacency(nodeCount, offsets, targets, travelTimes, distances);
+        StationDictionary newDictionary = new StationDictionary(nodeCount);
+        for (int id = 0; id < nodeCount; id++) {
+            if (newDictionary.intern(names[id]) != id) {
+                throw new IllegalArgumentException("Duplicate station name '" + names[id] + "'");
+            }
+        }
+
+        int capacity = Math.max(16, nodeCount);
+        this.xs = Arrays.copyOf(xs, capacity);
+        this.ys = Arrays.copyOf(ys, capacity);
+        this.live = new boolean[capacity];
+        this.adjacency = new int[capacity][];
+        this.travelTimes = new double[capacity][];
+        this.distances = new double[capacity][];
+        this.degree = new int[capacity];
+        minRate = Double.POSITIVE_INFINITY;
+        for (int id = 0; id < nodeCount; id++) {
+            int from = offsets[id];
+            int to = offsets[id + 1];
+            live[id] = true;
+            degree[id] = to - from;
+            if (from == to) {
+                adjacency[id] = EMPTY_ROW;
+                this.travelTimes[id] = EMPTY_WEIGHTS;
+                this.distances[id] = EMPTY_WEIGHTS;
+                continue;
+            }
+            adjacency[id] = Arrays.copyOfRange(targets, from, to);
+            double[] times = new double[to - from];
+            double[] lengths = new double[to - from];
+            for (int i = from; i < to; i++) {
+                double time = travelTimes == null ? Double.NaN : travelTimes[i];
+                double distance = distances == null ? Double.NaN : distances[i];
+                if (Double.isNaN(time) || Double.isNaN(distance)) {
+                    double length = Math.hypot(xs[id] - xs[targets[i]], ys[id] - ys[targets[i]]);
+                    time = Double.isNaN(time) ? length : time;
+                    distance = Double.isNaN(distance) ? length : distance;
+                }
+                times[i - from] = time;
+                lengths[i - from] = distance;
+                lowerRate(id, targets[i], time);
+            }
+            this.travelTimes[id] = times;
+            this.distances[id] = lengths;
+        }
+        dictionary = newDictionary;
+        idCount = nodeCount;
+        this.nodeCount = nodeCount;
+        edgeCount = offsets[nodeCount] / 2;
+        rowEpoch = new long[capacity];
+        snapshotEpoch = 0;
+        version++;
+
+        for (GraphListener listener : listeners) {
+            listener.graphReloaded();
+        }
+        LOAD_LATENCY.recordSince(start);
+        event.finish("load", null, null, nodeCount + " stations");
+    }
+
+    private static void checkAdjacency(int nodeCount, int[] offsets, int[] targets,
+            double[] travelTimes, double[] distances) {
+        if (nodeCount < 0 || offsets.length <= nodeCount || offsets[0] != 0) {
+            throw new IllegalArgumentException("Offsets must start at 0 and cover every station");
+        }
+        for (int id = 0; id < nodeCount; id++) {
+            if (offsets[id + 1] < offsets[id]) {
+                throw new IllegalArgumentException("Offsets of station " + id + " go backwards");
+            }
+        }
+        int targetCount = offsets[nodeCount];
+        if (targetCount > targets.length || travelTimes != null && travelTimes.length < targetCount
+                || distances != null && distances.length < targetCount) {
+            throw new IllegalArgumentException("Offsets run past the " + targets.length + " targets");
+        }
+        // every row as a set: in range, no self loop, no repeat, and the mirror of its column
+        int[] columnOffsets = new int[nodeCount + 1];
+        for (int i = 0; i < targetCount; i++) {
+            if (targets[i] < 0 || targets[i] >= nodeCount) {
+                throw new IllegalArgumentException("Target " + targets[i] + " is not a station");
+            }
+            columnOffsets[targets[i] + 1]++;
+        }
+        for (int id = 0; id < nodeCount; id++) {
+            columnOffsets[id + 1] += columnOffsets[id];
+        }
+        int[] sources = new int[targetCount];
+        int[] fill = Arrays.copyOf(columnOffsets, nodeCount);
+        for (int id = 0; id < nodeCount; id++) {
+            for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+                sources[fill[targets[i]]++] = id;
+            }
+        }
+        int[] mark = new int[nodeCount];
+        for (int id = 0; id < nodeCount; id++) {
+            if (columnOffsets[id + 1] - columnOffsets[id] != offsets[id + 1] - offsets[id]) {
+                throw new IllegalArgumentException("Adjacency of station " + id + " is not symmetric");
+            }
+            for (int i = offsets[id]; i < offsets[id + 1]; i++) {
+                int target = targets[i];
+                if (target == id) {
+                    throw new IllegalArgumentException("Station " + id + " has a self loop");
+                }
+                if (mark[target] == id + 1) {
+                    throw new IllegalArgumentException("Station " + id + " lists " + target + " twice");
+                }
+                mark[target] = id + 1;
+            }
+            for (int i = columnOffsets[id]; i < columnOffsets[id + 1]; i++) {
+                if (mark[sources[i]] != id + 1) {
+                    throw new IllegalArgumentException("Adjacency of station " + id + " is not symmetric");
+                }
+            }
+            if ((travelTimes != null && hasNegative(travelTimes, offsets[id], offsets[id + 1]))
+                    || (distances != null && hasNegative(distances, offsets[id], offsets[id + 1]))) {
+                throw new IllegalArgumentException("Station " + id + " has a negative edge weight");
+            }
+        }
+    }
+
+    private static boolean hasNegative(double[] weights, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (weights[i] < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean hasEdge(String node1Name, String node2Name) {
+        int a = idOf(node1Name);
+        int b = idOf(node2Name);
+        return a >= 0 && b >= 0 && hasEdge(a, b);
+    }
+
+    @Override
+    public boolean hasEdge(int a, int b) {
+        // scan the shorter of the two rows
+        if (degree[a] > degree[b]) {
+            int t = a;
+            a = b;
+            b = t;
+        }
+        int[] row = adjacency[a];
+        for (int i = 0; i < degree[a]; i++) {
+            if (row[i] == b) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int idOf(String name) {
+        int id = dictionary.idOf(name);
+        return id >= 0 && live[id] ? id : -1;
+    }
+
+    @Override
+    public String nameOf(int id) {
+        return dictionary.nameOf(id);
+    }
+
+    @Override
+    public int idCount() {
+        return idCount;
+    }
+
+    @Override
+    public boolean isLive(int id) {
+        return live[id];
+    }
+
+    @Override
+    public double x(int id) {
+        return xs[id];
+    }
+
+    @Override
+    public double y(int id) {
+        return ys[id];
+    }
+
+    @Override
+    public int degree(int id) {
+        return degree[id];
+    }
+
+    @Override
+    public int[] neighbors(int id) {
+        return adjacency[id];
+    }
+
+    @Override
+    public double[] travelTimes(int id) {
+        return travelTimes[id];
+    }
+
+    @Override
+    public double[] distances(int id) {
+        return distances[id];
+    }
+
+    @Override
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    @Override
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    /** Incremented by every edit; a snapshot records the version it was taken at. */
+    @Override
+    public long version() {
+        return version;
+    }
+
+    @Override
+    public double minTravelRate() {
+        return minRate == Double.POSITIVE_INFINITY ? 0 : minRate;
+    }
+
+    /**
+     * Returns an immutable snapshot of the latest version. Safe to call from
+     * any thread; only the first call after an edit copies anything, and
+     * that copy is O(stations), with adjacency rows shared.
+     */
+    public GraphSnapshot snapshot() {
+        GraphSnapshot current = published;
+        if (current != null && current.version() == version) {
+            return current;
+        }
+        synchronized (this) {
+            current = published;
+            if (current == null || current.version() != version) {
+                current = new GraphSnapshot(version, dictionary, Arrays.copyOf(live, idCount),
+                        Arrays.copyOf(xs, idCount), Arrays.copyOf(ys, idCount), Arrays.copyOf(adjacency, idCount),
+                        Arrays.copyOf(travelTimes, idCount), Arrays.copyOf(distances, idCount),
+                        Arrays.copyOf(degree, idCount), idCount, nodeCount, edgeCount, minTravelRate());
+                snapshotEpoch++;
+                published = current;
+            }
+            return current;
+        }
+    }
+
+    private void unlink(int a, int b) {
+        removeFromRow(a, b);
+        removeFromRow(b, a);
+        edgeCount--;
+        version++;
+
+        for (GraphListener listener : listeners) {
+            listener.edgeRemoved(a, b);
+        }
+    }
+
+    private void lowerRate(int a, int b, double travelTime) {
+        double length = Math.hypot(xs[a] - xs[b], ys[a] - ys[b]);
+        // an edge joining two stations at the same spot bounds nothing
+        if (length > 0) {
+            minRate = Math.min(minRate, travelTime / length);
+        }
+    }
+
+    private void appendToRow(int id, int neighbor, double travelTime, double distance) {
+        int[] row = adjacency[id];
+        if (degree[id] == row.length) {
+            int length = Math.max(4, row.length * 2);
+            row = Arrays.copyOf(row, length);
+            adjacency[id] = row;
+            travelTimes[id] = Arrays.copyOf(travelTimes[id], length);
+            distances[id] = Arrays.copyOf(distances[id], length);
+        }
+        travelTimes[id][degree[id]] = travelTime;
+        distances[id][degree[id]] = distance;
+        row[degree[id]++] = neighbor;
+    }
+
+    private void removeFromRow(int id, int neighbor) {
+        // shift rather than swap so rows keep edge insertion order, which
+        // keeps BFS visit order identical to the old edge-list scan
+        int[] row = adjacency[id];
+        if (rowEpoch[id] != snapshotEpoch) {
+            // a snapshot may still read this row; shift a private copy
+            row = Arrays.copyOf(row, row.length);
+            adjacency[id] = row;
+            travelTimes[id] = Arrays.copyOf(travelTimes[id], row.length);
+            distances[id] = Arrays.copyOf(distances[id], row.length);
+            rowEpoch[id] = snapshotEpoch;
+        }
+        double[] times = travelTimes[id];
+        double[] lengths = distances[id];
+        int last = degree[id] - 1;
+        for (int i = 0; i <= last; i++) {
+            if (row[i] == neighbor) {
+                System.arraycopy(row, i + 1, row, i, last - i);
+                System.arraycopy(times, i + 1, times, i, last - i);
+                System.arraycopy(lengths, i + 1, lengths, i, last - i);
+                degree[id] = last;
+                return;
+            }
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= live.length) {
+            return;
+        }
+        int newLength = Math.max(capacity, live.length * 2);
+        live = Arrays.copyOf(live, newLength);
+        xs = Arrays.copyOf(xs, newLength);
+        ys = Arrays.copyOf(ys, newLength);
+        adjacency = Arrays.copyOf(adjacency, newLength);
+        travelTimes = Arrays.copyOf(travelTimes, newLength);
+        distances = Arrays.copyOf(distances, newLength);
+        degree = Arrays.copyOf(degree, newLength);
+        rowEpoch = Arrays.copyOf(rowEpoch, newLength);
+    }
+}
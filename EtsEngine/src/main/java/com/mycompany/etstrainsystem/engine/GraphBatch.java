@@ -0,0 +1,269 @@
+package com.mycompany.etstrainsystem.engine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A list of edits applied to a graph in one go with {@link Graph#apply}.
+ * The whole batch is validated first against the graph as the earlier
+ * edits in the batch would leave it, so each edit gets the result it would
+ * have had on its own. Edits that fail are skipped; in an atomic batch a
+ * single failure means nothing is applied.
+ *
+ * Listeners see the batch's events between
+ * {@link GraphListener#batchStarted()} and
+ * {@link GraphListener#batchFinished()}, so a view can redraw once per batch.
+ */
+public class GraphBatch {
+
+    static final int ADD_NODE = 1;
+    static final int REMOVE_NODE = 2;
+    static final int ADD_EDGE = 3;
+    static final int REMOVE_EDGE = 4;
+    static final int MOVE_NODE = 5;
+
+    final List<Op> ops = new ArrayList<>();
+    private boolean atomic;
+
+    /** Adds a station at a fixed position. */
+    public GraphBatch addNode(String name, double x, double y) {
+        ops.add(new Op(ADD_NODE, name, null, x, y));
+        return this;
+    }
+
+    /** Adds a station at a free spot chosen by the {@link NodePlacer} passed to {@link Graph#apply}. */
+    public GraphBatch addNode(String name) {
+        return addNode(name, Double.NaN, Double.NaN);
+    }
+
+    public GraphBatch removeNode(String name) {
+        ops.add(new Op(REMOVE_NODE, name, null, 0, 0));
+        return this;
+    }
+
+    public GraphBatch moveNode(String name, double x, double y) {
+        ops.add(new Op(MOVE_NODE, name, null, x, y));
+        return this;
+    }
+
+    public GraphBatch addEdge(String node1Name, String node2Name) {
+        return addEdge(node1Name, node2Name, Double.NaN, Double.NaN);
+    }
+
+    /** Adds an edge with the given weights; see {@link Graph#addEdge(String, String, double, double)}. */
+    public GraphBatch addEdge(String node1Name, String node2Name, double travelTime, double distance) {
+        if (travelTime < 0 || distance < 0) {
+            throw new IllegalArgumentException("Travel time and distance must not be negative");
+        }
+        ops.add(new Op(ADD_EDGE, node1Name, node2Name, travelTime, distance));
+        return this;
+    }
+
+    public GraphBatch removeEdge(String node1Name, String node2Name) {
+        ops.add(new Op(REMOVE_EDGE, node1Name, node2Name, 0, 0));
+        return this;
+    }
+
+    /** Makes the batch all-or-nothing. */
+    public GraphBatch atomic(boolean atomic) {
+        this.atomic = atomic;
+        return this;
+    }
+
+    public boolean isAtomic() {
+        return atomic;
+    }
+
+    public int size() {
+        return ops.size();
+    }
+
+    /** Names of the stations the batch adds, in order. */
+    public List<String> addedNodeNames() {
+        List<String> result = new ArrayList<>();
+        for (Op op : ops) {
+            if (op.type == ADD_NODE) {
+                result.add(op.name1);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Parses a batch script, one edit per line, fields separated by a comma
+     * or a tab; blank lines and lines starting with '#' are skipped:
+     *
+     * <pre>
+     * add-node,NAME[,X,Y]
+     * remove-node,NAME
+     * move-node,NAME,X,Y
+     * add-edge,NAME1,NAME2[,TIME,DISTANCE]
+     * remove-edge,NAME1,NAME2
+     * </pre>
+     *
+     * @throws IllegalArgumentException naming the first malformed line
+     */
+    public static GraphBatch parse(List<String> lines) {
+        GraphBatch batch = new GraphBatch();
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("[,\t]");
+            for (int f = 0; f < fields.length; f++) {
+                fields[f] = fields[f].trim();
+            }
+            try {
+                switch (fields[0]) {
+                    case "add-node":
+                        if (fields.length == 2) {
+                            batch.addNode(fields[1]);
+                        } else if (fields.length == 4) {
+                            batch.addNode(fields[1], Double.parseDouble(fields[2]), Double.parseDouble(fields[3]));
+                        } else {
+                            throw new IllegalArgumentException("expected add-node,NAME[,X,Y]");
+                        }
+                        break;
+                    case "remove-node":
+                        expectFields(fields, 2, "remove-node,NAME");
+                        batch.removeNode(fields[1]);
+                        break;
+                    case "move-node":
+                        expectFields(fields, 4, "move-node,NAME,X,Y");
+                        batch.moveNode(fields[1], Double.parseDouble(fields[2]), Double.parseDouble(fields[3]));
+                        break;
+                    case "add-edge":
+                        if (fields.length == 5) {
+                            batch.addEdge(fields[1], fields[2], Double.parseDouble(fields[3]), Double.parseDouble(fields[4]));
+                        } else {
+                            expectFields(fields, 3, "add-edge,NAME1,NAME2[,TIME,DISTANCE]");
+                            batch.addEdge(fields[1], fields[2]);
+                        }
+                        break;
+                    case "remove-edge":
+                        expectFields(fields, 3, "remove-edge,NAME1,NAME2");
+                        batch.removeEdge(fields[1], fields[2]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown command '" + fields[0] + "'");
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Line " + (i + 1) + ": bad number", e);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+        return batch;
+    }
+
+    private static void expectFields(String[] fields, int count, String usage) {
+        if (fields.length != count || fields[count - 1].isEmpty()) {
+            throw new IllegalArgumentException("expected " + usage);
+        }
+    }
+
+    /**
+     * Works out every edit's result without touching the graph, tracking
+     * what the earlier edits in the batch would have changed.
+     */
+    MutationResult[] validate(Graph graph) {
+        MutationResult[] results = new MutationResult[ops.size()];
+        Map<String, Boolean> nodeLive = new HashMap<>();
+        Map<String, Integer> nodeRemovedAt = new HashMap<>();
+        Map<String, Integer> edgeAddedAt = new HashMap<>();
+        Map<String, Integer> edgeRemovedAt = new HashMap<>();
+        for (int i = 0; i < ops.size(); i++) {
+            Op op = ops.get(i);
+            switch (op.type) {
+                case ADD_NODE:
+                    if (isLive(graph, nodeLive, op.name1)) {
+                        results[i] = MutationResult.NODE_EXISTS;
+                    } else {
+                        nodeLive.put(op.name1, true);
+                        results[i] = MutationResult.OK;
+                    }
+                    break;
+                case REMOVE_NODE:
+                    if (!isLive(graph, nodeLive, op.name1)) {
+                        results[i] = MutationResult.NODE_NOT_FOUND;
+                    } else {
+                        nodeLive.put(op.name1, false);
+                        nodeRemovedAt.put(op.name1, i);
+                        results[i] = MutationResult.OK;
+                    }
+                    break;
+                case MOVE_NODE:
+                    results[i] = isLive(graph, nodeLive, op.name1) ? MutationResult.OK : MutationResult.NODE_NOT_FOUND;
+                    break;
+                case ADD_EDGE:
+                    if (!isLive(graph, nodeLive, op.name1) || !isLive(graph, nodeLive, op.name2)) {
+                        results[i] = MutationResult.NODE_NOT_FOUND;
+                    } else if (op.name1.equals(op.name2)) {
+                        results[i] = MutationResult.SELF_LOOP;
+                    } else if (edgeExists(graph, op, nodeRemovedAt, edgeAddedAt, edgeRemovedAt)) {
+                        results[i] = MutationResult.EDGE_EXISTS;
+                    } else {
+                        edgeAddedAt.put(edgeKey(op), i);
+                        results[i] = MutationResult.OK;
+                    }
+                    break;
+                case REMOVE_EDGE:
+                    if (!isLive(graph, nodeLive, op.name1) || !isLive(graph, nodeLive, op.name2)
+                            || !edgeExists(graph, op, nodeRemovedAt, edgeAddedAt, edgeRemovedAt)) {
+                        results[i] = MutationResult.EDGE_NOT_FOUND;
+                    } else {
+                        edgeRemovedAt.put(edgeKey(op), i);
+                        results[i] = MutationResult.OK;
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown batch operation " + op.type);
+            }
+        }
+        return results;
+    }
+
+    private static boolean isLive(Graph graph, Map<String, Boolean> nodeLive, String name) {
+        Boolean live = nodeLive.get(name);
+        return live != null ? live : graph.containsNode(name);
+    }
+
+    /** Whether the edge exists at this point of the batch; both ends are known to be live. */
+    private static boolean edgeExists(Graph graph, Op op, Map<String, Integer> nodeRemovedAt,
+            Map<String, Integer> edgeAddedAt, Map<String, Integer> edgeRemovedAt) {
+        String key = edgeKey(op);
+        int added = edgeAddedAt.getOrDefault(key, -1);
+        // removing either end removed the edge too
+        int removed = Math.max(edgeRemovedAt.getOrDefault(key, -1),
+                Math.max(nodeRemovedAt.getOrDefault(op.name1, -1), nodeRemovedAt.getOrDefault(op.name2, -1)));
+        if (added < 0 && removed < 0) {
+            return graph.hasEdge(op.name1, op.name2);
+        }
+        return added > removed;
+    }
+
+    private static String edgeKey(Op op) {
+        return op.name1.compareTo(op.name2) < 0 ? op.name1 + '\0' + op.name2 : op.name2 + '\0' + op.name1;
+    }
+
+    static final class Op {
+
+        final int type;
+        final String name1;
+        final String name2;
+        // position of an added or moved station, or travel time and distance of an added edge
+        final double x;
+        final double y;
+
+        Op(int type, String name1, String name2, double x, double y) {
+            this.type = type;
+            this.name1 = name1;
+            this.name2 = name2;
+            this.x = x;
+            this.y = y;
+        }
+    }
+}
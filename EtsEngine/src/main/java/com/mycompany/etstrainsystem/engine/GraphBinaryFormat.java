@@ -0,0 +1,224 @@
+package com.mycompany.etstrainsystem.engine;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Compact little-endian snapshot of a graph. Live stations are renumbered
+ * densely on write, so the file is a header followed by flat sections that
+ * load with bulk copies straight into a CSR adjacency:
+ *
+ * <pre>
+ * int    magic 'ETSG', int version, int nodeCount, int targetCount, int nameBytes
+ * int    nameLength[nodeCount]
+ * byte   names[nameBytes]              UTF-8, back to back
+ * double x[nodeCount], y[nodeCount]
+ * int    offsets[nodeCount + 1]
+ * int    targets[targetCount]          both directions of every edge
+ * double travelTime[targetCount]       in step with targets
+ * double distance[targetCount]
+ * </pre>
+ *
+ * Version 1 files, which stop after the targets, still load; their edges
+ * get the straight-line default weights.
+ */
+public final class GraphBinaryFormat {
+
+    private static final int MAGIC = 0x47535445;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 5 * Integer.BYTES;
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private GraphBinaryFormat() {
+    }
+
+    public static void write(Graph graph, Path file) throws IOException {
+        int n = graph.nodeCount();
+        int[] dense = new int[graph.idCount()];
+        int[] order = new int[n];
+        byte[][] nameBytes = new byte[n][];
+        int totalNameBytes = 0;
+        int next = 0;
+        for (int id = 0; id < graph.idCount(); id++) {
+            if (graph.isLive(id)) {
+                dense[id] = next;
+                order[next] = id;
+                nameBytes[next] = graph.nameOf(id).getBytes(StandardCharsets.UTF_8);
+                totalNameBytes += nameBytes[next].length;
+                next++;
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(2 * graph.edgeCount()).putInt(totalNameBytes);
+            for (byte[] name : nameBytes) {
+                ensure(channel, buffer, Integer.BYTES);
+                buffer.putInt(name.length);
+            }
+            for (byte[] name : nameBytes) {
+                int written = 0;
+                while (written < name.length) {
+                    ensure(channel, buffer, 1);
+                    int count = Math.min(buffer.remaining(), name.length - written);
+                    buffer.put(name, written, count);
+                    written += count;
+                }
+            }
+            for (int id : order) {
+                ensure(channel, buffer, Double.BYTES);
+                buffer.putDouble(graph.x(id));
+            }
+            for (int id : order) {
+                ensure(channel, buffer, Double.BYTES);
+                buffer.putDouble(graph.y(id));
+            }
+            int offset = 0;
+            for (int id : order) {
+                ensure(channel, buffer, Integer.BYTES);
+                buffer.putInt(offset);
+                offset += graph.degree(id);
+            }
+            ensure(channel, buffer, Integer.BYTES);
+            buffer.putInt(offset);
+            for (int id : order) {
+                int[] row = graph.neighbors(id);
+                for (int i = 0; i < graph.degree(id); i++) {
+                    ensure(channel, buffer, Integer.BYTES);
+                    buffer.putInt(dense[row[i]]);
+                }
+            }
+            for (int id : order) {
+                double[] times = graph.travelTimes(id);
+                for (int i = 0; i < graph.degree(id); i++) {
+                    ensure(channel, buffer, Double.BYTES);
+                    buffer.putDouble(times[i]);
+                }
+            }
+            for (int id : order) {
+                double[] lengths = graph.distances(id);
+                for (int i = 0; i < graph.degree(id); i++) {
+                    ensure(channel, buffer, Double.BYTES);
+                    buffer.putDouble(lengths[i]);
+                }
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    public static void read(Path file, Graph graph) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException("Not a graph snapshot: " + file);
+            }
+            ByteBuffer header = map(channel, 0, HEADER_BYTES);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a graph snapshot: " + file);
+            }
+            int version = header.getInt();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            int n = header.getInt();
+            int targetCount = header.getInt();
+            int nameBytes = header.getInt();
+            if (n < 0 || targetCount < 0 || nameBytes < 0) {
+                throw corrupt(file, "negative section size");
+            }
+
+            long position = HEADER_BYTES;
+            ByteBuffer lengths = map(channel, position, (long) n * Integer.BYTES);
+            int[] nameLengths = new int[n];
+            lengths.asIntBuffer().get(nameLengths);
+            position += (long) n * Integer.BYTES;
+            long nameTotal = 0;
+            for (int length : nameLengths) {
+                if (length < 0) {
+                    throw corrupt(file, "negative name length");
+                }
+                nameTotal += length;
+            }
+            if (nameTotal != nameBytes) {
+                throw corrupt(file, "name lengths do not add up to " + nameBytes + " bytes");
+            }
+
+            byte[] nameData = new byte[nameBytes];
+            map(channel, position, nameBytes).get(nameData);
+            position += nameBytes;
+            String[] names = new String[n];
+            int nameOffset = 0;
+            for (int id = 0; id < n; id++) {
+                names[id] = new String(nameData, nameOffset, nameLengths[id], StandardCharsets.UTF_8);
+                nameOffset += nameLengths[id];
+            }
+
+            double[] xs = new double[n];
+            double[] ys = new double[n];
+            map(channel, position, (long) n * Double.BYTES).asDoubleBuffer().get(xs);
+            position += (long) n * Double.BYTES;
+            map(channel, position, (long) n * Double.BYTES).asDoubleBuffer().get(ys);
+            position += (long) n * Double.BYTES;
+
+            int[] offsets = new int[n + 1];
+            map(channel, position, (long) (n + 1) * Integer.BYTES).asIntBuffer().get(offsets);
+            position += (long) (n + 1) * Integer.BYTES;
+
+            int[] targets = new int[targetCount];
+            map(channel, position, (long) targetCount * Integer.BYTES).asIntBuffer().get(targets);
+            position += (long) targetCount * Integer.BYTES;
+
+            double[] travelTimes = null;
+            double[] distances = null;
+            if (version >= 2) {
+                travelTimes = new double[targetCount];
+                map(channel, position, (long) targetCount * Double.BYTES).asDoubleBuffer().get(travelTimes);
+                position += (long) targetCount * Double.BYTES;
+                distances = new double[targetCount];
+                map(channel, position, (long) targetCount * Double.BYTES).asDoubleBuffer().get(distances);
+            }
+
+            if (offsets[n] != targetCount) {
+                throw corrupt(file, "offsets end at " + offsets[n] + " of " + targetCount + " targets");
+            }
+            try {
+                graph.load(names, xs, ys, n, offsets, targets, travelTimes, distances);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Corrupt snapshot " + file + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    private static IOException corrupt(Path file, String reason) {
+        return new IOException("Corrupt snapshot " + file + ": " + reason);
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        if (size > Integer.MAX_VALUE || position + size > channel.size()) {
+            throw new IOException("Truncated or oversized graph snapshot section");
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private static void ensure(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush(channel, buffer);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
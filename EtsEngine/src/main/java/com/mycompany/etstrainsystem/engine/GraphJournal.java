@@ -0,0 +1,436 @@
+package com.mycompany.etstrainsystem.engine;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Write-ahead journal for graph edits, with periodic compacted snapshots.
+ *
+ * Every change the graph reports is encoded as a numbered record and queued
+ * in memory; a background thread writes whatever has queued up and fsyncs it
+ * once, so edits arriving together share a single fsync. {@link #sync()}
+ * blocks until everything queued so far is on disk, which is the point at
+ * which an edit counts as acknowledged.
+ *
+ * Every {@code checkpointEvery} records the current graph is written as a
+ * {@link GraphBinaryFormat} snapshot and a fresh journal segment is started,
+ * so recovery loads the newest snapshot and replays at most that many
+ * records no matter how long the edit history is. A record torn by a crash
+ * fails its checksum and ends the replay.
+ *
+ * Records arrive through {@link GraphListener} while the graph's monitor is
+ * held, so edits from several threads are journalled in the order they were
+ * applied. A checkpoint takes the same monitor, so the snapshot it writes
+ * matches the last record exactly while other threads keep editing.
+ */
+public class GraphJournal implements GraphListener, Closeable {
+
+    public static final int DEFAULT_CHECKPOINT_EVERY = 50_000;
+
+    private static final LatencyHistogram SYNC_LATENCY = Metrics.histogram("journal.sync");
+    private static final LatencyHistogram CHECKPOINT_LATENCY = Metrics.histogram("journal.checkpoint");
+    private static final byte ADD_NODE = 1;
+    private static final byte REMOVE_NODE = 2;
+    private static final byte ADD_EDGE = 3;
+    private static final byte REMOVE_EDGE = 4;
+    private static final byte MOVE_NODE = 5;
+
+    private final Path directory;
+    private final Graph graph;
+    private final int checkpointEvery;
+    private final Thread flusher;
+
+    private FileChannel segment;
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long lastSequence;
+    private long durableSequence;
+    private long recordsSinceCheckpoint;
+    private boolean recovered;
+    private boolean closed;
+    private IOException failure;
+
+    private GraphJournal(Path directory, Graph graph, int checkpointEvery) {
+        this.directory = directory;
+        this.graph = graph;
+        this.checkpointEvery = checkpointEvery;
+        this.flusher = new Thread(this::flushLoop, "graph-journal-flusher");
+        this.flusher.setDaemon(true);
+    }
+
+    public static GraphJournal open(Path directory, Graph graph) throws IOException {
+        return open(directory, graph, DEFAULT_CHECKPOINT_EVERY);
+    }
+
+    /**
+     * Restores {@code graph} from the newest snapshot and journal tail in
+     * {@code directory}, then starts journaling its further changes.
+     */
+    public static GraphJournal open(Path directory, Graph graph, int checkpointEvery) throws IOException {
+        Files.createDirectories(directory);
+        GraphJournal journal = new GraphJournal(directory, graph, checkpointEvery);
+        journal.recover();
+        journal.segment = FileChannel.open(journal.segmentPath(journal.lastSequence + 1),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        journal.forceDirectory();
+        graph.addListener(journal);
+        journal.flusher.start();
+        return journal;
+    }
+
+    /** Whether {@link #open} found an earlier snapshot or journal to restore. */
+    public boolean recovered() {
+        return recovered;
+    }
+
+    /** Sequence number of the last record handed to the journal. */
+    public synchronized long lastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Blocks until every record queued so far has been fsynced, then runs a
+     * checkpoint if one is due.
+     */
+    public void sync() throws IOException {
+        long start = Metrics.start();
+        awaitDurable();
+        SYNC_LATENCY.recordSince(start);
+        boolean due;
+        synchronized (this) {
+            due = recordsSinceCheckpoint >= checkpointEvery;
+        }
+        if (due) {
+            checkpoint();
+        }
+    }
+
+    /** Writes a snapshot of the current graph and starts a new, empty journal segment. */
+    public void checkpoint() throws IOException {
+        long start = Metrics.start();
+        // graph monitor before journal monitor, the order edits take them in
+        synchronized (graph) {
+            awaitDurable();
+            synchronized (this) {
+                Path snapshot = snapshotPath(lastSequence);
+                Path temporary = directory.resolve(snapshot.getFileName() + ".tmp");
+                GraphBinaryFormat.write(graph, temporary);
+                try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                    channel.force(true);
+                }
+                Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+                segment.close();
+                Path newSegment = segmentPath(lastSequence + 1);
+                segment = FileChannel.open(newSegment, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+                forceDirectory();
+
+                for (Path file : listFiles()) {
+                    if (!file.equals(snapshot) && !file.equals(newSegment)) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+                recordsSinceCheckpoint = 0;
+            }
+        }
+        CHECKPOINT_LATENCY.recordSince(start);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            awaitDurable();
+        } finally {
+            synchronized (this) {
+                closed = true;
+                notifyAll();
+            }
+            graph.removeListener(this);
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            segment.close();
+        }
+    }
+
+    @Override
+    public void nodeAdded(int id) {
+        append(ADD_NODE, graph.nameOf(id), null, graph.x(id), graph.y(id));
+    }
+
+    @Override
+    public void nodeRemoved(int id) {
+        append(REMOVE_NODE, graph.nameOf(id), null, 0, 0);
+    }
+
+    @Override
+    public void nodeMoved(int id) {
+        append(MOVE_NODE, graph.nameOf(id), null, graph.x(id), graph.y(id));
+    }
+
+    @Override
+    public void edgeAdded(int node1, int node2) {
+        append(ADD_EDGE, graph.nameOf(node1), graph.nameOf(node2),
+                graph.travelTime(node1, node2), graph.distance(node1, node2));
+    }
+
+    @Override
+    public void edgeRemoved(int node1, int node2) {
+        append(REMOVE_EDGE, graph.nameOf(node1), graph.nameOf(node2), 0, 0);
+    }
+
+    @Override
+    public void graphReloaded() {
+        // a bulk load has no record form; persist it as a snapshot right away
+        try {
+            checkpoint();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void append(byte type, String name1, String name2, double x, double y) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            synchronized (this) {
+                out.writeByte(type);
+                out.writeLong(++lastSequence);
+                out.writeUTF(name1);
+                if (name2 != null) {
+                    out.writeUTF(name2);
+                }
+                if (type == ADD_NODE || type == MOVE_NODE || type == ADD_EDGE) {
+                    out.writeDouble(x);
+                    out.writeDouble(y);
+                }
+                byte[] payload = bytes.toByteArray();
+                CRC32C crc = new CRC32C();
+                crc.update(payload);
+
+                DataOutputStream record = new DataOutputStream(pending);
+                record.writeInt(payload.length);
+                record.write(payload);
+                record.writeInt((int) crc.getValue());
+                recordsSinceCheckpoint++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            byte[] batch;
+            long batchSequence;
+            FileChannel channel;
+            synchronized (this) {
+                while (pending.size() == 0 && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.size() == 0) {
+                    return;
+                }
+                batch = pending.toByteArray();
+                pending = new ByteArrayOutputStream(Math.max(32, batch.length));
+                batchSequence = lastSequence;
+                channel = segment;
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(batch);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+                synchronized (this) {
+                    durableSequence = batchSequence;
+                    notifyAll();
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                    notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    private void awaitDurable() throws IOException {
+        synchronized (this) {
+            long target = lastSequence;
+            notifyAll();
+            while (durableSequence < target && failure == null) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while waiting for the journal", e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private void recover() throws IOException {
+        long snapshotSequence = -1;
+        List<Long> segmentStarts = new ArrayList<>();
+        for (Path file : listFiles()) {
+            String name = file.getFileName().toString();
+            if (name.startsWith("snapshot-") && name.endsWith(".bin")) {
+                snapshotSequence = Math.max(snapshotSequence, parseSequence(name));
+            } else if (name.startsWith("journal-") && name.endsWith(".log")) {
+                segmentStarts.add(parseSequence(name));
+            }
+        }
+        segmentStarts.sort(null);
+        recovered = snapshotSequence >= 0 || !segmentStarts.isEmpty();
+
+        if (snapshotSequence >= 0) {
+            GraphBinaryFormat.read(snapshotPath(snapshotSequence), graph);
+            lastSequence = snapshotSequence;
+        }
+        for (long start : segmentStarts) {
+            Path file = segmentPath(start);
+            long validBytes = replay(file);
+            if (validBytes < Files.size(file)) {
+                // cut the torn tail off so the next recovery can read past this segment
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                    channel.truncate(validBytes);
+                    channel.force(true);
+                }
+                break;
+            }
+        }
+        durableSequence = lastSequence;
+        // the replayed tail counts towards the next checkpoint, or short sessions would never take one
+        recordsSinceCheckpoint = lastSequence - Math.max(snapshotSequence, 0);
+    }
+
+    /**
+     * Replays one segment up to its first torn or corrupt record and returns
+     * the length of the intact prefix.
+     */
+    private long replay(Path file) throws IOException {
+        long validBytes = 0;
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+            DataInputStream in = new DataInputStream(stream);
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return validBytes;
+                }
+                if (length <= 0 || length > (1 << 20)) {
+                    return validBytes;
+                }
+                byte[] payload = new byte[length];
+                int checksum;
+                try {
+                    in.readFully(payload);
+                    checksum = in.readInt();
+                } catch (EOFException e) {
+                    return validBytes;
+                }
+                CRC32C crc = new CRC32C();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    return validBytes;
+                }
+                apply(new DataInputStream(new ByteArrayInputStream(payload)));
+                validBytes += Integer.BYTES + length + Integer.BYTES;
+            }
+        }
+    }
+
+    private void apply(DataInputStream record) throws IOException {
+        byte type = record.readByte();
+        long sequence = record.readLong();
+        if (sequence <= lastSequence) {
+            return;
+        }
+        lastSequence = sequence;
+        String name1 = record.readUTF();
+        switch (type) {
+            case ADD_NODE:
+                graph.addNode(name1, record.readDouble(), record.readDouble());
+                break;
+            case REMOVE_NODE:
+                graph.removeNode(name1);
+                break;
+            case MOVE_NODE:
+                graph.moveNode(name1, record.readDouble(), record.readDouble());
+                break;
+            case ADD_EDGE:
+                String name2 = record.readUTF();
+                // records written before edges had weights end here
+                if (record.available() > 0) {
+                    graph.addEdge(name1, name2, record.readDouble(), record.readDouble());
+                } else {
+                    graph.addEdge(name1, name2);
+                }
+                break;
+            case REMOVE_EDGE:
+                graph.removeEdge(name1, record.readUTF());
+                break;
+            default:
+                throw new IOException("Unknown journal record type " + type);
+        }
+    }
+
+    private List<Path> listFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> result = new ArrayList<>();
+            files.forEach(result::add);
+            return result;
+        }
+    }
+
+    private void forceDirectory() {
+        // makes the rename durable on Linux; other platforms may refuse to open a directory
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // best effort
+        }
+    }
+
+    private Path snapshotPath(long sequence) {
+        return directory.resolve(String.format("snapshot-%016d.bin", sequence));
+    }
+
+    private Path segmentPath(long firstSequence) {
+        return directory.resolve(String.format("journal-%016d.log", firstSequence));
+    }
+
+    private static long parseSequence(String name) {
+        return Long.parseLong(name.substring(name.indexOf('-') + 1, name.lastIndexOf('.')));
+    }
+}
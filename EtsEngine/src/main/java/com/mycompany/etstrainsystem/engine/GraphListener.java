@@ -0,0 +1,36 @@
+package com.mycompany.etstrainsystem.engine;
+
+/**
+ * Receives every change made to a {@link Graph}, on the thread that made it.
+ * Names and positions of removed nodes are still readable from the graph
+ * while the callback runs.
+ */
+public interface GraphListener {
+
+    default void nodeAdded(int id) {
+    }
+
+    default void nodeRemoved(int id) {
+    }
+
+    default void nodeMoved(int id) {
+    }
+
+    default void edgeAdded(int node1, int node2) {
+    }
+
+    default void edgeRemoved(int node1, int node2) {
+    }
+
+    /** A {@link GraphBatch} is about to be applied; its events follow. */
+    default void batchStarted() {
+    }
+
+    /** The batch announced by {@link #batchStarted()} has been applied. */
+    default void batchFinished() {
+    }
+
+    /** The whole graph was replaced at once, for example by a bulk import. */
+    default void graphReloaded() {
+    }
+}
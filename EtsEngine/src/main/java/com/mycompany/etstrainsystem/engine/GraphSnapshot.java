@@ -0,0 +1,119 @@
+package com.mycompany.etstrainsystem.engine;
+
+/**
+ * Immutable, consistent view of a {@link Graph} at one version, safe to
+ * read from any number of threads without locks. Taken with
+ * {@link Graph#snapshot()}.
+ *
+ * A snapshot owns copies of the graph's per-station arrays but shares the
+ * adjacency and weight rows: the graph only ever appends past the degree a
+ * snapshot recorded, and copies a row before removing anything from it.
+ */
+public final class GraphSnapshot implements ReadableGraph {
+
+    private final long version;
+    private final StationDictionary dictionary;
+    private final boolean[] live;
+    private final double[] xs;
+    private final double[] ys;
+    private final int[][] adjacency;
+    private final double[][] travelTimes;
+    private final double[][] distances;
+    private final int[] degree;
+    private final int idCount;
+    private final int nodeCount;
+    private final int edgeCount;
+    private final double minTravelRate;
+
+    GraphSnapshot(long version, StationDictionary dictionary, boolean[] live, double[] xs, double[] ys,
+            int[][] adjacency, double[][] travelTimes, double[][] distances, int[] degree,
+            int idCount, int nodeCount, int edgeCount, double minTravelRate) {
+        this.version = version;
+        this.dictionary = dictionary;
+        this.live = live;
+        this.xs = xs;
+        this.ys = ys;
+        this.adjacency = adjacency;
+        this.travelTimes = travelTimes;
+        this.distances = distances;
+        this.degree = degree;
+        this.idCount = idCount;
+        this.nodeCount = nodeCount;
+        this.edgeCount = edgeCount;
+        this.minTravelRate = minTravelRate;
+    }
+
+    /** The graph's {@link Graph#version()} this snapshot was taken at. */
+    @Override
+    public long version() {
+        return version;
+    }
+
+    @Override
+    public int idOf(String name) {
+        // the dictionary is shared with the graph and only grows; ids handed
+        // out after this snapshot fall outside it
+        int id = dictionary.idOf(name, idCount);
+        return id >= 0 && live[id] ? id : -1;
+    }
+
+    @Override
+    public String nameOf(int id) {
+        return dictionary.nameOf(id);
+    }
+
+    @Override
+    public int idCount() {
+        return idCount;
+    }
+
+    @Override
+    public boolean isLive(int id) {
+        return live[id];
+    }
+
+    @Override
+    public double x(int id) {
+        return xs[id];
+    }
+
+    @Override
+    public double y(int id) {
+        return ys[id];
+    }
+
+    @Override
+    public int degree(int id) {
+        return degree[id];
+    }
+
+    @Override
+    public int[] neighbors(int id) {
+        return adjacency[id];
+    }
+
+    @Override
+    public double[] travelTimes(int id) {
+        return travelTimes[id];
+    }
+
+    @Override
+    public double[] distances(int id) {
+        return distances[id];
+    }
+
+    @Override
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    @Override
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    @Override
+    public double minTravelRate() {
+        return minTravelRate;
+    }
+}
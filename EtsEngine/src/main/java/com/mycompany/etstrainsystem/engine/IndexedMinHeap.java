@@ -0,0 +1,112 @@
+package com.mycompany.etstrainsystem.engine;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of int ids keyed by doubles, kept in flat arrays so a
+ * search pushes no objects. A position table lets a queued id have its key
+ * lowered in place instead of being queued a second time.
+ *
+ * Ids must be below the capacity passed to {@link #clear(int)}.
+ */
+final class IndexedMinHeap {
+
+    private int[] heap = new int[0];
+    private double[] keys = new double[0];
+    // slot of each id in heap, or -1 when it is not queued
+    private int[] position = new int[0];
+    private int size;
+
+    /** Empties the heap and makes room for ids below {@code capacity}. */
+    void clear(int capacity) {
+        if (position.length < capacity) {
+            int length = Math.max(capacity, position.length * 2);
+            heap = new int[length];
+            keys = new double[length];
+            position = new int[length];
+            Arrays.fill(position, -1);
+        } else {
+            for (int i = 0; i < size; i++) {
+                position[heap[i]] = -1;
+            }
+        }
+        size = 0;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Queues {@code id} with {@code key}, or lowers its key if it is queued with a higher one. */
+    void offer(int id, double key) {
+        int slot = position[id];
+        if (slot < 0) {
+            slot = size++;
+            heap[slot] = id;
+        } else if (key >= keys[slot]) {
+            return;
+        }
+        keys[slot] = key;
+        position[id] = slot;
+        siftUp(slot);
+    }
+
+    double peekKey() {
+        return keys[0];
+    }
+
+    int poll() {
+        int top = heap[0];
+        position[top] = -1;
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            keys[0] = keys[size];
+            position[heap[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    private void siftUp(int slot) {
+        int id = heap[slot];
+        double key = keys[slot];
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            if (keys[parent] <= key) {
+                break;
+            }
+            move(parent, slot);
+            slot = parent;
+        }
+        heap[slot] = id;
+        keys[slot] = key;
+        position[id] = slot;
+    }
+
+    private void siftDown(int slot) {
+        int id = heap[slot];
+        double key = keys[slot];
+        int half = size >>> 1;
+        while (slot < half) {
+            int child = 2 * slot + 1;
+            if (child + 1 < size && keys[child + 1] < keys[child]) {
+                child++;
+            }
+            if (keys[child] >= key) {
+                break;
+            }
+            move(child, slot);
+            slot = child;
+        }
+        heap[slot] = id;
+        keys[slot] = key;
+        position[id] = slot;
+    }
+
+    private void move(int from, int to) {
+        heap[to] = heap[from];
+        keys[to] = keys[from];
+        position[heap[to]] = to;
+    }
+}
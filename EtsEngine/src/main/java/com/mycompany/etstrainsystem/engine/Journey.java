@@ -0,0 +1,67 @@
+package com.mycompany.etstrainsystem.engine;
+
+/**
+ * A timetabled journey: the legs ridden, each on one trip from the stop
+ * where it was boarded to the stop where it was left. A journey between a
+ * station and itself has no legs.
+ */
+public final class Journey {
+
+    private final Timetable timetable;
+    private final int from;
+    private final int to;
+    private final int earliestDeparture;
+    // connection indices where each leg was boarded and left
+    private final int[] entered;
+    private final int[] left;
+
+    Journey(Timetable timetable, int from, int to, int earliestDeparture, int[] entered, int[] left) {
+        this.timetable = timetable;
+        this.from = from;
+        this.to = to;
+        this.earliestDeparture = earliestDeparture;
+        this.entered = entered;
+        this.left = left;
+    }
+
+    public String from() {
+        return timetable.stationName(from);
+    }
+
+    public String to() {
+        return timetable.stationName(to);
+    }
+
+    /** When the first train leaves, or the requested time for a journey without legs. */
+    public int departure() {
+        return entered.length == 0 ? earliestDeparture : timetable.departure(entered[0]);
+    }
+
+    public int arrival() {
+        return left.length == 0 ? earliestDeparture : timetable.arrival(left[left.length - 1]);
+    }
+
+    public int legCount() {
+        return entered.length;
+    }
+
+    public String trip(int leg) {
+        return timetable.tripName(timetable.trip(entered[leg]));
+    }
+
+    public String boardAt(int leg) {
+        return timetable.stationName(timetable.from(entered[leg]));
+    }
+
+    public String alightAt(int leg) {
+        return timetable.stationName(timetable.to(left[leg]));
+    }
+
+    public int departure(int leg) {
+        return timetable.departure(entered[leg]);
+    }
+
+    public int arrival(int leg) {
+        return timetable.arrival(left[leg]);
+    }
+}
@@ -0,0 +1,45 @@
+package com.mycompany.etstrainsystem.engine;
+
+/** Count and percentiles of one {@link LatencyHistogram}, in milliseconds, as read at one moment. */
+public final class LatencySummary {
+
+    private final long count;
+    private final double mean;
+    private final double p50;
+    private final double p99;
+    private final double p999;
+    private final double max;
+
+    public LatencySummary(LatencyHistogram histogram) {
+        count = histogram.count();
+        mean = histogram.mean() / 1e6;
+        p50 = histogram.valueAtPercentile(50) / 1e6;
+        p99 = histogram.valueAtPercentile(99) / 1e6;
+        p999 = histogram.valueAtPercentile(99.9) / 1e6;
+        max = histogram.max() / 1e6;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMeanMillis() {
+        return mean;
+    }
+
+    public double getP50Millis() {
+        return p50;
+    }
+
+    public double getP99Millis() {
+        return p99;
+    }
+
+    public double getP999Millis() {
+        return p999;
+    }
+
+    public double getMaxMillis() {
+        return max;
+    }
+}
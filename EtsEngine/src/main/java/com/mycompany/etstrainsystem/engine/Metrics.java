@@ -0,0 +1,133 @@
+package com.mycompany.etstrainsystem.engine;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide latency histograms and counters for the engine and anything
+ * built on it. Collection is off unless the {@code ets.metrics} system
+ * property is {@code true} or it is switched on later, and while off every
+ * probe costs one volatile read: {@link #start()} returns 0 and
+ * {@link LatencyHistogram#recordSince} ignores it.
+ *
+ * Histograms and counters are registered by name on first use, with
+ * dotted names grouping them, such as {@code query.route}. The same data
+ * is published over JMX by {@link #registerMBean()}. Queries and edits
+ * also emit JFR events whenever a flight recording is running, whether or
+ * not collection is on here.
+ */
+public final class Metrics {
+
+    public static final String OBJECT_NAME = "com.mycompany.etstrainsystem:type=Metrics";
+
+    private static final Map<String, LatencyHistogram> HISTOGRAMS = new ConcurrentSkipListMap<>();
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentSkipListMap<>();
+    private static volatile boolean enabled = Boolean.getBoolean("ets.metrics");
+
+    static final LongAdder NODES_VISITED = counter("search.nodesVisited");
+    static final LongAdder EDGES_SCANNED = counter("search.edgesScanned");
+    static final LongAdder PLACEMENT_RETRIES = counter("placement.retries");
+    // here rather than in ReadableGraph, whose fields would be public
+    static final LatencyHistogram BFS_LATENCY = histogram("query.bfs");
+
+    private Metrics() {
+    }
+
+    public static boolean enabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /** Start time for {@link LatencyHistogram#recordSince}, or 0 while collection is off. */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public static LatencyHistogram histogram(String name) {
+        return HISTOGRAMS.computeIfAbsent(name, LatencyHistogram::new);
+    }
+
+    public static LongAdder counter(String name) {
+        return COUNTERS.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /** Adds to the search counters, if collection is on. */
+    static void searched(long nodesVisited, long edgesScanned) {
+        if (enabled) {
+            NODES_VISITED.add(nodesVisited);
+            EDGES_SCANNED.add(edgesScanned);
+        }
+    }
+
+    /** Every histogram, in name order. */
+    public static Collection<LatencyHistogram> histograms() {
+        return HISTOGRAMS.values();
+    }
+
+    /** Current value of every counter, in name order. */
+    public static Map<String, Long> counters() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        COUNTERS.forEach((name, counter) -> values.put(name, counter.sum()));
+        return values;
+    }
+
+    public static void reset() {
+        HISTOGRAMS.values().forEach(LatencyHistogram::reset);
+        COUNTERS.values().forEach(LongAdder::reset);
+    }
+
+    /** Registers the {@link MetricsMXBean} with the platform MBean server; later calls do nothing. */
+    public static void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // already registered
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register " + OBJECT_NAME, e);
+        }
+    }
+
+    private static final class Bean implements MetricsMXBean {
+
+        @Override
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        @Override
+        public void setEnabled(boolean on) {
+            Metrics.setEnabled(on);
+        }
+
+        @Override
+        public Map<String, Long> getCounters() {
+            return counters();
+        }
+
+        @Override
+        public Map<String, LatencySummary> getLatencies() {
+            Map<String, LatencySummary> summaries = new LinkedHashMap<>();
+            for (LatencyHistogram histogram : histograms()) {
+                if (histogram.count() > 0) {
+                    summaries.put(histogram.name(), new LatencySummary(histogram));
+                }
+            }
+            return summaries;
+        }
+
+        @Override
+        public void reset() {
+            Metrics.reset();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.mycompany.etstrainsystem.engine;
+
+import java.util.Map;
+
+/** JMX view of {@link Metrics}, registered as {@value Metrics#OBJECT_NAME}. */
+public interface MetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    Map<String, Long> getCounters();
+
+    /** Summary of every histogram that has recorded anything, by name. */
+    Map<String, LatencySummary> getLatencies();
+
+    void reset();
+}
@@ -0,0 +1,211 @@
+package com.mycompany.etstrainsystem.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Reachability from many sources at once, after Then et al.'s MS-BFS. Each
+ * station carries a few 64-bit words with one bit per source, so one pass
+ * over a station's row advances every search that has reached it: a level
+ * ORs the frontier words of each active station into its neighbours,
+ * masked by the bits those neighbours have already seen.
+ *
+ * Sources are split into batches of up to {@link #MAX_WORDS} words, and
+ * batches run in parallel on a {@link ForkJoinPool}; each batch writes only
+ * its own rows of the {@link ReachabilityMatrix}.
+ *
+ * The graph must not change while a search is running; search a
+ * {@link GraphSnapshot} to run alongside edits.
+ */
+public class MultiSourceBfs {
+
+    public static final int MAX_WORDS = 4;
+    /** Largest hop matrix, in cells, that will be built. */
+    public static final long MAX_HOP_CELLS = 1L << 28;
+
+    private static final LatencyHistogram MULTI_SOURCE_LATENCY = Metrics.histogram("query.multiSourceBfs");
+
+    private final ReadableGraph graph;
+    private final ForkJoinPool pool;
+
+    public MultiSourceBfs(ReadableGraph graph, ForkJoinPool pool) {
+        this.graph = graph;
+        this.pool = pool;
+    }
+
+    public MultiSourceBfs(ReadableGraph graph) {
+        this(graph, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Stations reachable from each source; with {@code withHops} the matrix
+     * also holds the hop count to each of them.
+     *
+     * @throws IllegalArgumentException if a source is not a live station,
+     *         or the matrix would be too large
+     */
+    public ReachabilityMatrix reachable(int[] sources, boolean withHops) {
+        int n = graph.idCount();
+        for (int source : sources) {
+            if (source < 0 || source >= n || !graph.isLive(source)) {
+                throw new IllegalArgumentException("Not a station id: " + source);
+            }
+        }
+        if ((long) n * ((sources.length + 63) >>> 6) > Integer.MAX_VALUE
+                || withHops && (long) sources.length * n > MAX_HOP_CELLS) {
+            throw new IllegalArgumentException((withHops ? "Hop" : "Reachability") + " matrix of " + sources.length + " x " + n + " stations is too large");
+        }
+        QueryEvent event = QueryEvent.start();
+        long start = Metrics.start();
+        ReachabilityMatrix matrix = new ReachabilityMatrix(sources.clone(), n, withHops);
+
+        // enough batches to keep every worker busy, as wide as that allows
+        int words = Math.max(1, Math.min(MAX_WORDS, (sources.length + 63) / 64 / pool.getParallelism()));
+        int batchSize = 64 * words;
+        List<Batch> batches = new ArrayList<>();
+        for (int from = 0; from < sources.length; from += batchSize) {
+            batches.add(new Batch(matrix, from, Math.min(sources.length, from + batchSize)));
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(batches);
+            }
+        });
+        MULTI_SOURCE_LATENCY.recordSince(start);
+        event.finish("multiSourceBfs", graph, -1, -1, sources.length, 0);
+        return matrix;
+    }
+
+    public ReachabilityMatrix reachable(List<String> sourceNames, boolean withHops) {
+        int[] sources = new int[sourceNames.size()];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = graph.idOf(sourceNames.get(i));
+            if (sources[i] < 0) {
+                throw new IllegalArgumentException("Station '" + sourceNames.get(i) + "' does not exist");
+            }
+        }
+        return reachable(sources, withHops);
+    }
+
+    /** Reachability, and optionally hop distance, between every pair of stations. */
+    public ReachabilityMatrix allPairs(boolean withHops) {
+        int[] sources = new int[graph.nodeCount()];
+        int size = 0;
+        for (int id = 0; id < graph.idCount(); id++) {
+            if (graph.isLive(id)) {
+                sources[size++] = id;
+            }
+        }
+        return reachable(sources, withHops);
+    }
+
+    /** Runs the sources in rows {@code [from, to)} of the matrix together. */
+    private class Batch extends RecursiveAction {
+
+        final ReachabilityMatrix matrix;
+        final int from;
+        final int to;
+
+        Batch(ReachabilityMatrix matrix, int from, int to) {
+            this.matrix = matrix;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            int n = graph.idCount();
+            int words = (to - from + 63) >>> 6;
+            long[] seen = new long[n * words];
+            long[] frontier = new long[n * words];
+            long[] next = new long[n * words];
+            int[] active = new int[n];
+            int[] nextActive = new int[n];
+            int[] queuedAt = new int[n];
+            int activeCount = 0;
+            boolean withHops = matrix.hasHops();
+
+            for (int row = from; row < to; row++) {
+                int source = matrix.source(row);
+                int bit = row - from;
+                if (isEmpty(frontier, source, words)) {
+                    active[activeCount++] = source;
+                }
+                seen[source * words + (bit >>> 6)] |= 1L << bit;
+                frontier[source * words + (bit >>> 6)] |= 1L << bit;
+                if (withHops) {
+                    matrix.setHops(row, source, 0);
+                }
+            }
+
+            int level = 0;
+            while (activeCount > 0) {
+                level++;
+                if (withHops && level >= ReachabilityMatrix.UNREACHED) {
+                    throw new IllegalStateException("Graph too deep for a hop matrix");
+                }
+                int nextCount = 0;
+                for (int i = 0; i < activeCount; i++) {
+                    int u = active[i];
+                    int uBase = u * words;
+                    int[] row = graph.neighbors(u);
+                    for (int j = 0; j < graph.degree(u); j++) {
+                        int w = row[j];
+                        int wBase = w * words;
+                        for (int k = 0; k < words; k++) {
+                            long fresh = frontier[uBase + k] & ~seen[wBase + k];
+                            if (fresh == 0) {
+                                continue;
+                            }
+                            seen[wBase + k] |= fresh;
+                            next[wBase + k] |= fresh;
+                            if (queuedAt[w] != level) {
+                                queuedAt[w] = level;
+                                nextActive[nextCount++] = w;
+                            }
+                            if (withHops) {
+                                int base = from + (k << 6);
+                                while (fresh != 0) {
+                                    matrix.setHops(base + Long.numberOfTrailingZeros(fresh), w, level);
+                                    fresh &= fresh - 1;
+                                }
+                            }
+                        }
+                    }
+                }
+                for (int i = 0; i < activeCount; i++) {
+                    int u = active[i];
+                    for (int k = 0; k < words; k++) {
+                        frontier[u * words + k] = 0;
+                    }
+                }
+                long[] swapWords = frontier;
+                frontier = next;
+                next = swapWords;
+                int[] swapIds = active;
+                active = nextActive;
+                nextActive = swapIds;
+                activeCount = nextCount;
+            }
+
+            for (int id = 0; id < n; id++) {
+                for (int k = 0; k < words; k++) {
+                    matrix.setReachedWord(id, from + (k << 6), seen[id * words + k]);
+                }
+            }
+        }
+
+        private boolean isEmpty(long[] bits, int id, int words) {
+            for (int k = 0; k < words; k++) {
+                if (bits[id * words + k] != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.mycompany.etstrainsystem.engine;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** JFR event for one edit of the graph. */
+@Name("com.mycompany.etstrainsystem.Mutation")
+@Label("Graph Mutation")
+@Category("ETS Train System")
+@Description("An edit of the station graph, including its listeners' time")
+final class MutationEvent extends Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Station")
+    String station;
+
+    @Label("Other Station")
+    String other;
+
+    @Label("Result")
+    String result;
+
+    static MutationEvent start() {
+        MutationEvent event = new MutationEvent();
+        event.begin();
+        return event;
+    }
+
+    void finish(String operation, String station, String other, Object result) {
+        end();
+        if (shouldCommit()) {
+            this.operation = operation;
+            this.station = station;
+            this.other = other;
+            this.result = String.valueOf(result);
+            commit();
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.mycompany.etstrainsystem.engine;
+
+public enum MutationResult {
+    OK,
+    NODE_EXISTS,
+    NODE_NOT_FOUND,
+    SELF_LOOP,
+    EDGE_EXISTS,
+    EDGE_NOT_FOUND
+}
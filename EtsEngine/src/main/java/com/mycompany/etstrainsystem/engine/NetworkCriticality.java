@@ -0,0 +1,360 @@
+package com.mycompany.etstrainsystem.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds the stations and links the network depends on most.
+ *
+ * {@link #cuts()} finds articulation points and bridges in one depth-first
+ * pass per component, after Tarjan, keeping for each station the earliest
+ * discovered station its subtree links back to. The search runs on explicit
+ * stacks rather than recursion, so a corridor of a million stations cannot
+ * overflow the thread's stack.
+ *
+ * {@link #betweenness()} counts, for every station, the shortest paths
+ * between other stations that pass through it, by Brandes' algorithm: one
+ * BFS per source, then a sweep back over the stations in reverse BFS order
+ * that hands each station's share of the paths on to its predecessors.
+ * Paths are counted in hops, the way {@link RouteFinder} routes. Sources are
+ * shared out among workers on a {@link ForkJoinPool}, each with its own
+ * scratch arrays and totals, merged at the end. Every source costs a pass
+ * over the whole component, so on large networks
+ * {@link #betweenness(int, long)} estimates the scores from a random sample
+ * of sources instead.
+ *
+ * The graph must not change while either runs; analyse a
+ * {@link GraphSnapshot} to run alongside edits.
+ */
+public class NetworkCriticality {
+
+    // path counts above this are rescaled, well before a sum of two can overflow
+    private static final double LARGE_PATH_COUNT = 0x1p960;
+
+    private static final LatencyHistogram CUTS_LATENCY = Metrics.histogram("query.cuts");
+    private static final LatencyHistogram BETWEENNESS_LATENCY = Metrics.histogram("query.betweenness");
+
+    private final ReadableGraph graph;
+    private final ForkJoinPool pool;
+
+    public NetworkCriticality(ReadableGraph graph, ForkJoinPool pool) {
+        this.graph = graph;
+        this.pool = pool;
+    }
+
+    public NetworkCriticality(ReadableGraph graph) {
+        this(graph, ForkJoinPool.commonPool());
+    }
+
+    /** Articulation points and bridges of every component. */
+    public NetworkCuts cuts() {
+        QueryEvent event = QueryEvent.start();
+        long start = Metrics.start();
+        int n = graph.idCount();
+        // discovery time, 0 while undiscovered, and the earliest one the subtree links back to
+        int[] discovered = new int[n];
+        int[] low = new int[n];
+        int[] parent = new int[n];
+        // next neighbour to look at, for the stations on the stack
+        int[] nextEdge = new int[n];
+        int[] subtree = new int[n];
+        // stations in child subtrees that only link back through this station, and the largest such subtree
+        int[] separated = new int[n];
+        int[] largestSeparated = new int[n];
+        int[] stack = new int[n];
+        int[] order = new int[n];
+        int time = 0;
+        long scanned = 0;
+
+        int[] points = new int[16];
+        int[] pointCutOff = new int[16];
+        int pointCount = 0;
+        int[] bridgeEnds = new int[32];
+        int[] bridgeCutOff = new int[16];
+        int bridgeCount = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (!graph.isLive(root) || discovered[root] != 0) {
+                continue;
+            }
+            int first = time;
+            int firstBridge = bridgeCount;
+            int rootChildren = 0;
+            int top = 0;
+            parent[root] = -1;
+            discovered[root] = low[root] = ++time;
+            order[first] = root;
+            subtree[root] = 1;
+            stack[top++] = root;
+            while (top > 0) {
+                int v = stack[top - 1];
+                if (nextEdge[v] < graph.degree(v)) {
+                    int w = graph.neighbors(v)[nextEdge[v]++];
+                    scanned++;
+                    if (discovered[w] == 0) {
+                        parent[w] = v;
+                        discovered[w] = low[w] = ++time;
+                        order[time - 1] = w;
+                        subtree[w] = 1;
+                        stack[top++] = w;
+                        if (v == root) {
+                            rootChildren++;
+                        }
+                    } else if (w != parent[v]) {
+                        low[v] = Math.min(low[v], discovered[w]);
+                    }
+                    continue;
+                }
+                top--;
+                int p = parent[v];
+                if (p < 0) {
+                    continue;
+                }
+                low[p] = Math.min(low[p], low[v]);
+                subtree[p] += subtree[v];
+                if (low[v] >= discovered[p]) {
+                    separated[p] += subtree[v];
+                    largestSeparated[p] = Math.max(largestSeparated[p], subtree[v]);
+                }
+                if (low[v] > discovered[p]) {
+                    if (bridgeCount == bridgeCutOff.length) {
+                        bridgeEnds = Arrays.copyOf(bridgeEnds, 4 * bridgeCount);
+                        bridgeCutOff = Arrays.copyOf(bridgeCutOff, 2 * bridgeCount);
+                    }
+                    bridgeEnds[2 * bridgeCount] = p;
+                    bridgeEnds[2 * bridgeCount++ + 1] = v;
+                }
+            }
+
+            // sizes are known once the whole component has been searched
+            int size = subtree[root];
+            for (int i = first; i < time; i++) {
+                int v = order[i];
+                if (v == root ? rootChildren < 2 : separated[v] == 0) {
+                    continue;
+                }
+                // the pieces are the separated subtrees and, but for the root, the rest of the component
+                int largest = Math.max(largestSeparated[v], size - 1 - separated[v]);
+                if (pointCount == points.length) {
+                    points = Arrays.copyOf(points, 2 * pointCount);
+                    pointCutOff = Arrays.copyOf(pointCutOff, 2 * pointCount);
+                }
+                points[pointCount] = v;
+                pointCutOff[pointCount++] = size - 1 - largest;
+            }
+            for (int i = firstBridge; i < bridgeCount; i++) {
+                int child = bridgeEnds[2 * i + 1];
+                bridgeCutOff[i] = Math.min(subtree[child], size - subtree[child]);
+                if (subtree[child] > size - subtree[child]) {
+                    bridgeEnds[2 * i + 1] = bridgeEnds[2 * i];
+                    bridgeEnds[2 * i] = child;
+                }
+            }
+        }
+        NetworkCuts cuts = new NetworkCuts(points, pointCutOff, pointCount, bridgeEnds, bridgeCutOff, bridgeCount);
+        CUTS_LATENCY.recordSince(start);
+        Metrics.searched(time, scanned);
+        event.finish("cuts", graph, -1, -1, pointCount + bridgeCount, time);
+        return cuts;
+    }
+
+    /**
+     * Exact betweenness of every station, indexed by id: over every pair of
+     * other stations, the fraction of the shortest paths between them that
+     * pass through it.
+     */
+    public double[] betweenness() {
+        int[] sources = liveIds();
+        return betweenness(sources, 1);
+    }
+
+    /**
+     * Betweenness estimated from {@code samples} sources picked at random
+     * with {@code seed}, scaled up to the whole network; exact if
+     * {@code samples} covers every station.
+     *
+     * @throws IllegalArgumentException if {@code samples} is not positive
+     */
+    public double[] betweenness(int samples, long seed) {
+        if (samples <= 0) {
+            throw new IllegalArgumentException("Sample size must be positive");
+        }
+        int[] sources = liveIds();
+        if (samples >= sources.length) {
+            return betweenness(sources, 1);
+        }
+        // the first samples places of a partial Fisher-Yates shuffle
+        Random random = new Random(seed);
+        for (int i = 0; i < samples; i++) {
+            int j = i + random.nextInt(sources.length - i);
+            int t = sources[i];
+            sources[i] = sources[j];
+            sources[j] = t;
+        }
+        return betweenness(Arrays.copyOf(sources, samples), (double) sources.length / samples);
+    }
+
+    /** Ids of the {@code count} live stations with the highest scores, highest first. */
+    public int[] highest(double[] scores, int count) {
+        int[] ids = new int[Math.max(0, Math.min(count, graph.nodeCount()))];
+        int size = 0;
+        for (int id = 0; id < graph.idCount() && ids.length > 0; id++) {
+            if (!graph.isLive(id) || size == ids.length && scores[id] <= scores[ids[size - 1]]) {
+                continue;
+            }
+            int i = size < ids.length ? size++ : size - 1;
+            for (; i > 0 && scores[ids[i - 1]] < scores[id]; i--) {
+                ids[i] = ids[i - 1];
+            }
+            ids[i] = id;
+        }
+        return Arrays.copyOf(ids, size);
+    }
+
+    private int[] liveIds() {
+        int[] ids = new int[graph.nodeCount()];
+        int size = 0;
+        for (int id = 0; id < graph.idCount(); id++) {
+            if (graph.isLive(id)) {
+                ids[size++] = id;
+            }
+        }
+        return ids;
+    }
+
+    private double[] betweenness(int[] sources, double scale) {
+        QueryEvent event = QueryEvent.start();
+        long start = Metrics.start();
+        AtomicInteger nextSource = new AtomicInteger();
+        // one worker per thread, each claiming sources until none are left, bounds the scratch memory
+        List<Worker> workers = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, Math.min(pool.getParallelism(), sources.length)); i++) {
+            workers.add(new Worker(sources, nextSource));
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(workers);
+            }
+        });
+
+        double[] scores = new double[graph.idCount()];
+        long visited = 0;
+        long scanned = 0;
+        for (Worker worker : workers) {
+            for (int id = 0; id < scores.length; id++) {
+                scores[id] += worker.totals[id];
+            }
+            visited += worker.visited;
+            scanned += worker.scanned;
+        }
+        // each path is found from both of its ends
+        for (int id = 0; id < scores.length; id++) {
+            scores[id] *= scale / 2;
+        }
+        BETWEENNESS_LATENCY.recordSince(start);
+        Metrics.searched(visited, scanned);
+        event.finish("betweenness", graph, -1, -1, sources.length, visited);
+        return scores;
+    }
+
+    /** Runs Brandes' algorithm from sources it claims from the shared counter. */
+    private class Worker extends RecursiveAction {
+
+        final int[] sources;
+        final AtomicInteger nextSource;
+        final double[] totals = new double[graph.idCount()];
+        final int[] hops = new int[graph.idCount()];
+        // shortest paths from the source, which outgrow even a double on large grids,
+        // so each is kept as paths[v] times two to the power scale[v]
+        final double[] paths = new double[graph.idCount()];
+        final int[] scale = new int[graph.idCount()];
+        final double[] dependency = new double[graph.idCount()];
+        final int[] order = new int[graph.idCount()];
+        long visited;
+        long scanned;
+
+        Worker(int[] sources, AtomicInteger nextSource) {
+            this.sources = sources;
+            this.nextSource = nextSource;
+            Arrays.fill(hops, -1);
+        }
+
+        @Override
+        protected void compute() {
+            for (int next = nextSource.getAndIncrement(); next < sources.length; next = nextSource.getAndIncrement()) {
+                int source = sources[next];
+                int head = 0;
+                int tail = 0;
+                hops[source] = 0;
+                paths[source] = 1;
+                order[tail++] = source;
+                while (head < tail) {
+                    int v = order[head++];
+                    int[] row = graph.neighbors(v);
+                    int degree = graph.degree(v);
+                    scanned += degree;
+                    for (int i = 0; i < degree; i++) {
+                        int w = row[i];
+                        if (hops[w] < 0) {
+                            hops[w] = hops[v] + 1;
+                            scale[w] = scale[v];
+                            order[tail++] = w;
+                        }
+                        if (hops[w] == hops[v] + 1) {
+                            addPaths(v, w);
+                        }
+                    }
+                }
+
+                // predecessors are the neighbours one hop nearer, found again rather than stored
+                for (int i = tail - 1; i > 0; i--) {
+                    int w = order[i];
+                    double share = (1 + dependency[w]) / paths[w];
+                    int[] row = graph.neighbors(w);
+                    int degree = graph.degree(w);
+                    for (int j = 0; j < degree; j++) {
+                        int v = row[j];
+                        if (hops[v] == hops[w] - 1) {
+                            dependency[v] += scale[v] == scale[w] ? paths[v] * share
+                                    : Math.scalb(paths[v] * share, scale[v] - scale[w]);
+                        }
+                    }
+                    totals[w] += dependency[w];
+                }
+                visited += tail;
+
+                for (int i = 0; i < tail; i++) {
+                    int v = order[i];
+                    hops[v] = -1;
+                    paths[v] = 0;
+                    scale[v] = 0;
+                    dependency[v] = 0;
+                }
+            }
+        }
+
+        /** Adds the paths to {@code v} to those to {@code w}. */
+        private void addPaths(int v, int w) {
+            if (scale[v] == scale[w]) {
+                paths[w] += paths[v];
+            } else if (scale[v] > scale[w]) {
+                paths[w] = Math.scalb(paths[w], scale[w] - scale[v]) + paths[v];
+                scale[w] = scale[v];
+            } else {
+                paths[w] += Math.scalb(paths[v], scale[v] - scale[w]);
+            }
+            if (paths[w] > LARGE_PATH_COUNT) {
+                int exponent = Math.getExponent(paths[w]);
+                paths[w] = Math.scalb(paths[w], -exponent);
+                scale[w] += exponent;
+            }
+        }
+    }
+}
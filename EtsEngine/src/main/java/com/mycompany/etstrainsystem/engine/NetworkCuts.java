@@ -0,0 +1,84 @@
+package com.mycompany.etstrainsystem.engine;
+
+import java.util.Arrays;
+
+/**
+ * Outcome of {@link NetworkCriticality#cuts()}: the articulation points,
+ * stations whose closure splits their component, and the bridges, links
+ * whose closure does. Each comes with the number of stations it cuts off,
+ * those no longer connected to the largest part of what remains, and they
+ * are listed most stations cut off first.
+ */
+public final class NetworkCuts {
+
+    private final int[] stations;
+    private final int[] stationCutOff;
+    private final int[] bridgeEnds;
+    private final int[] bridgeCutOff;
+
+    NetworkCuts(int[] stations, int[] stationCutOff, int stationCount,
+            int[] bridgeEnds, int[] bridgeCutOff, int bridgeCount) {
+        int[] order = worstFirst(stationCutOff, stationCount);
+        this.stations = new int[stationCount];
+        this.stationCutOff = new int[stationCount];
+        for (int i = 0; i < stationCount; i++) {
+            this.stations[i] = stations[order[i]];
+            this.stationCutOff[i] = stationCutOff[order[i]];
+        }
+        order = worstFirst(bridgeCutOff, bridgeCount);
+        this.bridgeEnds = new int[2 * bridgeCount];
+        this.bridgeCutOff = new int[bridgeCount];
+        for (int i = 0; i < bridgeCount; i++) {
+            this.bridgeEnds[2 * i] = bridgeEnds[2 * order[i]];
+            this.bridgeEnds[2 * i + 1] = bridgeEnds[2 * order[i] + 1];
+            this.bridgeCutOff[i] = bridgeCutOff[order[i]];
+        }
+    }
+
+    /** Indices of the first {@code count} values, largest first and in their given order on ties. */
+    private static int[] worstFirst(int[] cutOff, int count) {
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = (long) (Integer.MAX_VALUE - cutOff[i]) << 32 | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    public int articulationPointCount() {
+        return stations.length;
+    }
+
+    /** Station id of the {@code i}th articulation point. */
+    public int articulationPoint(int i) {
+        return stations[i];
+    }
+
+    /** Stations that closing the {@code i}th articulation point cuts off, not counting itself. */
+    public int articulationPointCutOff(int i) {
+        return stationCutOff[i];
+    }
+
+    public int bridgeCount() {
+        return bridgeCutOff.length;
+    }
+
+    /** Station id at the end of the {@code i}th bridge nearer the larger side. */
+    public int bridgeFrom(int i) {
+        return bridgeEnds[2 * i];
+    }
+
+    /** Station id at the other end of the {@code i}th bridge. */
+    public int bridgeTo(int i) {
+        return bridgeEnds[2 * i + 1];
+    }
+
+    /** Stations on the smaller side of the {@code i}th bridge. */
+    public int bridgeCutOff(int i) {
+        return bridgeCutOff[i];
+    }
+}
@@ -0,0 +1,246 @@
+package com.mycompany.etstrainsystem.engine;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Builds synthetic rail networks for load tests, the same network every time
+ * for the same topology, size and seed. Stations are named
+ * {@code S0 .. S(n-1)} and laid out on the map so that neighbours sit
+ * roughly {@link NodePlacer#MIN_NODE_DISTANCE} or more apart; travel times
+ * and distances are the straight-line defaults.
+ *
+ * The network goes into the graph through {@link Graph#load} in one pass,
+ * like {@link EdgeListImporter}, so ten million stations take seconds
+ * rather than the minutes of one edit per edge, though they need a heap of
+ * several gigabytes.
+ */
+public final class NetworkGenerator {
+
+    public enum Topology {
+        /**
+         * Long lines that branch off one another at an angle, as in an
+         * intercity network; some branches rejoin their parent line further
+         * along, making loops.
+         */
+        CORRIDOR,
+        /** Street-grid metro: a jittered lattice with one link in ten missing. */
+        GRID,
+        /**
+         * Interchange hubs linked into a connected network with some express
+         * links between them, each with lines radiating outwards.
+         */
+        HUB_AND_SPOKE,
+        /** Barabási–Albert preferential attachment, two links per new station. */
+        SCALE_FREE
+    }
+
+    private static final double STEP = NodePlacer.MIN_NODE_DISTANCE;
+
+    private final Topology topology;
+    private final int stations;
+    private final Random random;
+    private final double[] xs;
+    private final double[] ys;
+    private int[] src = new int[16];
+    private int[] dst = new int[16];
+    private int count;
+
+    /** @throws IllegalArgumentException if {@code stations} is below 2 */
+    public NetworkGenerator(Topology topology, int stations, long seed) {
+        if (stations < 2) {
+            throw new IllegalArgumentException("A network needs at least 2 stations");
+        }
+        this.topology = topology;
+        this.stations = stations;
+        this.random = new Random(seed);
+        this.xs = new double[stations];
+        this.ys = new double[stations];
+    }
+
+    public static String name(int index) {
+        return "S" + index;
+    }
+
+    /** Replaces the contents of {@code graph} with the network; call once per generator. */
+    public void load(Graph graph) {
+        if (count > 0) {
+            throw new IllegalStateException("Network already generated");
+        }
+        switch (topology) {
+            case CORRIDOR:
+                corridors();
+                break;
+            case GRID:
+                grid();
+                break;
+            case HUB_AND_SPOKE:
+                hubsAndSpokes();
+                break;
+            case SCALE_FREE:
+                scaleFree();
+                break;
+            default:
+                throw new IllegalStateException(topology.name());
+        }
+        String[] names = new String[stations];
+        for (int id = 0; id < stations; id++) {
+            names[id] = name(id);
+        }
+        shiftToOrigin();
+        EdgeListImporter.loadEdges(graph, names, xs, ys, stations, src, dst, count, null, null);
+    }
+
+    private void corridors() {
+        // each line holds the ids [lineStart, lineEnd) and runs roughly along lineHeading
+        int[] lineStart = new int[16];
+        int[] lineEnd = new int[16];
+        double[] lineHeading = new double[16];
+        int lines = 0;
+        int next = 1;
+        while (next < stations) {
+            int parentLine = lines == 0 ? -1 : random.nextInt(lines);
+            int parent = parentLine < 0 ? 0
+                    : lineStart[parentLine] + random.nextInt(lineEnd[parentLine] - lineStart[parentLine]);
+            double heading = parentLine < 0 ? random.nextDouble() * 2 * Math.PI
+                    : lineHeading[parentLine] + (random.nextBoolean() ? 1 : -1) * (Math.PI / 6 + random.nextDouble() * Math.PI / 3);
+            int length = parentLine < 0 ? Math.max(200, stations / 20) : 20 + random.nextInt(180);
+            int first = next;
+            int previous = parent;
+            for (int k = 0; k < length && next < stations; k++) {
+                heading += random.nextGaussian() * 0.05;
+                previous = extend(previous, next++, heading);
+            }
+            if (parentLine >= 0 && random.nextInt(5) == 0) {
+                // rejoin the parent line some way along, closing a loop
+                int offset = (next - first) / 2 + 1;
+                int rejoin = parent + (random.nextBoolean() ? offset : -offset);
+                if (rejoin >= lineStart[parentLine] && rejoin < lineEnd[parentLine]) {
+                    edge(previous, rejoin);
+                }
+            }
+            if (lines == lineStart.length) {
+                lineStart = Arrays.copyOf(lineStart, lines * 2);
+                lineEnd = Arrays.copyOf(lineEnd, lines * 2);
+                lineHeading = Arrays.copyOf(lineHeading, lines * 2);
+            }
+            // the first line includes station 0, where it starts
+            lineStart[lines] = parentLine < 0 ? 0 : first;
+            lineEnd[lines] = next;
+            lineHeading[lines++] = heading;
+        }
+    }
+
+    private void grid() {
+        int columns = Math.max(1, (int) Math.ceil(Math.sqrt(stations)));
+        for (int id = 0; id < stations; id++) {
+            xs[id] = (id % columns + (random.nextDouble() - 0.5) / 2) * STEP * 1.5;
+            ys[id] = (id / columns + (random.nextDouble() - 0.5) / 2) * STEP * 1.5;
+            if (id % columns > 0 && random.nextInt(10) != 0) {
+                edge(id - 1, id);
+            }
+            if (id >= columns && random.nextInt(10) != 0) {
+                edge(id - columns, id);
+            }
+        }
+    }
+
+    private void hubsAndSpokes() {
+        int hubs = Math.max(2, (int) Math.sqrt(stations) / 4);
+        double extent = Math.sqrt(stations) * STEP * 2;
+        for (int hub = 0; hub < hubs; hub++) {
+            xs[hub] = random.nextDouble() * extent;
+            ys[hub] = random.nextDouble() * extent;
+            if (hub == 0) {
+                continue;
+            }
+            // link to the nearest earlier hub, which keeps the hubs connected, and now and then to a far one
+            int nearest = 0;
+            for (int other = 1; other < hub; other++) {
+                if (distance(hub, other) < distance(hub, nearest)) {
+                    nearest = other;
+                }
+            }
+            edge(hub, nearest);
+            if (random.nextInt(3) == 0) {
+                int express = random.nextInt(hub);
+                if (express != nearest) {
+                    edge(hub, express);
+                }
+            }
+        }
+        int next = hubs;
+        while (next < stations) {
+            int hub = random.nextInt(hubs);
+            double heading = random.nextDouble() * 2 * Math.PI;
+            int length = 5 + random.nextInt(40);
+            int previous = hub;
+            for (int k = 0; k < length && next < stations; k++) {
+                previous = extend(previous, next++, heading + random.nextGaussian() * 0.05);
+            }
+        }
+    }
+
+    private void scaleFree() {
+        double extent = Math.sqrt(stations) * STEP * 1.5;
+        int[] endpoints = new int[4 * stations];
+        int ends = 0;
+        for (int id = 0; id < stations; id++) {
+            xs[id] = random.nextDouble() * extent;
+            ys[id] = random.nextDouble() * extent;
+            if (id == 1) {
+                edge(0, 1);
+                endpoints[ends++] = 0;
+                endpoints[ends++] = 1;
+            } else if (id > 1) {
+                for (int k = 0; k < 2; k++) {
+                    // a repeated pick makes a duplicate edge, which loading drops; the
+                    // second pick can draw the station itself, which would make a self loop
+                    int target;
+                    do {
+                        target = endpoints[random.nextInt(ends)];
+                    } while (target == id);
+                    edge(id, target);
+                    endpoints[ends++] = id;
+                    endpoints[ends++] = target;
+                }
+            }
+        }
+    }
+
+    /** Places {@code id} one step on from {@code previous} along {@code heading} and links them. */
+    private int extend(int previous, int id, double heading) {
+        double step = STEP * (1 + random.nextDouble());
+        xs[id] = xs[previous] + Math.cos(heading) * step;
+        ys[id] = ys[previous] + Math.sin(heading) * step;
+        edge(previous, id);
+        return id;
+    }
+
+    private void edge(int a, int b) {
+        if (count == src.length) {
+            src = Arrays.copyOf(src, count * 2);
+            dst = Arrays.copyOf(dst, count * 2);
+        }
+        src[count] = a;
+        dst[count++] = b;
+    }
+
+    private double distance(int a, int b) {
+        return Math.hypot(xs[a] - xs[b], ys[a] - ys[b]);
+    }
+
+    /** Moves the map so it starts half a step from the origin, where the editor's canvas starts. */
+    private void shiftToOrigin() {
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        for (int id = 0; id < stations; id++) {
+            minX = Math.min(minX, xs[id]);
+            minY = Math.min(minY, ys[id]);
+        }
+        for (int id = 0; id < stations; id++) {
+            xs[id] += STEP / 2 - minX;
+            ys[id] += STEP / 2 - minY;
+        }
+    }
+}
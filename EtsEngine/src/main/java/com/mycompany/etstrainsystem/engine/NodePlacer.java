@@ -0,0 +1,126 @@
+package com.mycompany.etstrainsystem.engine;
+
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Picks a free spot for a new station inside a fixed drawing area, keeping
+ * clear of existing stations and of the lines between them. Candidate spots
+ * are checked against a {@link SpatialIndex}, so each check only looks at
+ * the stations and lines nearby.
+ */
+public class NodePlacer {
+
+    public static final double MIN_NODE_DISTANCE = 80;
+    private static final LatencyHistogram PLACEMENT_LATENCY = Metrics.histogram("placement.findPosition");
+    private static final LongAdder GRID_FALLBACKS = Metrics.counter("placement.gridFallbacks");
+
+    private final SpatialIndex index;
+    private final double width;
+    private final double height;
+    private final Random random;
+    private double radius = 25;
+
+    public NodePlacer(Graph graph, double width, double height, Random random) {
+        this.index = new SpatialIndex(graph);
+        this.width = width;
+        this.height = height;
+        this.random = random;
+    }
+
+    public double getRadius() {
+        return radius;
+    }
+
+    public void setRadius(double radius) {
+        this.radius = radius;
+    }
+
+    public double[] findPosition() {
+        long start = Metrics.start();
+        double x, y;
+        boolean validPosition = false;
+        int attempts = 0;
+        double margin = radius + 20;
+
+        do {
+            x = margin + random.nextDouble() * (width - 2 * margin);
+            y = margin + random.nextDouble() * (height - 2 * margin);
+            validPosition = isValidNodePosition(x, y);
+            attempts++;
+        } while (!validPosition && attempts < 200);
+
+        if (Metrics.enabled()) {
+            Metrics.PLACEMENT_RETRIES.add(attempts - 1);
+        }
+        double[] position;
+        if (validPosition) {
+            position = new double[]{x, y};
+        } else {
+            if (Metrics.enabled()) {
+                GRID_FALLBACKS.increment();
+            }
+            position = findGridPosition();
+        }
+        PLACEMENT_LATENCY.recordSince(start);
+        return position;
+    }
+
+    public boolean isValidNodePosition(double x, double y) {
+        return !index.anyNodeWithin(x, y, MIN_NODE_DISTANCE) && !index.anyEdgeWithin(x, y, radius + 10);
+    }
+
+    public static double distanceFromPointToLine(double px, double py, double x1, double y1, double x2, double y2) {
+        double A = px - x1;
+        double B = py - y1;
+        double C = x2 - x1;
+        double D = y2 - y1;
+
+        double dot = A * C + B * D;
+        double lenSq = C * C + D * D;
+
+        if (lenSq == 0) {
+            return Math.sqrt(A * A + B * B);
+        }
+
+        double param = dot / lenSq;
+
+        double xx, yy;
+        if (param < 0) {
+            xx = x1;
+            yy = y1;
+        } else if (param > 1) {
+            xx = x2;
+            yy = y2;
+        } else {
+            xx = x1 + param * C;
+            yy = y1 + param * D;
+        }
+
+        double dx = px - xx;
+        double dy = py - yy;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private double[] findGridPosition() {
+        double margin = radius + 20;
+        double spacing = MIN_NODE_DISTANCE;
+        int cols = (int)((width - 2 * margin) / spacing);
+        int rows = (int)((height - 2 * margin) / spacing);
+
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                double x = margin + col * spacing;
+                double y = margin + row * spacing;
+
+                if (isValidNodePosition(x, y)) {
+                    return new double[]{x, y};
+                }
+            }
+        }
+
+        double x = margin + random.nextDouble() * (width - 2 * margin);
+        double y = margin + random.nextDouble() * (height - 2 * margin);
+        return new double[]{x, y};
+    }
+}
@@ -0,0 +1,260 @@
+package com.mycompany.etstrainsystem.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Level-synchronous BFS that expands each frontier in parallel on a
+ * {@link ForkJoinPool}, switching between top-down and bottom-up steps the
+ * way Beamer's direction-optimizing BFS does: bottom-up once the frontier's
+ * edges outnumber a fraction of the unexplored edges, and top-down again
+ * once the frontier shrinks below a fraction of the nodes.
+ *
+ * The result holds exactly the stations {@link Graph#bfs} returns, each on
+ * the same hop level. Stations within a level are ordered by id rather than
+ * by discovery, since discovery order depends on thread scheduling.
+ *
+ * The graph must not change while a search is running; search a
+ * {@link GraphSnapshot} to run alongside edits.
+ */
+public class ParallelBfs {
+
+    private static final int ALPHA = 14;
+    private static final int BETA = 24;
+    private static final int MIN_CHUNK = 1024;
+
+    private static final LatencyHistogram PARALLEL_BFS_LATENCY = Metrics.histogram("query.parallelBfs");
+
+    private final ReadableGraph graph;
+    private final ForkJoinPool pool;
+    private int levelCount;
+    private int bottomUpSteps;
+
+    public ParallelBfs(ReadableGraph graph, ForkJoinPool pool) {
+        this.graph = graph;
+        this.pool = pool;
+    }
+
+    public ParallelBfs(ReadableGraph graph) {
+        this(graph, ForkJoinPool.commonPool());
+    }
+
+    /** Ids reachable from {@code source}, source first, in level order. */
+    public int[] reachable(int source) {
+        QueryEvent event = QueryEvent.start();
+        long start = Metrics.start();
+        int n = graph.idCount();
+        AtomicLongArray visited = new AtomicLongArray((n + 63) >>> 6);
+        visited.set(source >>> 6, 1L << source);
+
+        long unexploredEdges = 2L * graph.edgeCount() - graph.degree(source);
+        int[] frontier = {source};
+        List<int[]> levels = new ArrayList<>();
+        levels.add(frontier);
+        int total = 1;
+        boolean bottomUp = false;
+        bottomUpSteps = 0;
+
+        while (frontier.length > 0) {
+            long frontierEdges = 0;
+            for (int id : frontier) {
+                frontierEdges += graph.degree(id);
+            }
+            if (!bottomUp && frontierEdges > unexploredEdges / ALPHA) {
+                bottomUp = true;
+            } else if (bottomUp && frontier.length < n / BETA) {
+                bottomUp = false;
+            }
+
+            Step step = bottomUp
+                    ? new BottomUp(visited, frontierBits(frontier, n), 0, n)
+                    : new TopDown(visited, frontier, 0, frontier.length);
+            frontier = pool.invoke(step);
+            if (bottomUp) {
+                bottomUpSteps++;
+            }
+
+            Arrays.sort(frontier);
+            for (int id : frontier) {
+                unexploredEdges -= graph.degree(id);
+            }
+            if (frontier.length > 0) {
+                levels.add(frontier);
+                total += frontier.length;
+            }
+        }
+
+        levelCount = levels.size();
+        int[] result = new int[total];
+        int offset = 0;
+        for (int[] level : levels) {
+            System.arraycopy(level, 0, result, offset, level.length);
+            offset += level.length;
+        }
+        PARALLEL_BFS_LATENCY.recordSince(start);
+        // bottom-up steps stop scanning a row at its first visited neighbour, so edges are not counted here
+        Metrics.searched(total, 0);
+        event.finish("parallelBfs", graph, source, -1, total, total);
+        return result;
+    }
+
+    public List<String> reachable(String start) {
+        int source = graph.idOf(start);
+        List<String> result = new ArrayList<>();
+        if (source < 0) {
+            return result;
+        }
+        for (int id : reachable(source)) {
+            result.add(graph.nameOf(id));
+        }
+        return result;
+    }
+
+    /** Number of BFS levels, the source level included, in the last search. */
+    public int levelCount() {
+        return levelCount;
+    }
+
+    /** How many of the last search's levels were expanded bottom-up. */
+    public int bottomUpSteps() {
+        return bottomUpSteps;
+    }
+
+    private long[] frontierBits(int[] frontier, int n) {
+        long[] bits = new long[(n + 63) >>> 6];
+        for (int id : frontier) {
+            bits[id >>> 6] |= 1L << id;
+        }
+        return bits;
+    }
+
+    private static boolean claim(AtomicLongArray visited, int id) {
+        int word = id >>> 6;
+        long bit = 1L << id;
+        long current = visited.get(word);
+        while ((current & bit) == 0) {
+            if (visited.compareAndSet(word, current, current | bit)) {
+                return true;
+            }
+            current = visited.get(word);
+        }
+        return false;
+    }
+
+    private static int[] concat(int[] left, int[] right) {
+        int[] result = Arrays.copyOf(left, left.length + right.length);
+        System.arraycopy(right, 0, result, left.length, right.length);
+        return result;
+    }
+
+    private abstract class Step extends RecursiveTask<int[]> {
+
+        final AtomicLongArray visited;
+        final int from;
+        final int to;
+
+        Step(AtomicLongArray visited, int from, int to) {
+            this.visited = visited;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected int[] compute() {
+            if (to - from <= MIN_CHUNK) {
+                return expand();
+            }
+            int mid = (from + to) >>> 1;
+            Step left = split(from, mid);
+            Step right = split(mid, to);
+            left.fork();
+            int[] rightResult = right.compute();
+            return concat(left.join(), rightResult);
+        }
+
+        abstract Step split(int from, int to);
+
+        abstract int[] expand();
+    }
+
+    /** Pushes from each frontier station to its unvisited neighbours. */
+    private class TopDown extends Step {
+
+        final int[] frontier;
+
+        TopDown(AtomicLongArray visited, int[] frontier, int from, int to) {
+            super(visited, from, to);
+            this.frontier = frontier;
+        }
+
+        @Override
+        Step split(int from, int to) {
+            return new TopDown(visited, frontier, from, to);
+        }
+
+        @Override
+        int[] expand() {
+            int[] found = new int[16];
+            int size = 0;
+            for (int i = from; i < to; i++) {
+                int u = frontier[i];
+                int[] row = graph.neighbors(u);
+                for (int j = 0; j < graph.degree(u); j++) {
+                    int w = row[j];
+                    if (claim(visited, w)) {
+                        if (size == found.length) {
+                            found = Arrays.copyOf(found, size * 2);
+                        }
+                        found[size++] = w;
+                    }
+                }
+            }
+            return Arrays.copyOf(found, size);
+        }
+    }
+
+    /** Lets each unvisited station look for any parent in the frontier. */
+    private class BottomUp extends Step {
+
+        final long[] frontierBits;
+
+        BottomUp(AtomicLongArray visited, long[] frontierBits, int from, int to) {
+            super(visited, from, to);
+            this.frontierBits = frontierBits;
+        }
+
+        @Override
+        Step split(int from, int to) {
+            return new BottomUp(visited, frontierBits, from, to);
+        }
+
+        @Override
+        int[] expand() {
+            int[] found = new int[16];
+            int size = 0;
+            for (int v = from; v < to; v++) {
+                if ((visited.get(v >>> 6) & (1L << v)) != 0 || !graph.isLive(v)) {
+                    continue;
+                }
+                int[] row = graph.neighbors(v);
+                for (int j = 0; j < graph.degree(v); j++) {
+                    int u = row[j];
+                    if ((frontierBits[u >>> 6] & (1L << u)) != 0) {
+                        // neighbouring chunks may share a word, so set the bit atomically
+                        claim(visited, v);
+                        if (size == found.length) {
+                            found = Arrays.copyOf(found, size * 2);
+                        }
+                        found[size++] = v;
+                        break;
+                    }
+                }
+            }
+            return Arrays.copyOf(found, size);
+        }
+    }
+}
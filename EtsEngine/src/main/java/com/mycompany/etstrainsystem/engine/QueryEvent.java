@@ -0,0 +1,49 @@
+package com.mycompany.etstrainsystem.engine;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** JFR event for one search over the graph. */
+@Name("com.mycompany.etstrainsystem.Query")
+@Label("Graph Query")
+@Category("ETS Train System")
+@Description("A search over the station graph")
+final class QueryEvent extends Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("From")
+    String from;
+
+    @Label("To")
+    String to;
+
+    @Label("Results")
+    int results;
+
+    @Label("Stations Visited")
+    long visited;
+
+    static QueryEvent start() {
+        QueryEvent event = new QueryEvent();
+        event.begin();
+        return event;
+    }
+
+    /** Commits the event if a recording wants it; {@code from} and {@code to} are ids, -1 for none. */
+    void finish(String operation, ReadableGraph graph, int from, int to, int results, long visited) {
+        end();
+        if (shouldCommit()) {
+            this.operation = operation;
+            this.from = from < 0 ? null : graph.nameOf(from);
+            this.to = to < 0 ? null : graph.nameOf(to);
+            this.results = results;
+            this.visited = visited;
+            commit();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.mycompany.etstrainsystem.engine;
+
+import java.util.Arrays;
+
+/**
+ * Outcome of {@link MultiSourceBfs}: one row per source, in the order the
+ * sources were given, and one column per station id. Reachability is one
+ * bit per cell; hop counts, when asked for, take two bytes per cell.
+ *
+ * Cells are stored station-major, all the sources of one station side by
+ * side, which is the layout {@link MultiSourceBfs} produces them in.
+ */
+public final class ReachabilityMatrix {
+
+    /** Hop count stored for a station the source does not reach. */
+    static final char UNREACHED = Character.MAX_VALUE;
+
+    private final int[] sources;
+    private final int columns;
+    private final int sourceWords;
+    private final long[] bits;
+    private final char[] hops;
+
+    ReachabilityMatrix(int[] sources, int columns, boolean withHops) {
+        this.sources = sources;
+        this.columns = columns;
+        this.sourceWords = (sources.length + 63) >>> 6;
+        this.bits = new long[columns * sourceWords];
+        this.hops = withHops ? new char[sources.length * columns] : null;
+        if (withHops) {
+            Arrays.fill(hops, UNREACHED);
+        }
+    }
+
+    public int sourceCount() {
+        return sources.length;
+    }
+
+    /** Station id of the source in row {@code row}. */
+    public int source(int row) {
+        return sources[row];
+    }
+
+    public boolean hasHops() {
+        return hops != null;
+    }
+
+    public boolean reaches(int row, int id) {
+        return (bits[id * sourceWords + (row >>> 6)] & (1L << row)) != 0;
+    }
+
+    /**
+     * Hops from the row's source to {@code id}, or -1 if it is not reached.
+     *
+     * @throws IllegalStateException if the matrix was built without hop counts
+     */
+    public int hops(int row, int id) {
+        if (hops == null) {
+            throw new IllegalStateException("Matrix was built without hop counts");
+        }
+        char value = hops[id * sources.length + row];
+        return value == UNREACHED ? -1 : value;
+    }
+
+    /** Number of stations the row's source reaches, itself included. */
+    public int reachableCount(int row) {
+        int count = 0;
+        for (int id = 0; id < columns; id++) {
+            if (reaches(row, id)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** Ids the row's source reaches, itself included, in id order. */
+    public int[] reachableIds(int row) {
+        int[] result = new int[reachableCount(row)];
+        int size = 0;
+        for (int id = 0; id < columns; id++) {
+            if (reaches(row, id)) {
+                result[size++] = id;
+            }
+        }
+        return result;
+    }
+
+    /** Stores one word of a station's reachability bits; {@code firstRow} is a multiple of 64. */
+    void setReachedWord(int id, int firstRow, long word) {
+        bits[id * sourceWords + (firstRow >>> 6)] = word;
+    }
+
+    void setHops(int row, int id, int value) {
+        hops[id * sources.length + row] = (char) value;
+    }
+}
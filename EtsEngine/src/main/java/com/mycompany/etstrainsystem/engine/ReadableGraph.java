@@ -0,0 +1,185 @@
+package com.mycompany.etstrainsystem.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only side of a station graph, shared by the live {@link Graph} and
+ * its immutable {@link GraphSnapshot}s, so searches run on either.
+ */
+public interface ReadableGraph {
+
+    /** Returns the id of a live station, or -1 if there is none with that name. */
+    int idOf(String name);
+
+    String nameOf(int id);
+
+    /** Upper bound (exclusive) on every id handed out so far, live or not. */
+    int idCount();
+
+    boolean isLive(int id);
+
+    double x(int id);
+
+    double y(int id);
+
+    int degree(int id);
+
+    /** Raw adjacency row of a node; only the first {@code degree(id)} entries are valid. */
+    int[] neighbors(int id);
+
+    /** Travel times in step with {@link #neighbors(int)}. */
+    double[] travelTimes(int id);
+
+    /** Distances in step with {@link #neighbors(int)}. */
+    double[] distances(int id);
+
+    int nodeCount();
+
+    int edgeCount();
+
+    /** Changes with every edit, so derived data can be cached against it. */
+    long version();
+
+    /**
+     * A travel time per unit of straight-line length that no edge beats, or
+     * 0 without edges; it may sit below the true minimum once edges are
+     * removed or stations moved, but never above it.
+     */
+    double minTravelRate();
+
+    default boolean containsNode(String name) {
+        return idOf(name) >= 0;
+    }
+
+    default boolean hasEdge(int a, int b) {
+        // scan the shorter of the two rows
+        if (degree(a) > degree(b)) {
+            int t = a;
+            a = b;
+            b = t;
+        }
+        int[] row = neighbors(a);
+        for (int i = 0; i < degree(a); i++) {
+            if (row[i] == b) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Travel time of the edge between two stations, or NaN if they are not adjacent. */
+    default double travelTime(int a, int b) {
+        int index = edgeIndex(a, b);
+        return index < 0 ? Double.NaN : travelTimes(a)[index];
+    }
+
+    /** Distance of the edge between two stations, or NaN if they are not adjacent. */
+    default double distance(int a, int b) {
+        int index = edgeIndex(a, b);
+        return index < 0 ? Double.NaN : distances(a)[index];
+    }
+
+    /** Position of {@code b} in the adjacency row of {@code a}, or -1. */
+    default int edgeIndex(int a, int b) {
+        int[] row = neighbors(a);
+        for (int i = 0; i < degree(a); i++) {
+            if (row[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    default boolean hasEdge(String node1Name, String node2Name) {
+        int a = idOf(node1Name);
+        int b = idOf(node2Name);
+        return a >= 0 && b >= 0 && hasEdge(a, b);
+    }
+
+    default List<String> nodeNames() {
+        List<String> result = new ArrayList<>(nodeCount());
+        for (int id = 0; id < idCount(); id++) {
+            if (isLive(id)) {
+                result.add(nameOf(id));
+            }
+        }
+        return result;
+    }
+
+    default List<String> bfs(String start) {
+        int source = idOf(start);
+        if (source < 0) {
+            return new ArrayList<>();
+        }
+        QueryEvent event = QueryEvent.start();
+        long startTime = Metrics.start();
+        long scanned = 0;
+        int[] queue = new int[nodeCount()];
+        boolean[] visited = new boolean[idCount()];
+        int head = 0;
+        int tail = 0;
+
+        queue[tail++] = source;
+        visited[source] = true;
+
+        while (head < tail) {
+            int current = queue[head++];
+            int[] row = neighbors(current);
+            int degree = degree(current);
+            scanned += degree;
+            for (int i = 0; i < degree; i++) {
+                int neighbor = row[i];
+                if (!visited[neighbor]) {
+                    visited[neighbor] = true;
+                    queue[tail++] = neighbor;
+                }
+            }
+        }
+
+        List<String> reachableNodesInOrder = new ArrayList<>(tail);
+        for (int i = 0; i < tail; i++) {
+            reachableNodesInOrder.add(nameOf(queue[i]));
+        }
+        Metrics.BFS_LATENCY.recordSince(startTime);
+        Metrics.searched(tail, scanned);
+        event.finish("bfs", this, source, -1, tail, tail);
+        return reachableNodesInOrder;
+    }
+
+    /**
+     * Lazy breadth-first traversal from {@code start}, cut off after
+     * {@code maxHops} hops and {@code maxResults} stations; pass
+     * {@link BfsTraversal#UNLIMITED} for no limit.
+     *
+     * @throws IllegalArgumentException if there is no such station
+     */
+    default BfsTraversal traverse(String start, int maxHops, int maxResults) {
+        int source = idOf(start);
+        if (source < 0) {
+            throw new IllegalArgumentException("Station '" + start + "' does not exist");
+        }
+        return new BfsTraversal(this, source, maxHops, maxResults);
+    }
+
+    /**
+     * Shortest route between two stations by hop count, both ends included,
+     * or an empty list if either is missing or they are not connected.
+     */
+    default List<String> route(String from, String to) {
+        return route(new RouteFinder(this), from, to);
+    }
+
+    default List<String> route(RouteFinder finder, String from, String to) {
+        int source = idOf(from);
+        int target = idOf(to);
+        List<String> result = new ArrayList<>();
+        if (source < 0 || target < 0) {
+            return result;
+        }
+        for (int id : finder.route(source, target)) {
+            result.add(nameOf(id));
+        }
+        return result;
+    }
+}
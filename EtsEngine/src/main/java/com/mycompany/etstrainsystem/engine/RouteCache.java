@@ -0,0 +1,238 @@
+package com.mycompany.etstrainsystem.engine;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Bounded cache of reachability and route results by station id, evicting
+ * the least recently used. Each result is tagged with the graph version it
+ * was computed at, and is only handed to a reader whose own version is at
+ * least as new, so a reader never sees ids its snapshot does not have.
+ *
+ * Edits invalidate selectively: adding or removing an edge drops the
+ * results whose origin lies in a component it touched, as labelled by a
+ * {@link ConnectivityIndex}, and removing a station drops the results that
+ * start or end there. Results from other components stay cached, and an
+ * edit costs one pass over the cached keys. A result computed before an
+ * edit that is stored only after it could have missed that edit's
+ * invalidation, so it is not stored at all.
+ *
+ * Lookups and stores may come from any thread; results are computed
+ * outside the cache's lock, and returned arrays are shared, so callers must
+ * not change them.
+ */
+public class RouteCache implements GraphListener {
+
+    // bookkeeping per result, counted in ints like its ids
+    private static final int ENTRY_WEIGHT = 16;
+    private static final int REACHABLE = 0;
+    private static final int ROUTE = 1;
+
+    private final Graph graph;
+    private final ConnectivityIndex connectivity;
+    private final long capacity;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    // version of the last edit that invalidated anything
+    private long invalidatedAt;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * Caches results holding up to {@code capacity} station ids in all,
+     * counting {@value #ENTRY_WEIGHT} more for each result. The index must
+     * be over {@code graph}; being built first, it hears of each edit
+     * before this cache does.
+     */
+    public RouteCache(Graph graph, ConnectivityIndex connectivity, long capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity must not be negative");
+        }
+        this.graph = graph;
+        this.connectivity = connectivity;
+        this.capacity = capacity;
+        this.invalidatedAt = graph.version();
+        graph.addListener(this);
+    }
+
+    /** Cached stations reachable from {@code origin} as {@link BfsTraversal} returns them, or null. */
+    public int[] getReachable(long version, int origin, int maxHops, int maxResults) {
+        return get(new Key(REACHABLE, origin, maxHops, maxResults), version);
+    }
+
+    /** Stores the stations a traversal from {@code origin} over the graph at {@code version} returned. */
+    public void putReachable(long version, int origin, int maxHops, int maxResults, int[] ids) {
+        put(new Key(REACHABLE, origin, maxHops, maxResults), version, ids);
+    }
+
+    /** Cached route from {@code from} to {@code to}, as {@link RouteFinder#route} returns it, or null. */
+    public int[] getRoute(long version, int from, int to) {
+        return get(new Key(ROUTE, from, to, 0), version);
+    }
+
+    /** Stores the route a {@link RouteFinder} found over the graph at {@code version}. */
+    public void putRoute(long version, int from, int to, int[] path) {
+        put(new Key(ROUTE, from, to, 0), version, path);
+    }
+
+    private synchronized int[] get(Key key, long version) {
+        Entry entry = entries.get(key);
+        if (entry == null || entry.version > version) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.ids;
+    }
+
+    private synchronized void put(Key key, long version, int[] ids) {
+        long entryWeight = ids.length + ENTRY_WEIGHT;
+        // a result bigger than a quarter of the cache would flush too much to be worth keeping
+        if (invalidatedAt > version || entryWeight > capacity / 4) {
+            return;
+        }
+        Entry previous = entries.put(key, new Entry(version, ids));
+        if (previous != null) {
+            weight -= previous.ids.length + ENTRY_WEIGHT;
+        }
+        weight += entryWeight;
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (weight > capacity) {
+            weight -= eldest.next().ids.length + ENTRY_WEIGHT;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized long hitCount() {
+        return hits;
+    }
+
+    public synchronized long missCount() {
+        return misses;
+    }
+
+    /** Fraction of lookups answered from the cache, or 0 before the first one. */
+    public synchronized double hitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /** Results dropped to make room. */
+    public synchronized long evictionCount() {
+        return evictions;
+    }
+
+    /** Results dropped because an edit may have changed them. */
+    public synchronized long invalidationCount() {
+        return invalidations;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /** Station ids held, plus the per-result bookkeeping allowance. */
+    public synchronized long weight() {
+        return weight;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    @Override
+    public void edgeAdded(int node1, int node2) {
+        // the two components, if they were apart, have already been merged
+        invalidateComponents(connectivity.componentOf(node1), -1);
+    }
+
+    @Override
+    public void edgeRemoved(int node1, int node2) {
+        invalidateComponents(connectivity.componentOf(node1), connectivity.componentOf(node2));
+    }
+
+    @Override
+    public synchronized void nodeRemoved(int id) {
+        invalidatedAt = graph.version();
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Entry> entry = it.next();
+            Key key = entry.getKey();
+            if (key.origin == id || key.kind == ROUTE && key.a == id) {
+                remove(it, entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public synchronized void graphReloaded() {
+        invalidatedAt = graph.version();
+        invalidations += entries.size();
+        clear();
+    }
+
+    private synchronized void invalidateComponents(int component1, int component2) {
+        invalidatedAt = graph.version();
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Key, Entry> entry = it.next();
+            int component = connectivity.componentOf(entry.getKey().origin);
+            if (component == component1 || component == component2) {
+                remove(it, entry.getValue());
+            }
+        }
+    }
+
+    private void remove(Iterator<Map.Entry<Key, Entry>> it, Entry entry) {
+        it.remove();
+        weight -= entry.ids.length + ENTRY_WEIGHT;
+        invalidations++;
+    }
+
+    private static final class Key {
+
+        final int kind;
+        final int origin;
+        // reachable: hop and result limits; route: destination
+        final int a;
+        final int b;
+
+        Key(int kind, int origin, int a, int b) {
+            this.kind = kind;
+            this.origin = origin;
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return kind == key.kind && origin == key.origin && a == key.a && b == key.b;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kind, origin, a, b);
+        }
+    }
+
+    private static final class Entry {
+
+        final long version;
+        final int[] ids;
+
+        Entry(long version, int[] ids) {
+            this.version = version;
+            this.ids = ids;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.mycompany.etstrainsystem.engine;
+
+import java.util.Arrays;
+
+/**
+ * Point-to-point shortest route by bidirectional BFS. Both ends grow one
+ * level at a time, always expanding the smaller frontier, and the search
+ * stops at the first level where the two sides meet.
+ *
+ * Scratch arrays are reused between queries and reset by bumping a stamp,
+ * so a query costs only the stations it visits. Not thread-safe; give each
+ * thread its own finder, over a {@link GraphSnapshot} when other threads
+ * may edit the graph meanwhile.
+ */
+public class RouteFinder {
+
+    private static final LatencyHistogram ROUTE_LATENCY = Metrics.histogram("query.route");
+
+    private final ReadableGraph graph;
+    private int[] forwardMark = new int[0];
+    private int[] backwardMark = new int[0];
+    private int[] forwardParent = new int[0];
+    private int[] backwardParent = new int[0];
+    private int[] forwardDist = new int[0];
+    private int[] backwardDist = new int[0];
+    private int[] frontier = new int[0];
+    private int[] otherFrontier = new int[0];
+    private int[] spare = new int[0];
+    private int stamp;
+    private int visitedCount;
+    private long scannedCount;
+
+    public RouteFinder(ReadableGraph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Returns the ids along a shortest route from {@code from} to {@code to},
+     * both included, or an empty array if {@code to} is unreachable.
+     */
+    public int[] route(int from, int to) {
+        QueryEvent event = QueryEvent.start();
+        long start = Metrics.start();
+        int[] path = search(from, to);
+        ROUTE_LATENCY.recordSince(start);
+        Metrics.searched(visitedCount, scannedCount);
+        event.finish("route", graph, from, to, path.length, visitedCount);
+        return path;
+    }
+
+    private int[] search(int from, int to) {
+        prepare();
+        visitedCount = 0;
+        scannedCount = 0;
+        if (from == to) {
+            visitedCount = 1;
+            return new int[]{from};
+        }
+
+        visit(forwardMark, forwardParent, forwardDist, from, -1, 0);
+        visit(backwardMark, backwardParent, backwardDist, to, -1, 0);
+        int[] forward = frontier;
+        int[] backward = otherFrontier;
+        int[] next = spare;
+        forward[0] = from;
+        backward[0] = to;
+        int forwardSize = 1;
+        int backwardSize = 1;
+
+        while (forwardSize > 0 && backwardSize > 0) {
+            boolean expandForward = forwardSize <= backwardSize;
+            int[] current = expandForward ? forward : backward;
+            int size = expandForward ? forwardSize : backwardSize;
+            int[] mark = expandForward ? forwardMark : backwardMark;
+            int[] parent = expandForward ? forwardParent : backwardParent;
+            int[] dist = expandForward ? forwardDist : backwardDist;
+            int[] otherMark = expandForward ? backwardMark : forwardMark;
+            int[] otherDist = expandForward ? backwardDist : forwardDist;
+
+            int nextSize = 0;
+            int best = Integer.MAX_VALUE;
+            int meetFrom = -1;
+            int meetTo = -1;
+            for (int i = 0; i < size; i++) {
+                int u = current[i];
+                int[] row = graph.neighbors(u);
+                scannedCount += graph.degree(u);
+                for (int j = 0; j < graph.degree(u); j++) {
+                    int w = row[j];
+                    if (otherMark[w] == stamp) {
+                        // every u in this frontier is at the same depth, so
+                        // the best meeting is the one closest to the far end
+                        int length = dist[u] + 1 + otherDist[w];
+                        if (length < best) {
+                            best = length;
+                            meetFrom = u;
+                            meetTo = w;
+                        }
+                    }
+                    if (mark[w] != stamp) {
+                        visit(mark, parent, dist, w, u, dist[u] + 1);
+                        next[nextSize++] = w;
+                    }
+                }
+            }
+
+            if (meetFrom >= 0) {
+                return expandForward ? buildPath(meetFrom, meetTo, best) : buildPath(meetTo, meetFrom, best);
+            }
+
+            int[] done = current;
+            if (expandForward) {
+                forward = next;
+                forwardSize = nextSize;
+            } else {
+                backward = next;
+                backwardSize = nextSize;
+            }
+            next = done;
+        }
+        return new int[0];
+    }
+
+    /** Number of stations either side of the last search touched. */
+    public int visitedCount() {
+        return visitedCount;
+    }
+
+    private void visit(int[] mark, int[] parent, int[] dist, int id, int from, int depth) {
+        mark[id] = stamp;
+        parent[id] = from;
+        dist[id] = depth;
+        visitedCount++;
+    }
+
+    /** Joins the forward chain ending at {@code a} to the backward chain starting at {@code b}. */
+    private int[] buildPath(int a, int b, int length) {
+        int[] path = new int[length + 1];
+        int index = forwardDist[a];
+        for (int id = a; id >= 0; id = forwardParent[id]) {
+            path[index--] = id;
+        }
+        index = forwardDist[a] + 1;
+        for (int id = b; id >= 0; id = backwardParent[id]) {
+            path[index++] = id;
+        }
+        return path;
+    }
+
+    private void prepare() {
+        int capacity = graph.idCount();
+        if (forwardMark.length < capacity) {
+            int length = Math.max(capacity, forwardMark.length * 2);
+            forwardMark = new int[length];
+            backwardMark = new int[length];
+            forwardParent = new int[length];
+            backwardParent = new int[length];
+            forwardDist = new int[length];
+            backwardDist = new int[length];
+            frontier = new int[length];
+            otherFrontier = new int[length];
+            spare = new int[length];
+            stamp = 0;
+        }
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(forwardMark, 0);
+            Arrays.fill(backwardMark, 0);
+            stamp = 1;
+        }
+    }
+}
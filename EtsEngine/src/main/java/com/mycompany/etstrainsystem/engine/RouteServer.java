@@ -0,0 +1,486 @@
+package com.mycompany.etstrainsystem.engine;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Line-protocol query server on the loopback interface. Each connection is
+ * served on its own thread from {@link ConnectionThreads}, so a virtual
+ * thread where the JDK has them. Requests are one line each, fields
+ * separated by a comma or a tab:
+ *
+ * <pre>
+ * ping                            OK pong
+ * stats                           OK nodes=N edges=M version=V, and with a
+ *                                 cache hits=H misses=M evictions=E
+ * format,csv|json                 OK; sets how result sets are written
+ * reachable,NAME[,HOPS[,LIMIT]]   result set of station names, BFS order,
+ *                                 at most HOPS hops away and LIMIT rows
+ * route,FROM,TO                   result set, fewest hops
+ * fastest,FROM,TO                 result set of name, time and distance so far
+ * add-node,NAME[,X,Y]             OK, or ERR with the {@link MutationResult}
+ * remove-node,NAME                (the edit lines of {@link GraphBatch#parse})
+ * move-node,NAME,X,Y
+ * add-edge,NAME1,NAME2[,TIME,DISTANCE]
+ * remove-edge,NAME1,NAME2
+ * quit                            closes the connection
+ * </pre>
+ *
+ * A result set starts with {@code OK <rows>} followed by one CSV line per
+ * row, or by a single line holding a JSON array. Rows are written straight
+ * to the socket's buffer as they are produced. Failures answer
+ * {@code ERR <reason>} on one line.
+ *
+ * Clients may pipeline: responses come back in request order, and output is
+ * only flushed once no further request is already waiting, so a burst of
+ * pipelined requests is answered with a few large writes. Queries run on
+ * {@link Graph#snapshot()} and never wait for edits; edits go through
+ * {@link Graph#apply} and are acknowledged once the journal has synced them.
+ */
+public class RouteServer implements Closeable {
+
+    private static final int BUFFER_BYTES = 1 << 16;
+    private static final int BACKLOG = 4096;
+    private static final LatencyHistogram REQUEST_LATENCY = Metrics.histogram("server.request");
+
+    private final Graph graph;
+    private final NodePlacer placer;
+    private final GraphJournal journal;
+    private final RouteCache cache;
+    private final Set<Socket> connections = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private volatile Searchers searchers;
+    private ExecutorService executor;
+    private ServerSocket serverSocket;
+    private Thread acceptor;
+
+    /** {@code journal} may be null, in which case edits are not persisted. */
+    public RouteServer(Graph graph, NodePlacer placer, GraphJournal journal) {
+        this(graph, placer, journal, null);
+    }
+
+    /**
+     * Answers {@code reachable} and {@code route} from {@code cache} where it
+     * can; null to always search.
+     */
+    public RouteServer(Graph graph, NodePlacer placer, GraphJournal journal, RouteCache cache) {
+        this.graph = graph;
+        this.placer = placer;
+        this.journal = journal;
+        this.cache = cache;
+    }
+
+    /** Starts listening on the loopback interface; port 0 picks a free port. */
+    public synchronized void start(int port) throws IOException {
+        if (serverSocket != null) {
+            throw new IllegalStateException("Server is already running");
+        }
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        executor = ConnectionThreads.newPerTaskExecutor("route-server-connection");
+        ServerSocket socket = serverSocket;
+        acceptor = new Thread(() -> acceptLoop(socket), "route-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public synchronized boolean isRunning() {
+        return serverSocket != null;
+    }
+
+    public synchronized int port() {
+        return serverSocket == null ? -1 : serverSocket.getLocalPort();
+    }
+
+    public int connectionCount() {
+        return connections.size();
+    }
+
+    /** Stops accepting, closes every open connection and waits for the acceptor to finish. */
+    @Override
+    public void close() throws IOException {
+        ServerSocket socket;
+        Thread thread;
+        synchronized (this) {
+            socket = serverSocket;
+            thread = acceptor;
+            serverSocket = null;
+            acceptor = null;
+        }
+        if (socket == null) {
+            return;
+        }
+        socket.close();
+        for (Socket connection : connections) {
+            connection.close();
+        }
+        executor.shutdown();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void acceptLoop(ServerSocket socket) {
+        while (!socket.isClosed()) {
+            Socket connection;
+            try {
+                connection = socket.accept();
+            } catch (IOException e) {
+                // closed by close(), or the listening socket failed
+                return;
+            }
+            connections.add(connection);
+            try {
+                executor.execute(() -> serve(connection));
+            } catch (RejectedExecutionException e) {
+                // close() shut the executor down between accept and here
+                connections.remove(connection);
+                try {
+                    connection.close();
+                } catch (IOException ignored) {
+                    // already on the way out
+                }
+            }
+        }
+    }
+
+    private void serve(Socket connection) {
+        try (Socket socket = connection;
+             BufferedReader in = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), BUFFER_BYTES);
+             Writer out = new BufferedWriter(
+                     new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), BUFFER_BYTES)) {
+            socket.setTcpNoDelay(true);
+            Session session = new Session(out);
+            String line;
+            while ((line = in.readLine()) != null) {
+                long start = Metrics.start();
+                boolean more = session.handle(line);
+                REQUEST_LATENCY.recordSince(start);
+                if (!more) {
+                    break;
+                }
+                if (!in.ready()) {
+                    out.flush();
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            // the client went away; nothing to answer
+        } finally {
+            connections.remove(connection);
+        }
+    }
+
+    /**
+     * Route searchers over one snapshot, lent to one request at a time. There
+     * are only as many as requests ever ran at once, not one per connection,
+     * and they are dropped together when a newer snapshot comes along.
+     */
+    private static final class Searchers {
+
+        final GraphSnapshot snapshot;
+        final ConcurrentLinkedQueue<RouteFinder> routeFinders = new ConcurrentLinkedQueue<>();
+        final ConcurrentLinkedQueue<WeightedRouter> weightedRouters = new ConcurrentLinkedQueue<>();
+
+        Searchers(GraphSnapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+    }
+
+    private Searchers searchers() {
+        GraphSnapshot latest = graph.snapshot();
+        Searchers current = searchers;
+        if (current == null || current.snapshot != latest) {
+            current = new Searchers(latest);
+            searchers = current;
+        }
+        return current;
+    }
+
+    /** Per-connection state: the output format. */
+    private class Session {
+
+        final Writer out;
+        boolean json;
+
+        Session(Writer out) {
+            this.out = out;
+        }
+
+        /** Answers one request line; false once the client asked to quit. */
+        boolean handle(String line) throws IOException {
+            line = line.trim();
+            if (line.isEmpty()) {
+                return true;
+            }
+            String[] fields = line.split("[,\t]");
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = fields[i].trim();
+            }
+            try {
+                switch (fields[0]) {
+                    case "ping":
+                        out.write("OK pong\n");
+                        break;
+                    case "stats":
+                        GraphSnapshot current = graph.snapshot();
+                        out.write("OK nodes=" + current.nodeCount() + " edges=" + current.edgeCount()
+                                + " version=" + current.version());
+                        if (cache != null) {
+                            out.write(" hits=" + cache.hitCount() + " misses=" + cache.missCount()
+                                    + " evictions=" + cache.evictionCount());
+                        }
+                        out.write("\n");
+                        break;
+                    case "format":
+                        expect(fields, 2);
+                        if (!fields[1].equals("csv") && !fields[1].equals("json")) {
+                            throw new IllegalArgumentException("format must be csv or json");
+                        }
+                        json = fields[1].equals("json");
+                        out.write("OK\n");
+                        break;
+                    case "reachable":
+                        expect(fields, 2, 4);
+                        reachable(fields[1], fields.length > 2 ? limit(fields[2]) : BfsTraversal.UNLIMITED,
+                                fields.length > 3 ? limit(fields[3]) : BfsTraversal.UNLIMITED);
+                        break;
+                    case "route":
+                        expect(fields, 3);
+                        route(fields[1], fields[2]);
+                        break;
+                    case "fastest":
+                        expect(fields, 3);
+                        fastest(fields[1], fields[2]);
+                        break;
+                    case "quit":
+                        out.write("OK bye\n");
+                        return false;
+                    default:
+                        edit(line);
+                        break;
+                }
+            } catch (IllegalArgumentException e) {
+                out.write("ERR " + e.getMessage().replace('\n', ' ') + "\n");
+            }
+            return true;
+        }
+
+        private void reachable(String name, int maxHops, int maxResults) throws IOException {
+            GraphSnapshot current = graph.snapshot();
+            if (!current.containsNode(name)) {
+                notFound(name);
+                return;
+            }
+            // the header needs the row count, so gather ids first and look up names while writing
+            int source = current.idOf(name);
+            int[] ids = cache == null ? null : cache.getReachable(current.version(), source, maxHops, maxResults);
+            if (ids == null) {
+                ids = current.traverse(name, maxHops, maxResults).toArray();
+                if (cache != null) {
+                    cache.putReachable(current.version(), source, maxHops, maxResults, ids);
+                }
+            }
+            int count = ids.length;
+            writeHeader(count);
+            if (json) {
+                out.write('[');
+            }
+            for (int i = 0; i < count; i++) {
+                writeName(current.nameOf(ids[i]), i == 0);
+            }
+            writeEnd();
+        }
+
+        private void route(String from, String to) throws IOException {
+            Searchers pool = searchers();
+            GraphSnapshot current = pool.snapshot;
+            int source = current.idOf(from);
+            int target = current.idOf(to);
+            if (source < 0 || target < 0) {
+                notFound(source < 0 ? from : to);
+                return;
+            }
+            int[] path = cache == null ? null : cache.getRoute(current.version(), source, target);
+            if (path == null) {
+                RouteFinder finder = pool.routeFinders.poll();
+                if (finder == null) {
+                    finder = new RouteFinder(current);
+                }
+                path = finder.route(source, target);
+                pool.routeFinders.offer(finder);
+                if (cache != null) {
+                    cache.putRoute(current.version(), source, target, path);
+                }
+            }
+            writeHeader(path.length);
+            if (json) {
+                out.write('[');
+            }
+            for (int i = 0; i < path.length; i++) {
+                writeName(current.nameOf(path[i]), i == 0);
+            }
+            writeEnd();
+        }
+
+        private void fastest(String from, String to) throws IOException {
+            Searchers pool = searchers();
+            GraphSnapshot current = pool.snapshot;
+            int source = current.idOf(from);
+            int target = current.idOf(to);
+            if (source < 0 || target < 0) {
+                notFound(source < 0 ? from : to);
+                return;
+            }
+            WeightedRouter router = pool.weightedRouters.poll();
+            if (router == null) {
+                router = new WeightedRouter(current);
+            }
+            int[] path = router.aStar(source, target);
+            pool.weightedRouters.offer(router);
+            writeHeader(path.length);
+            if (json) {
+                out.write('[');
+            }
+            double time = 0;
+            double distance = 0;
+            for (int i = 0; i < path.length; i++) {
+                if (i > 0) {
+                    time += current.travelTime(path[i - 1], path[i]);
+                    distance += current.distance(path[i - 1], path[i]);
+                }
+                String name = current.nameOf(path[i]);
+                if (json) {
+                    out.write(i == 0 ? "{\"name\":" : ",{\"name\":");
+                    writeJsonString(name);
+                    out.write(",\"time\":" + time + ",\"distance\":" + distance + "}");
+                } else {
+                    writeCsvField(name);
+                    out.write("," + time + "," + distance + "\n");
+                }
+            }
+            writeEnd();
+        }
+
+        private void edit(String line) throws IOException {
+            GraphBatch batch = GraphBatch.parse(Collections.singletonList(line));
+            if (batch.size() == 0) {
+                // a comment line parses to no edit at all
+                out.write("ERR empty edit\n");
+                return;
+            }
+            BatchResult result = graph.apply(batch, placer);
+            if (result.result(0) != MutationResult.OK) {
+                out.write("ERR " + result.result(0) + "\n");
+                return;
+            }
+            if (journal != null) {
+                try {
+                    journal.sync();
+                } catch (IOException e) {
+                    out.write("ERR not saved: " + e.getMessage() + "\n");
+                    return;
+                }
+            }
+            out.write("OK\n");
+        }
+
+        private void notFound(String name) throws IOException {
+            out.write("ERR " + MutationResult.NODE_NOT_FOUND + " " + name + "\n");
+        }
+
+        private void writeHeader(int rows) throws IOException {
+            out.write("OK " + rows + "\n");
+        }
+
+        private void writeName(String name, boolean first) throws IOException {
+            if (json) {
+                if (!first) {
+                    out.write(',');
+                }
+                writeJsonString(name);
+            } else {
+                writeCsvField(name);
+                out.write('\n');
+            }
+        }
+
+        private void writeEnd() throws IOException {
+            if (json) {
+                out.write("]\n");
+            }
+        }
+
+        private void writeCsvField(String value) throws IOException {
+            if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+                out.write(value);
+                return;
+            }
+            out.write('"');
+            out.write(value.replace("\"", "\"\""));
+            out.write('"');
+        }
+
+        private void writeJsonString(String value) throws IOException {
+            out.write('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    out.write('\\');
+                    out.write(c);
+                } else if (c < 0x20) {
+                    out.write(String.format("\\u%04x", (int) c));
+                } else {
+                    out.write(c);
+                }
+            }
+            out.write('"');
+        }
+    }
+
+    private static void expect(String[] fields, int count) {
+        if (fields.length != count) {
+            throw new IllegalArgumentException("expected " + (count - 1) + " argument(s) for " + fields[0]);
+        }
+    }
+
+    private static void expect(String[] fields, int min, int max) {
+        if (fields.length < min || fields.length > max) {
+            throw new IllegalArgumentException("expected " + (min - 1) + " to " + (max - 1) + " arguments for " + fields[0]);
+        }
+    }
+
+    /** Parses a limit field, empty meaning none. */
+    private static int limit(String field) {
+        if (field.isEmpty()) {
+            return BfsTraversal.UNLIMITED;
+        }
+        try {
+            int limit = Integer.parseInt(field);
+            if (limit >= 0) {
+                return limit;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("bad limit " + field);
+    }
+}
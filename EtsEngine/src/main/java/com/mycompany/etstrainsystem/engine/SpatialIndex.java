@@ -0,0 +1,323 @@
+package com.mycompany.etstrainsystem.engine;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Uniform grid over station circles and line segments, kept in step with
+ * the graph, so "is anything near this point?" only looks at the few cells
+ * around the point instead of every station and edge.
+ *
+ * A station is filed under the cell holding its centre; an edge under every
+ * cell its segment passes through. Edges crossing more than
+ * {@link #MAX_EDGE_CELLS} cells, which bulk imports with arbitrary layouts
+ * produce, go on a plain list that every query scans instead. The index
+ * keeps its own copy of the position it filed each station at, so removals
+ * always visit the cells the insert did, even after a station has moved.
+ *
+ * The grid is built on the first query and dropped again when the graph is
+ * reloaded, so bulk loads that never place a station do not pay for it.
+ */
+public class SpatialIndex implements GraphListener {
+
+    public static final double CELL_SIZE = NodePlacer.MIN_NODE_DISTANCE;
+    public static final int MAX_EDGE_CELLS = 64;
+
+    private final Graph graph;
+    private final Map<Long, Cell> cells = new HashMap<>();
+    private double[] xs = new double[0];
+    private double[] ys = new double[0];
+    private long[] longEdges = new long[0];
+    private int longEdgeCount;
+    private boolean built;
+
+    public SpatialIndex(Graph graph) {
+        this.graph = graph;
+        graph.addListener(this);
+    }
+
+    /** Whether a live station's centre lies closer than {@code distance} to (x, y). */
+    public boolean anyNodeWithin(double x, double y, double distance) {
+        ensureBuilt();
+        double limit = distance * distance;
+        int fromX = cell(x - distance);
+        int toX = cell(x + distance);
+        int fromY = cell(y - distance);
+        int toY = cell(y + distance);
+        for (int cx = fromX; cx <= toX; cx++) {
+            for (int cy = fromY; cy <= toY; cy++) {
+                Cell cell = cells.get(key(cx, cy));
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 0; i < cell.nodeCount; i++) {
+                    int id = cell.nodes[i];
+                    double dx = x - xs[id];
+                    double dy = y - ys[id];
+                    if (dx * dx + dy * dy < limit) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Whether any edge passes closer than {@code distance} to (x, y). */
+    public boolean anyEdgeWithin(double x, double y, double distance) {
+        ensureBuilt();
+        for (int i = 0; i < longEdgeCount; i++) {
+            if (edgeWithin(longEdges[i], x, y, distance)) {
+                return true;
+            }
+        }
+        int fromX = cell(x - distance);
+        int toX = cell(x + distance);
+        int fromY = cell(y - distance);
+        int toY = cell(y + distance);
+        for (int cx = fromX; cx <= toX; cx++) {
+            for (int cy = fromY; cy <= toY; cy++) {
+                Cell cell = cells.get(key(cx, cy));
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 0; i < cell.edgeCount; i++) {
+                    if (edgeWithin(cell.edges[i], x, y, distance)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Discards every entry and indexes the graph again from scratch. */
+    public void rebuild() {
+        cells.clear();
+        longEdgeCount = 0;
+        built = true;
+        int n = graph.idCount();
+        xs = new double[n];
+        ys = new double[n];
+        for (int id = 0; id < n; id++) {
+            if (graph.isLive(id)) {
+                xs[id] = graph.x(id);
+                ys[id] = graph.y(id);
+                fileNode(id, true);
+            }
+        }
+        for (int a = 0; a < n; a++) {
+            int[] row = graph.neighbors(a);
+            for (int i = 0; i < graph.degree(a); i++) {
+                if (row[i] > a) {
+                    fileEdge(a, row[i], true);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void nodeAdded(int id) {
+        if (!built) {
+            return;
+        }
+        if (id >= xs.length) {
+            int length = Math.max(id + 1, xs.length * 2);
+            xs = Arrays.copyOf(xs, length);
+            ys = Arrays.copyOf(ys, length);
+        }
+        xs[id] = graph.x(id);
+        ys[id] = graph.y(id);
+        fileNode(id, true);
+    }
+
+    @Override
+    public void nodeRemoved(int id) {
+        if (!built) {
+            return;
+        }
+        fileNode(id, false);
+    }
+
+    @Override
+    public void nodeMoved(int id) {
+        if (!built) {
+            return;
+        }
+        int[] row = graph.neighbors(id);
+        for (int i = 0; i < graph.degree(id); i++) {
+            fileEdge(id, row[i], false);
+        }
+        fileNode(id, false);
+        xs[id] = graph.x(id);
+        ys[id] = graph.y(id);
+        fileNode(id, true);
+        for (int i = 0; i < graph.degree(id); i++) {
+            fileEdge(id, row[i], true);
+        }
+    }
+
+    @Override
+    public void edgeAdded(int node1, int node2) {
+        if (!built) {
+            return;
+        }
+        fileEdge(node1, node2, true);
+    }
+
+    @Override
+    public void edgeRemoved(int node1, int node2) {
+        if (!built) {
+            return;
+        }
+        fileEdge(node1, node2, false);
+    }
+
+    @Override
+    public void graphReloaded() {
+        built = false;
+        cells.clear();
+        longEdges = new long[0];
+        longEdgeCount = 0;
+        xs = new double[0];
+        ys = new double[0];
+    }
+
+    private void ensureBuilt() {
+        if (!built) {
+            rebuild();
+        }
+    }
+
+    private boolean edgeWithin(long edge, double x, double y, double distance) {
+        int a = (int) (edge >>> 32);
+        int b = (int) edge;
+        return NodePlacer.distanceFromPointToLine(x, y, xs[a], ys[a], xs[b], ys[b]) < distance;
+    }
+
+    private void fileNode(int id, boolean add) {
+        long key = key(cell(xs[id]), cell(ys[id]));
+        if (add) {
+            cells.computeIfAbsent(key, k -> new Cell()).addNode(id);
+        } else {
+            Cell cell = cells.get(key);
+            cell.removeNode(id);
+            if (cell.isEmpty()) {
+                cells.remove(key);
+            }
+        }
+    }
+
+    /** Adds or removes the edge in every cell the segment crosses, one grid column at a time. */
+    private void fileEdge(int node1, int node2, boolean add) {
+        long edge = node1 < node2 ? ((long) node1 << 32) | node2 : ((long) node2 << 32) | node1;
+        double x1 = xs[node1];
+        double y1 = ys[node1];
+        double x2 = xs[node2];
+        double y2 = ys[node2];
+        if (x2 < x1) {
+            double t = x1;
+            x1 = x2;
+            x2 = t;
+            t = y1;
+            y1 = y2;
+            y2 = t;
+        }
+        int firstColumn = cell(x1);
+        int lastColumn = cell(x2);
+        if (lastColumn - firstColumn + Math.abs(cell(y2) - cell(y1)) >= MAX_EDGE_CELLS) {
+            fileLongEdge(edge, add);
+            return;
+        }
+        double slope = x2 > x1 ? (y2 - y1) / (x2 - x1) : 0;
+        for (int cx = firstColumn; cx <= lastColumn; cx++) {
+            double left = Math.max(x1, cx * CELL_SIZE);
+            double right = Math.min(x2, (cx + 1) * CELL_SIZE);
+            double yLeft = cx == firstColumn ? y1 : y1 + (left - x1) * slope;
+            double yRight = cx == lastColumn ? y2 : y1 + (right - x1) * slope;
+            int fromY = cell(Math.min(yLeft, yRight));
+            int toY = cell(Math.max(yLeft, yRight));
+            for (int cy = fromY; cy <= toY; cy++) {
+                long key = key(cx, cy);
+                if (add) {
+                    cells.computeIfAbsent(key, k -> new Cell()).addEdge(edge);
+                } else {
+                    Cell cell = cells.get(key);
+                    cell.removeEdge(edge);
+                    if (cell.isEmpty()) {
+                        cells.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    private void fileLongEdge(long edge, boolean add) {
+        if (add) {
+            if (longEdgeCount == longEdges.length) {
+                longEdges = Arrays.copyOf(longEdges, Math.max(8, longEdgeCount * 2));
+            }
+            longEdges[longEdgeCount++] = edge;
+            return;
+        }
+        for (int i = 0; i < longEdgeCount; i++) {
+            if (longEdges[i] == edge) {
+                longEdges[i] = longEdges[--longEdgeCount];
+                return;
+            }
+        }
+    }
+
+    private static int cell(double coordinate) {
+        return (int) Math.floor(coordinate / CELL_SIZE);
+    }
+
+    private static long key(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+
+    private static final class Cell {
+
+        int[] nodes = new int[2];
+        int nodeCount;
+        long[] edges = new long[4];
+        int edgeCount;
+
+        void addNode(int id) {
+            if (nodeCount == nodes.length) {
+                nodes = Arrays.copyOf(nodes, nodeCount * 2);
+            }
+            nodes[nodeCount++] = id;
+        }
+
+        void removeNode(int id) {
+            for (int i = 0; i < nodeCount; i++) {
+                if (nodes[i] == id) {
+                    nodes[i] = nodes[--nodeCount];
+                    return;
+                }
+            }
+        }
+
+        void addEdge(long edge) {
+            if (edgeCount == edges.length) {
+                edges = Arrays.copyOf(edges, edgeCount * 2);
+            }
+            edges[edgeCount++] = edge;
+        }
+
+        void removeEdge(long edge) {
+            for (int i = 0; i < edgeCount; i++) {
+                if (edges[i] == edge) {
+                    edges[i] = edges[--edgeCount];
+                    return;
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return nodeCount == 0 && edgeCount == 0;
+        }
+    }
+}
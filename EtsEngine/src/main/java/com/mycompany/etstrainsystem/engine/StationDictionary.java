@@ -0,0 +1,130 @@
+package com.mycompany.etstrainsystem.engine;
+
+import java.util.Arrays;
+
+/**
+ * Interns station names to dense int ids, so names are hashed once where
+ * they enter the engine and everything past that point works on ints. Ids
+ * are handed out from 0 upwards and never reused; a name keeps its id for
+ * the dictionary's lifetime.
+ *
+ * The table is open-addressed over flat arrays, one int slot per entry plus
+ * the name's cached hash, instead of a boxed {@code Integer} and map node
+ * per station. A single thread interns; any thread may look up. Lookups
+ * made through a {@link GraphSnapshot} pass the snapshot's id count as a
+ * limit and ignore later entries, since slots filled after the snapshot was
+ * published may or may not be visible to them.
+ */
+public final class StationDictionary {
+
+    private volatile String[] names;
+    private volatile int[] hashes;
+    // id + 1 per slot, 0 for empty
+    private volatile int[] table;
+    private int size;
+
+    public StationDictionary() {
+        this(16);
+    }
+
+    public StationDictionary(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        names = new String[capacity];
+        hashes = new int[capacity];
+        table = new int[tableSize(capacity)];
+    }
+
+    /** Number of names interned so far. */
+    public int size() {
+        return size;
+    }
+
+    /** Id of {@code name}, or -1 if it was never interned. */
+    public int idOf(String name) {
+        return idOf(name, Integer.MAX_VALUE);
+    }
+
+    /** Like {@link #idOf(String)}, but treats ids at or above {@code limit} as absent. */
+    int idOf(String name, int limit) {
+        int[] slots = table;
+        String[] knownNames = names;
+        int[] knownHashes = hashes;
+        int hash = mix(name.hashCode());
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            int id = entry - 1;
+            if (id < limit && id < knownNames.length && knownHashes[id] == hash && name.equals(knownNames[id])) {
+                return id;
+            }
+        }
+    }
+
+    public String nameOf(int id) {
+        return names[id];
+    }
+
+    /** Returns the id of {@code name}, giving it the next free id if it has none yet. */
+    public int intern(String name) {
+        int hash = mix(name.hashCode());
+        int[] slots = table;
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        for (; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (hashes[id] == hash && name.equals(names[id])) {
+                return id;
+            }
+        }
+
+        int id = size;
+        if (id == names.length) {
+            int length = names.length * 2;
+            // the name arrays must be published before any slot points past the old length
+            hashes = Arrays.copyOf(hashes, length);
+            names = Arrays.copyOf(names, length);
+        }
+        names[id] = name;
+        hashes[id] = hash;
+        size++;
+        if (2 * size > slots.length) {
+            rehash(tableSize(2 * size));
+        } else {
+            slots[slot] = id + 1;
+        }
+        return id;
+    }
+
+    /** Rebuilds the table into a fresh array and publishes it once complete. */
+    private void rehash(int length) {
+        int[] slots = new int[length];
+        int mask = length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+        table = slots;
+    }
+
+    private static int tableSize(int entries) {
+        int length = 16;
+        while (length < 2 * entries) {
+            length <<= 1;
+        }
+        return length;
+    }
+
+    /** Spreads the bits of {@link String#hashCode()}, which are poor in the low bits for short similar names. */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return hash;
+    }
+}
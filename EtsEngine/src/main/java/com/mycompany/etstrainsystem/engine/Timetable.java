@@ -0,0 +1,299 @@
+package com.mycompany.etstrainsystem.engine;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Scheduled trips over the stations of a graph, flattened into timed
+ * connections for the {@link ConnectionScan} queries. A connection is one
+ * train running between two consecutive stops of its trip; all of them sit
+ * in one int array, five ints each, sorted by departure time, so a scan
+ * reads memory strictly forwards.
+ *
+ * Times are seconds after midnight of the service day and may pass 24:00
+ * for trips that run late. Stations are numbered densely within the
+ * timetable by their own {@link StationDictionary}, so a timetable stays
+ * valid if the graph is reloaded; only stations that exist in the graph
+ * when the timetable is built are accepted. Immutable once built, so any
+ * number of threads may query it.
+ */
+public final class Timetable {
+
+    static final int FIELDS = 5;
+    static final int DEPARTURE = 0;
+    static final int ARRIVAL = 1;
+    static final int FROM = 2;
+    static final int TO = 3;
+    static final int TRIP = 4;
+
+    private final StationDictionary stations;
+    private final String[] tripNames;
+    // FIELDS ints per connection, in departure order
+    final int[] connections;
+    private final int connectionCount;
+    // stations linked by any trip share a root, so unreachable queries end before scanning
+    private final int[] component;
+
+    private Timetable(StationDictionary stations, String[] tripNames, int[] connections, int connectionCount) {
+        this.stations = stations;
+        this.tripNames = tripNames;
+        this.connections = connections;
+        this.connectionCount = connectionCount;
+        this.component = components();
+    }
+
+    public int stationCount() {
+        return stations.size();
+    }
+
+    /** Index of a station within this timetable, or -1 if no trip stops there. */
+    public int stationIndex(String name) {
+        return stations.idOf(name);
+    }
+
+    public String stationName(int station) {
+        return stations.nameOf(station);
+    }
+
+    public int tripCount() {
+        return tripNames.length;
+    }
+
+    public String tripName(int trip) {
+        return tripNames[trip];
+    }
+
+    public int connectionCount() {
+        return connectionCount;
+    }
+
+    public int departure(int connection) {
+        return connections[connection * FIELDS + DEPARTURE];
+    }
+
+    public int arrival(int connection) {
+        return connections[connection * FIELDS + ARRIVAL];
+    }
+
+    public int from(int connection) {
+        return connections[connection * FIELDS + FROM];
+    }
+
+    public int to(int connection) {
+        return connections[connection * FIELDS + TO];
+    }
+
+    public int trip(int connection) {
+        return connections[connection * FIELDS + TRIP];
+    }
+
+    /** Whether some chain of trips, ignoring times, links the two stations. */
+    public boolean linked(int station1, int station2) {
+        return component[station1] == component[station2];
+    }
+
+    private int[] components() {
+        int[] parent = new int[stations.size()];
+        for (int station = 0; station < parent.length; station++) {
+            parent[station] = station;
+        }
+        for (int c = 0; c < connectionCount; c++) {
+            int a = root(parent, connections[c * FIELDS + FROM]);
+            int b = root(parent, connections[c * FIELDS + TO]);
+            if (a != b) {
+                parent[Math.max(a, b)] = Math.min(a, b);
+            }
+        }
+        for (int station = 0; station < parent.length; station++) {
+            parent[station] = root(parent, station);
+        }
+        return parent;
+    }
+
+    private static int root(int[] parent, int station) {
+        while (parent[station] != station) {
+            parent[station] = parent[parent[station]];
+            station = parent[station];
+        }
+        return station;
+    }
+
+    /** First connection departing at or after {@code time}, or {@link #connectionCount()} if none. */
+    public int firstDepartingAt(int time) {
+        int low = 0;
+        int high = connectionCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (connections[mid * FIELDS + DEPARTURE] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Parses a timetable of one stop per line, {@code TRIP,STATION,ARRIVAL,DEPARTURE},
+     * with times as {@code HH:MM} or {@code HH:MM:SS}. A trip's stops are
+     * the lines naming it, in order; its first stop needs no arrival and
+     * its last no departure. Blank lines and lines starting with
+     * {@code #} are skipped.
+     *
+     * @throws IllegalArgumentException naming the line of the first problem
+     */
+    public static Timetable parse(List<String> lines, ReadableGraph graph) {
+        Builder builder = new Builder(graph);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("[,\t]", -1);
+            try {
+                if (fields.length != 4) {
+                    throw new IllegalArgumentException("expected TRIP,STATION,ARRIVAL,DEPARTURE");
+                }
+                String arrival = fields[2].trim();
+                String departure = fields[3].trim();
+                builder.addStop(fields[0].trim(), fields[1].trim(),
+                        arrival.isEmpty() ? -1 : parseTime(arrival), departure.isEmpty() ? -1 : parseTime(departure));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+        return builder.build();
+    }
+
+    public static Timetable read(Path file, ReadableGraph graph) throws IOException {
+        return parse(Files.readAllLines(file, StandardCharsets.UTF_8), graph);
+    }
+
+    /** Seconds after midnight from {@code HH:MM} or {@code HH:MM:SS}; hours may exceed 23. */
+    public static int parseTime(String text) {
+        String[] parts = text.trim().split(":");
+        if (parts.length < 2 || parts.length > 3) {
+            throw new IllegalArgumentException("bad time '" + text + "', expected HH:MM[:SS]");
+        }
+        try {
+            int hours = Integer.parseInt(parts[0]);
+            int minutes = Integer.parseInt(parts[1]);
+            int seconds = parts.length == 3 ? Integer.parseInt(parts[2]) : 0;
+            if (hours < 0 || hours > 99 || minutes < 0 || minutes > 59 || seconds < 0 || seconds > 59) {
+                throw new IllegalArgumentException("bad time '" + text + "'");
+            }
+            return hours * 3600 + minutes * 60 + seconds;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad time '" + text + "', expected HH:MM[:SS]");
+        }
+    }
+
+    /** {@code HH:MM}, or {@code HH:MM:SS} when the seconds are not zero. */
+    public static String formatTime(int time) {
+        String text = String.format("%02d:%02d", time / 3600, time / 60 % 60);
+        return time % 60 == 0 ? text : text + String.format(":%02d", time % 60);
+    }
+
+    /**
+     * Collects trips stop by stop. Stops of one trip must be added in order,
+     * but trips may be interleaved.
+     */
+    public static final class Builder {
+
+        private final ReadableGraph graph;
+        private final StationDictionary stations = new StationDictionary();
+        private final StationDictionary trips = new StationDictionary();
+        // per trip: last stop's station and departure, or -1 before the first stop
+        private int[] lastStation = new int[16];
+        private int[] lastDeparture = new int[16];
+        private int[] connections = new int[16 * FIELDS];
+        private int connectionCount;
+
+        public Builder(ReadableGraph graph) {
+            this.graph = graph;
+        }
+
+        /**
+         * Adds the next stop of {@code trip}; {@code arrival} is ignored for
+         * its first stop, and a departure of -1 ends the trip.
+         */
+        public Builder addStop(String trip, String station, int arrival, int departure) {
+            if (!graph.containsNode(station)) {
+                throw new IllegalArgumentException("station '" + station + "' does not exist");
+            }
+            if (trip.isEmpty()) {
+                throw new IllegalArgumentException("trip name is empty");
+            }
+            int tripCount = trips.size();
+            int t = trips.intern(trip);
+            if (t == tripCount) {
+                if (t == lastStation.length) {
+                    lastStation = Arrays.copyOf(lastStation, t * 2);
+                    lastDeparture = Arrays.copyOf(lastDeparture, t * 2);
+                }
+                lastStation[t] = -1;
+            }
+            int s = stations.intern(station);
+            if (lastStation[t] >= 0) {
+                if (lastDeparture[t] < 0) {
+                    throw new IllegalArgumentException("trip " + trip + " already ended");
+                }
+                if (arrival < 0) {
+                    throw new IllegalArgumentException("trip " + trip + " needs an arrival time at " + station);
+                }
+                if (arrival < lastDeparture[t]) {
+                    throw new IllegalArgumentException("trip " + trip + " arrives at " + station + " before it leaves the previous stop");
+                }
+                if (s == lastStation[t]) {
+                    throw new IllegalArgumentException("trip " + trip + " stops at " + station + " twice in a row");
+                }
+                addConnection(lastDeparture[t], arrival, lastStation[t], s, t);
+            }
+            if (departure >= 0 && lastStation[t] >= 0 && departure < arrival) {
+                throw new IllegalArgumentException("trip " + trip + " leaves " + station + " before it arrives");
+            }
+            lastStation[t] = s;
+            lastDeparture[t] = departure;
+            return this;
+        }
+
+        private void addConnection(int departure, int arrival, int from, int to, int trip) {
+            if (connectionCount * FIELDS == connections.length) {
+                connections = Arrays.copyOf(connections, connections.length * 2);
+            }
+            int base = connectionCount++ * FIELDS;
+            connections[base + DEPARTURE] = departure;
+            connections[base + ARRIVAL] = arrival;
+            connections[base + FROM] = from;
+            connections[base + TO] = to;
+            connections[base + TRIP] = trip;
+        }
+
+        public Timetable build() {
+            // sort connection indices by departure, then arrival, then copy into place
+            Integer[] order = new Integer[connectionCount];
+            for (int i = 0; i < connectionCount; i++) {
+                order[i] = i;
+            }
+            int[] source = connections;
+            Arrays.sort(order, (a, b) -> {
+                int byDeparture = Integer.compare(source[a * FIELDS + DEPARTURE], source[b * FIELDS + DEPARTURE]);
+                return byDeparture != 0 ? byDeparture : Integer.compare(source[a * FIELDS + ARRIVAL], source[b * FIELDS + ARRIVAL]);
+            });
+            int[] sorted = new int[connectionCount * FIELDS];
+            for (int i = 0; i < connectionCount; i++) {
+                System.arraycopy(source, order[i] * FIELDS, sorted, i * FIELDS, FIELDS);
+            }
+            List<String> names = new ArrayList<>(trips.size());
+            for (int t = 0; t < trips.size(); t++) {
+                names.add(trips.nameOf(t));
+            }
+            return new Timetable(stations, names.toArray(new String[0]), sorted, connectionCount);
+        }
+    }
+}
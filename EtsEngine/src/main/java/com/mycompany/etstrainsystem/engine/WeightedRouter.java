@@ -0,0 +1,154 @@
+package com.mycompany.etstrainsystem.engine;
+
+import java.util.Arrays;
+
+/**
+ * Fastest route by total travel time, with Dijkstra or A*. Both run on an
+ * {@link IndexedMinHeap} and stop as soon as the destination is settled.
+ *
+ * The A* estimate is the straight-line distance to the destination times
+ * a travel time per unit of straight-line length that no edge beats. No
+ * path can beat that rate either, so the estimate never overshoots and A*
+ * returns a route exactly as fast as Dijkstra's. The graph keeps the rate
+ * up to date as it is edited, see {@link ReadableGraph#minTravelRate()}, so
+ * no query pays for a pass over the edges.
+ *
+ * Scratch arrays are reused between queries and reset by bumping a stamp,
+ * as in {@link RouteFinder}. Not thread-safe; give each thread its own
+ * router, over a {@link GraphSnapshot} when other threads may edit the
+ * graph meanwhile.
+ */
+public class WeightedRouter {
+
+    private static final LatencyHistogram DIJKSTRA_LATENCY = Metrics.histogram("query.dijkstra");
+    private static final LatencyHistogram A_STAR_LATENCY = Metrics.histogram("query.aStar");
+
+    private final ReadableGraph graph;
+    private final IndexedMinHeap queue = new IndexedMinHeap();
+    private int[] reached = new int[0];
+    private int[] settled = new int[0];
+    private int[] parent = new int[0];
+    private double[] cost = new double[0];
+    private int stamp;
+    private int settledCount;
+    private long scannedCount;
+    private double totalTime = Double.NaN;
+    private double totalDistance = Double.NaN;
+
+    public WeightedRouter(ReadableGraph graph) {
+        this.graph = graph;
+    }
+
+    /** Fastest route by Dijkstra; ids from {@code from} to {@code to}, or empty if unreachable. */
+    public int[] dijkstra(int from, int to) {
+        return timedSearch("dijkstra", DIJKSTRA_LATENCY, from, to, 0);
+    }
+
+    /** Fastest route by A*; same result as {@link #dijkstra}, usually settling far fewer stations. */
+    public int[] aStar(int from, int to) {
+        return timedSearch("aStar", A_STAR_LATENCY, from, to, graph.minTravelRate());
+    }
+
+    /** Travel time of the last route found, or NaN if there was none. */
+    public double totalTime() {
+        return totalTime;
+    }
+
+    /** Distance along the last route found, or NaN if there was none. */
+    public double totalDistance() {
+        return totalDistance;
+    }
+
+    /** Number of stations the last search settled. */
+    public int settledCount() {
+        return settledCount;
+    }
+
+    private int[] timedSearch(String operation, LatencyHistogram latency, int from, int to, double rate) {
+        QueryEvent event = QueryEvent.start();
+        long start = Metrics.start();
+        int[] path = search(from, to, rate);
+        latency.recordSince(start);
+        Metrics.searched(settledCount, scannedCount);
+        event.finish(operation, graph, from, to, path.length, settledCount);
+        return path;
+    }
+
+    private int[] search(int from, int to, double rate) {
+        prepare();
+        settledCount = 0;
+        scannedCount = 0;
+        totalTime = Double.NaN;
+        totalDistance = Double.NaN;
+        double targetX = graph.x(to);
+        double targetY = graph.y(to);
+
+        reach(from, -1, 0);
+        queue.offer(from, rate * Math.hypot(graph.x(from) - targetX, graph.y(from) - targetY));
+        while (!queue.isEmpty()) {
+            int u = queue.poll();
+            settled[u] = stamp;
+            settledCount++;
+            if (u == to) {
+                return buildPath(to);
+            }
+            int[] row = graph.neighbors(u);
+            double[] times = graph.travelTimes(u);
+            scannedCount += graph.degree(u);
+            for (int i = 0; i < graph.degree(u); i++) {
+                int w = row[i];
+                if (settled[w] == stamp) {
+                    continue;
+                }
+                double candidate = cost[u] + times[i];
+                if (reached[w] != stamp || candidate < cost[w]) {
+                    reach(w, u, candidate);
+                    queue.offer(w, candidate + rate * Math.hypot(graph.x(w) - targetX, graph.y(w) - targetY));
+                }
+            }
+        }
+        return new int[0];
+    }
+
+    private void reach(int id, int from, double time) {
+        reached[id] = stamp;
+        parent[id] = from;
+        cost[id] = time;
+    }
+
+    private int[] buildPath(int to) {
+        int length = 0;
+        for (int id = to; id >= 0; id = parent[id]) {
+            length++;
+        }
+        int[] path = new int[length];
+        double distance = 0;
+        for (int id = to, index = length - 1; id >= 0; id = parent[id], index--) {
+            path[index] = id;
+            if (parent[id] >= 0) {
+                distance += graph.distance(parent[id], id);
+            }
+        }
+        totalTime = cost[to];
+        totalDistance = distance;
+        return path;
+    }
+
+    private void prepare() {
+        int capacity = graph.idCount();
+        queue.clear(capacity);
+        if (reached.length < capacity) {
+            int length = Math.max(capacity, reached.length * 2);
+            reached = new int[length];
+            settled = new int[length];
+            parent = new int[length];
+            cost = new double[length];
+            stamp = 0;
+        }
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(reached, 0);
+            Arrays.fill(settled, 0);
+            stamp = 1;
+        }
+    }
+}
@@ -0,0 +1,5 @@
+module com.mycompany.etstrainsystem.engine {
+    requires java.management;
+    requires jdk.jfr;
+    exports com.mycompany.etstrainsystem.engine;
+}
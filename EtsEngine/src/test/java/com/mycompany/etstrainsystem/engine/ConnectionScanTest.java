@@ -0,0 +1,129 @@
+package com.mycompany.etstrainsystem.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks {@link ConnectionScan} against plain relaxation over random
+ * timetables: every connection is relaxed again and again until no arrival
+ * improves, which needs no ordering and no trip bookkeeping, since transfers
+ * are instant.
+ */
+class ConnectionScanTest {
+
+    private static final int STATIONS = 8;
+
+    @Test
+    void earliestArrivalMatchesRelaxation() {
+        Random random = new Random(1);
+        for (int round = 0; round < 200; round++) {
+            Timetable timetable = randomTimetable(random);
+            ConnectionScan scan = new ConnectionScan(timetable);
+            for (int query = 0; query < 20; query++) {
+                int from = random.nextInt(timetable.stationCount());
+                int to = random.nextInt(timetable.stationCount());
+                int departure = random.nextInt(24 * 60);
+                int expected = relax(timetable, from, departure)[to];
+
+                Journey journey = scan.earliestArrival(from, to, departure);
+                if (expected == ConnectionScan.UNREACHABLE) {
+                    assertNull(journey);
+                    continue;
+                }
+                assertNotNull(journey);
+                assertEquals(expected, journey.arrival());
+                assertConsistent(journey, departure);
+            }
+        }
+    }
+
+    @Test
+    void profileMatchesRepeatedEarliestArrival() {
+        Random random = new Random(2);
+        for (int round = 0; round < 200; round++) {
+            Timetable timetable = randomTimetable(random);
+            ConnectionScan scan = new ConnectionScan(timetable);
+            for (int query = 0; query < 5; query++) {
+                int from = random.nextInt(timetable.stationCount());
+                int to = random.nextInt(timetable.stationCount());
+                if (from == to) {
+                    continue;
+                }
+                int windowStart = random.nextInt(20 * 60);
+                int windowEnd = windowStart + random.nextInt(4 * 60);
+
+                ArrivalProfile profile = scan.profile(from, to, windowStart, windowEnd);
+                for (int i = 1; i < profile.size(); i++) {
+                    assertTrue(profile.departure(i) > profile.departure(i - 1));
+                    assertTrue(profile.arrival(i) > profile.arrival(i - 1));
+                }
+                for (int time = windowStart; time <= windowEnd; time++) {
+                    assertEquals(relax(timetable, from, time)[to], profile.arrivalLeavingAt(time),
+                            "leaving at " + Timetable.formatTime(time));
+                }
+            }
+        }
+    }
+
+    /** Trips over random stations, some of them sharing stations at close times so transfers matter. */
+    private static Timetable randomTimetable(Random random) {
+        Graph graph = new Graph();
+        for (int s = 0; s < STATIONS; s++) {
+            graph.addNode("S" + s, s * 100, 0);
+        }
+        Timetable.Builder builder = new Timetable.Builder(graph);
+        int trips = 1 + random.nextInt(25);
+        for (int trip = 0; trip < trips; trip++) {
+            int stops = 2 + random.nextInt(5);
+            int time = random.nextInt(22 * 60);
+            int station = random.nextInt(STATIONS);
+            for (int stop = 0; stop < stops; stop++) {
+                int arrival = time;
+                // a train may wait at a station, or leave the minute it arrives
+                int departure = stop == stops - 1 ? -1 : arrival + (random.nextBoolean() ? 0 : random.nextInt(5));
+                builder.addStop("T" + trip, "S" + station, arrival, departure);
+                time = departure + 1 + random.nextInt(30);
+                int next = random.nextInt(STATIONS - 1);
+                station = next >= station ? next + 1 : next;
+            }
+        }
+        return builder.build();
+    }
+
+    private static int[] relax(Timetable timetable, int from, int departure) {
+        int[] arrival = new int[timetable.stationCount()];
+        Arrays.fill(arrival, ConnectionScan.UNREACHABLE);
+        arrival[from] = departure;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int c = 0; c < timetable.connectionCount(); c++) {
+                if (arrival[timetable.from(c)] <= timetable.departure(c)
+                        && timetable.arrival(c) < arrival[timetable.to(c)]) {
+                    arrival[timetable.to(c)] = timetable.arrival(c);
+                    changed = true;
+                }
+            }
+        }
+        return arrival;
+    }
+
+    /** Each leg stays on one trip, and is boarded where and after the previous one ends. */
+    private static void assertConsistent(Journey journey, int departure) {
+        String station = journey.from();
+        int time = departure;
+        for (int leg = 0; leg < journey.legCount(); leg++) {
+            assertEquals(station, journey.boardAt(leg));
+            assertTrue(journey.departure(leg) >= time);
+            station = journey.alightAt(leg);
+            time = journey.arrival(leg);
+        }
+        assertEquals(journey.to(), station);
+    }
+}
@@ -0,0 +1,96 @@
+package com.mycompany.etstrainsystem.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks {@link ConnectivityIndex} against a BFS from scratch after every
+ * edit of a random sequence: two live stations share a label exactly when
+ * the BFS puts them in one component, and sizes and the count agree.
+ */
+class ConnectivityIndexTest {
+
+    @Test
+    void labelsMatchBfsAfterRandomEdits() {
+        RandomEdits edits = new RandomEdits(3);
+        for (int round = 0; round < 20; round++) {
+            Graph graph = new Graph();
+            ConnectivityIndex index = new ConnectivityIndex(graph);
+            for (int edit = 0; edit < 500; edit++) {
+                edits.apply(graph);
+                assertMatchesBfs(graph, index);
+            }
+        }
+    }
+
+    @Test
+    void rebuildAgreesWithIncrementalLabels() {
+        RandomEdits edits = new RandomEdits(4);
+        Graph graph = new Graph();
+        ConnectivityIndex index = new ConnectivityIndex(graph);
+        for (int edit = 0; edit < 2000; edit++) {
+            edits.apply(graph);
+        }
+        assertMatchesBfs(graph, index);
+        index.rebuild();
+        assertMatchesBfs(graph, index);
+    }
+
+    private static void assertMatchesBfs(Graph graph, ConnectivityIndex index) {
+        int[] component = bfsComponents(graph);
+        int[] size = new int[graph.idCount()];
+        int count = 0;
+        for (int id = 0; id < graph.idCount(); id++) {
+            if (component[id] == id) {
+                count++;
+            }
+            if (component[id] >= 0) {
+                size[component[id]]++;
+            }
+        }
+        assertEquals(count, index.componentCount());
+        for (int a = 0; a < graph.idCount(); a++) {
+            if (component[a] < 0) {
+                continue;
+            }
+            assertEquals(size[component[a]], index.componentSize(a));
+            assertEquals(size[component[a]], index.componentSize(graph.nameOf(a)));
+            for (int b = 0; b < graph.idCount(); b++) {
+                if (component[b] >= 0) {
+                    boolean expected = component[a] == component[b];
+                    assertEquals(expected, index.connected(a, b));
+                    assertEquals(expected, index.componentOf(a) == index.componentOf(b));
+                }
+            }
+        }
+    }
+
+    /** Lowest id in each live station's component, found by BFS; -1 for removed ids. */
+    private static int[] bfsComponents(Graph graph) {
+        int[] component = new int[graph.idCount()];
+        Arrays.fill(component, -1);
+        int[] queue = new int[graph.idCount()];
+        for (int start = 0; start < graph.idCount(); start++) {
+            if (!graph.isLive(start) || component[start] >= 0) {
+                continue;
+            }
+            component[start] = start;
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = start;
+            while (head < tail) {
+                int id = queue[head++];
+                int[] neighbors = graph.neighbors(id);
+                for (int i = 0; i < graph.degree(id); i++) {
+                    if (component[neighbors[i]] < 0) {
+                        component[neighbors[i]] = start;
+                        queue[tail++] = neighbors[i];
+                    }
+                }
+            }
+        }
+        return component;
+    }
+}
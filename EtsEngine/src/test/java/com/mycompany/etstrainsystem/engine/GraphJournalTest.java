@@ -0,0 +1,231 @@
+package com.mycompany.etstrainsystem.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks {@link GraphJournal} by reopening its directory into a fresh graph
+ * and comparing station by station with the graph that was journalled:
+ * after a clean close, after the last record was torn, after checkpoints
+ * within one session and across short ones, and with a segment the
+ * snapshot already covers left behind.
+ */
+class GraphJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void reopeningRestoresJournalledEdits() throws IOException {
+        Graph graph = new Graph();
+        try (GraphJournal journal = GraphJournal.open(directory, graph)) {
+            assertFalse(journal.recovered());
+            RandomEdits edits = new RandomEdits(6);
+            for (int edit = 0; edit < 1000; edit++) {
+                edits.apply(graph);
+            }
+            journal.sync();
+        }
+
+        Graph restored = new Graph();
+        try (GraphJournal journal = GraphJournal.open(directory, restored)) {
+            assertTrue(journal.recovered());
+        }
+        assertSameGraph(graph, restored);
+    }
+
+    @Test
+    void tornLastRecordIsDroppedAndJournalKeepsGoing() throws IOException {
+        Graph graph = new Graph();
+        GraphSnapshot beforeLast;
+        try (GraphJournal journal = GraphJournal.open(directory, graph)) {
+            RandomEdits edits = new RandomEdits(7);
+            for (int edit = 0; edit < 300; edit++) {
+                edits.apply(graph);
+            }
+            beforeLast = graph.snapshot();
+            graph.addNode("Last", 1, 2);
+            journal.sync();
+        }
+        Path segment = only(files("journal-"));
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            // halfway into the record for "Last"
+            channel.truncate(channel.size() - 10);
+        }
+
+        Graph restored = new Graph();
+        try (GraphJournal journal = GraphJournal.open(directory, restored)) {
+            assertSameGraph(beforeLast, restored);
+            restored.addNode("After", 3, 4);
+            journal.sync();
+        }
+
+        Graph reopened = new Graph();
+        try (GraphJournal journal = GraphJournal.open(directory, reopened)) {
+            assertTrue(reopened.containsNode("After"));
+            assertFalse(reopened.containsNode("Last"));
+        }
+        assertSameGraph(restored, reopened);
+    }
+
+    @Test
+    void checkpointsReplaceOldSegmentsAndStillRecover() throws IOException {
+        Graph graph = new Graph();
+        long checkpointedAt;
+        try (GraphJournal journal = GraphJournal.open(directory, graph, 50)) {
+            RandomEdits edits = new RandomEdits(8);
+            for (int edit = 0; edit < 1000; edit++) {
+                edits.apply(graph);
+                journal.sync();
+            }
+            checkpointedAt = sequence(only(files("snapshot-")));
+            assertTrue(checkpointedAt > 0);
+            // the segment the last checkpoint started, and nothing older
+            assertEquals(checkpointedAt + 1, sequence(only(files("journal-"))));
+            assertEquals(2, files("").size());
+            assertTrue(journal.lastSequence() - checkpointedAt < 50);
+        }
+
+        Graph restored = new Graph();
+        try (GraphJournal journal = GraphJournal.open(directory, restored, 50)) {
+            assertTrue(journal.recovered());
+        }
+        assertSameGraph(graph, restored);
+    }
+
+    @Test
+    void shortSessionsStillReachACheckpoint() throws IOException {
+        Graph graph = new Graph();
+        RandomEdits edits = new RandomEdits(9);
+        for (int session = 0; session < 10; session++) {
+            graph = new Graph();
+            try (GraphJournal journal = GraphJournal.open(directory, graph, 50)) {
+                for (int edit = 0; edit < 20; edit++) {
+                    edits.apply(graph);
+                }
+                journal.sync();
+            }
+        }
+        assertEquals(1, files("snapshot-").size());
+
+        Graph restored = new Graph();
+        GraphJournal.open(directory, restored, 50).close();
+        assertSameGraph(graph, restored);
+    }
+
+    @Test
+    void replaySkipsRecordsAlreadyInTheSnapshot() throws IOException {
+        Graph graph = new Graph();
+        RandomEdits edits = new RandomEdits(10);
+        try (GraphJournal journal = GraphJournal.open(directory, graph)) {
+            for (int edit = 0; edit < 300; edit++) {
+                edits.apply(graph);
+            }
+            journal.sync();
+        }
+        Path oldSegment = only(files("journal-"));
+        byte[] oldRecords = Files.readAllBytes(oldSegment);
+
+        graph = new Graph();
+        try (GraphJournal journal = GraphJournal.open(directory, graph)) {
+            journal.checkpoint();
+            for (int edit = 0; edit < 300; edit++) {
+                edits.apply(graph);
+            }
+            journal.sync();
+        }
+        // as if the checkpoint had crashed after writing its snapshot but before the cleanup
+        Files.write(oldSegment, oldRecords);
+        long snapshotSequence = sequence(only(files("snapshot-")));
+
+        Graph restored = new Graph();
+        EditCounter replayed = new EditCounter();
+        restored.addListener(replayed);
+        try (GraphJournal journal = GraphJournal.open(directory, restored)) {
+            // one edit per record after the snapshot, none from the old segment
+            assertEquals(journal.lastSequence() - snapshotSequence, replayed.edits);
+        }
+        assertSameGraph(graph, restored);
+    }
+
+    /** Same stations at the same spots with the same edges and weights; ids may differ. */
+    private static void assertSameGraph(ReadableGraph expected, ReadableGraph actual) {
+        assertEquals(expected.nodeCount(), actual.nodeCount());
+        assertEquals(expected.edgeCount(), actual.edgeCount());
+        for (String name : expected.nodeNames()) {
+            int a = expected.idOf(name);
+            int b = actual.idOf(name);
+            assertTrue(b >= 0, name);
+            assertEquals(expected.x(a), actual.x(b));
+            assertEquals(expected.y(a), actual.y(b));
+            assertEquals(expected.degree(a), actual.degree(b), name);
+            int[] row = expected.neighbors(a);
+            for (int i = 0; i < expected.degree(a); i++) {
+                int neighbor = actual.idOf(expected.nameOf(row[i]));
+                assertTrue(actual.hasEdge(b, neighbor), name + " - " + expected.nameOf(row[i]));
+                assertEquals(expected.travelTimes(a)[i], actual.travelTime(b, neighbor));
+                assertEquals(expected.distances(a)[i], actual.distance(b, neighbor));
+            }
+        }
+    }
+
+    private List<Path> files(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> result = new ArrayList<>();
+            files.filter(file -> file.getFileName().toString().startsWith(prefix)).forEach(result::add);
+            return result;
+        }
+    }
+
+    private static Path only(List<Path> files) {
+        assertEquals(1, files.size(), files.toString());
+        return files.get(0);
+    }
+
+    private static long sequence(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(name.indexOf('-') + 1, name.lastIndexOf('.')));
+    }
+
+    private static final class EditCounter implements GraphListener {
+
+        long edits;
+
+        @Override
+        public void nodeAdded(int id) {
+            edits++;
+        }
+
+        @Override
+        public void nodeRemoved(int id) {
+            edits++;
+        }
+
+        @Override
+        public void nodeMoved(int id) {
+            edits++;
+        }
+
+        @Override
+        public void edgeAdded(int node1, int node2) {
+            edits++;
+        }
+
+        @Override
+        public void edgeRemoved(int node1, int node2) {
+            edits++;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.mycompany.etstrainsystem.engine;
+
+import java.util.Random;
+
+/**
+ * Seeded stream of random edits over a small pool of station names, for
+ * checking whatever follows a {@link Graph} against a recomputation. Most
+ * edits add or remove edges, so components both merge and split; the rest
+ * add, remove or move a station. Edits that fail, such as adding an edge
+ * that exists, are left to fail as they would in use.
+ */
+final class RandomEdits {
+
+    static final int STATIONS = 30;
+
+    private final Random random;
+
+    RandomEdits(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /** The stream's generator, for queries drawn in step with the edits. */
+    Random random() {
+        return random;
+    }
+
+    /** One of the pool's names, whether or not it is in the graph just now. */
+    String station() {
+        return "S" + random.nextInt(STATIONS);
+    }
+
+    void apply(Graph graph) {
+        String a = station();
+        String b = station();
+        int kind = random.nextInt(10);
+        if (kind == 0) {
+            graph.addNode(a, position(), position());
+        } else if (kind == 1) {
+            graph.removeNode(a);
+        } else if (kind == 2) {
+            graph.moveNode(a, position(), position());
+        } else if (kind < 6) {
+            graph.addNode(a, position(), position());
+            graph.addNode(b, position(), position());
+            // half with given weights, half with the straight-line default
+            double travelTime = random.nextBoolean() ? random.nextInt(100) : Double.NaN;
+            graph.addEdge(a, b, travelTime, travelTime);
+        } else {
+            graph.removeEdge(a, b);
+        }
+    }
+
+    private double position() {
+        return random.nextInt(1000);
+    }
+}
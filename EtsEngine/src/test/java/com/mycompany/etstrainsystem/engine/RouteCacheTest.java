@@ -0,0 +1,81 @@
+package com.mycompany.etstrainsystem.engine;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks {@link RouteCache} against an uncached search over random edits
+ * and queries: whatever the cache hands back must be what a fresh search of
+ * the current graph returns, so a missed invalidation shows up as a stale
+ * answer. Misses are filled in the way callers do, tagged with the version
+ * the result was computed at.
+ */
+class RouteCacheTest {
+
+    @Test
+    void cachedResultsMatchUncachedSearchAfterEdits() {
+        RandomEdits edits = new RandomEdits(5);
+        Graph graph = new Graph();
+        ConnectivityIndex index = new ConnectivityIndex(graph);
+        // small enough that eviction runs alongside invalidation
+        RouteCache cache = new RouteCache(graph, index, 600);
+        for (int step = 0; step < 10_000; step++) {
+            // several queries per edit, so results live long enough to be hit
+            if (edits.random().nextInt(3) == 0) {
+                edits.apply(graph);
+            }
+            query(graph, cache, edits);
+        }
+        assertTrue(cache.hitCount() > 0);
+        assertTrue(cache.invalidationCount() > 0);
+        assertTrue(cache.evictionCount() > 0);
+    }
+
+    private static void query(Graph graph, RouteCache cache, RandomEdits edits) {
+        Random random = edits.random();
+        GraphSnapshot snapshot = graph.snapshot();
+        long version = snapshot.version();
+        int from = snapshot.idOf(edits.station());
+        int to = snapshot.idOf(edits.station());
+        if (from < 0 || to < 0) {
+            return;
+        }
+        if (random.nextBoolean()) {
+            // a few distinct limits, so keys repeat and hit
+            int maxHops = random.nextBoolean() ? BfsTraversal.UNLIMITED : 1 + random.nextInt(3);
+            int maxResults = random.nextBoolean() ? BfsTraversal.UNLIMITED : 1 + random.nextInt(5);
+            int[] expected = new BfsTraversal(snapshot, from, maxHops, maxResults).toArray();
+            int[] cached = cache.getReachable(version, from, maxHops, maxResults);
+            if (cached == null) {
+                cache.putReachable(version, from, maxHops, maxResults, expected);
+            } else {
+                assertArrayEquals(expected, cached);
+            }
+        } else {
+            // shortest routes can tie, so compare lengths and check the cached one is a real route
+            int[] expected = new RouteFinder(snapshot).route(from, to);
+            int[] cached = cache.getRoute(version, from, to);
+            if (cached == null) {
+                cache.putRoute(version, from, to, expected);
+            } else {
+                assertEquals(expected.length, cached.length);
+                assertRoute(snapshot, from, to, cached);
+            }
+        }
+    }
+
+    private static void assertRoute(ReadableGraph graph, int from, int to, int[] path) {
+        if (path.length == 0) {
+            return;
+        }
+        assertEquals(from, path[0]);
+        assertEquals(to, path[path.length - 1]);
+        for (int i = 1; i < path.length; i++) {
+            assertTrue(graph.hasEdge(path[i - 1], path[i]));
+        }
+    }
+}
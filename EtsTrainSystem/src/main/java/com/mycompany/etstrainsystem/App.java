@@ -1,25 +1,78 @@
 package com.mycompany.etstrainsystem;
+import com.mycompany.etstrainsystem.engine.BatchResult;
+import com.mycompany.etstrainsystem.engine.ArrivalProfile;
+import com.mycompany.etstrainsystem.engine.BfsTraversal;
+import com.mycompany.etstrainsystem.engine.ConnectionScan;
+import com.mycompany.etstrainsystem.engine.ConnectivityIndex;
+import com.mycompany.etstrainsystem.engine.EdgeListImporter;
+import com.mycompany.etstrainsystem.engine.ForceLayout;
+import com.mycompany.etstrainsystem.engine.Graph;
+import com.mycompany.etstrainsystem.engine.GraphBatch;
+import com.mycompany.etstrainsystem.engine.GraphBinaryFormat;
+import com.mycompany.etstrainsystem.engine.GraphJournal;
+import com.mycompany.etstrainsystem.engine.GraphListener;
+import com.mycompany.etstrainsystem.engine.GraphSnapshot;
+import com.mycompany.etstrainsystem.engine.Journey;
+import com.mycompany.etstrainsystem.engine.LatencyHistogram;
+import com.mycompany.etstrainsystem.engine.Metrics;
+import com.mycompany.etstrainsystem.engine.MultiSourceBfs;
+import com.mycompany.etstrainsystem.engine.MutationResult;
+import com.mycompany.etstrainsystem.engine.NetworkCriticality;
+import com.mycompany.etstrainsystem.engine.NetworkCuts;
+import com.mycompany.etstrainsystem.engine.NodePlacer;
+import com.mycompany.etstrainsystem.engine.ParallelBfs;
+import com.mycompany.etstrainsystem.engine.ReachabilityMatrix;
+import com.mycompany.etstrainsystem.engine.RouteCache;
+import com.mycompany.etstrainsystem.engine.RouteFinder;
+import com.mycompany.etstrainsystem.engine.RouteServer;
+import com.mycompany.etstrainsystem.engine.Timetable;
+import com.mycompany.etstrainsystem.engine.WeightedRouter;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.scene.Scene;
-import javafx.scene.layout.*;
 import javafx.scene.text.Text;
 import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
-import java.util.concurrent.CountDownLatch;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class App extends Application {
     
-    private Pane graphPane;
-    private Map<String, NodeView> nodes = new HashMap<>();
+    private GraphCanvas canvas;
+    private NodeViewTable nodes = new NodeViewTable();
     private List<EdgeView> edges = new ArrayList<>();
-    private Random random = new Random();
+    private Graph graph = new Graph();
+    private NodePlacer placer = new NodePlacer(graph, 900, 600, new Random());
+    // searchers over the snapshot queries last ran on, rebuilt once an edit makes a newer one
+    private GraphSnapshot searched;
+    private RouteFinder routeFinder;
+    private WeightedRouter weightedRouter;
+    private ParallelBfs parallelBfs;
+    private MultiSourceBfs multiSourceBfs;
+    private ConnectivityIndex connectivity = new ConnectivityIndex(graph);
+    private RouteCache routeCache = new RouteCache(graph, connectivity, ROUTE_CACHE_IDS);
+    private ForceLayout layout = new ForceLayout(graph, this::showLayoutFrame, 30);
+    private AtomicReference<ForceLayout.Frame> pendingFrame = new AtomicReference<>();
+    private GraphJournal journal;
+    private RouteServer server;
+    private ConnectionScan connectionScan;
+    private static final int DEFAULT_SERVER_PORT = 7878;
+    private static final int OUTPUT_CHUNK = 1 << 16;
+    private static final long ROUTE_CACHE_IDS = 1 << 22;
+    private static final int CRITICAL_SHOWN = 10;
+    private static final long BETWEENNESS_SEED = 42;
+    private static final LatencyHistogram FX_QUEUE_WAIT = Metrics.histogram("fx.queueWait");
     private double globalRadius = 25; 
-    private static final double MIN_NODE_DISTANCE = 80; 
+    private boolean headless;
     private Scanner scanner = new Scanner(System.in);
+    // set after each line of input, so command timings leave out the user's typing
+    private long commandStart;
     private Stage primaryStage;
     private Scene scene;
     
@@ -27,13 +80,14 @@ public class App extends Application {
     public void start(Stage primaryStage) {
         this.primaryStage = primaryStage;
         
-        graphPane = new Pane();
-        graphPane.setStyle("-fx-background-color: white; -fx-border-color: lightgray;");
-        graphPane.setPrefSize(900, 600);
+        canvas = new GraphCanvas(nodes, edges);
+        canvas.setStyle("-fx-border-color: lightgray;");
+        canvas.setPrefSize(900, 600);
         
-        initializePresetGraph();
+        graph.addListener(new ViewUpdater());
+        loadGraph();
         
-        scene = new Scene(graphPane, 900, 600);
+        scene = new Scene(canvas, 900, 600);
         primaryStage.setTitle("Graph Visualization Window");
         primaryStage.setScene(scene);
         
@@ -48,6 +102,7 @@ public class App extends Application {
     }
     
     private void startCLI() {
+        Metrics.registerMBean();
         System.out.println("Graph Node Editor - CLI Mode");
         printCurrentGraph();
         
@@ -61,79 +116,66 @@ public class App extends Application {
             System.out.println("5. Display current graph");
             System.out.println("6. Find all reachable nodes");
             System.out.println("7. Exit program");
+            System.out.println("8. Find route between two nodes");
+            System.out.println("9. Find all reachable nodes (parallel, with timing)");
+            System.out.println("10. Check if two nodes are connected");
+            System.out.println("11. Import edge list file (replaces the current graph)");
+            System.out.println("12. Save binary snapshot");
+            System.out.println("13. Load binary snapshot");
+            System.out.println("14. Start/stop auto-layout");
+            System.out.println("15. Run batch of edits");
+            System.out.println("16. Find fastest route between two nodes");
+            System.out.println("17. Reachability from many nodes (with timing)");
+            System.out.println("18. Start/stop query server");
+            System.out.println("19. Show statistics");
+            System.out.println("20. Load timetable file");
+            System.out.println("21. Find earliest arrival by timetable");
+            System.out.println("22. Find critical nodes and edges");
             System.out.println("-".repeat(50));
             System.out.print("Enter command number: ");
             
-            String input = scanner.nextLine().trim();
+            String input = readLine();
             if (input.isEmpty()) continue;
             
             try {
                 switch (input) {
                     case "1":
                         System.out.print("Enter node name: ");
-                        String nodeName = scanner.nextLine().trim();
-                        CountDownLatch latch = new CountDownLatch(1);
-                        Platform.runLater(() -> {
-                            createNode(nodeName);
-                            latch.countDown(); // Signal completion
-                        });
-                        try {
-                            latch.await(); // Wait for completion
-                        } catch (InterruptedException e) {
-                            System.out.println("Operation interrupted");
-                        }
+                        String nodeName = readLine();
+                        createNode(nodeName);
                         break;
                         
                     case "2":
                         System.out.print("Enter node name to delete: ");
-                        String nodeToDelete = scanner.nextLine().trim();
-                        CountDownLatch deleteLatch = new CountDownLatch(1);
-                        Platform.runLater(() -> {
-                            deleteNode(nodeToDelete);
-                            deleteLatch.countDown();
-                        });
-                        try {
-                            deleteLatch.await();
-                        } catch (InterruptedException e) {
-                            System.out.println("Operation interrupted");
-                        }
+                        String nodeToDelete = readLine();
+                        deleteNode(nodeToDelete);
                         break;
                         
                     case "3":
                         System.out.print("Enter first node name: ");
-                        String node1 = scanner.nextLine().trim();
+                        String node1 = readLine();
                         System.out.print("Enter second node name: ");
-                        String node2 = scanner.nextLine().trim();
-                        CountDownLatch edgeLatch = new CountDownLatch(1);
-                        Platform.runLater(() -> {
-                            createEdge(node1, node2);
-                            edgeLatch.countDown();
-                        });
-                        try {
-                            edgeLatch.await();
-                        } catch (InterruptedException e) {
-                            System.out.println("Operation interrupted");
-                        }
+                        String node2 = readLine();
+                        System.out.print("Enter travel time (empty for straight-line length): ");
+                        String travelTime = readLine();
+                        System.out.print("Enter distance (empty for straight-line length): ");
+                        String distance = readLine();
+                        createEdge(node1, node2, parseWeight(travelTime), parseWeight(distance));
                         break;
                         
                     case "4":
                         System.out.print("Enter first node name: ");
-                        String edgeNode1 = scanner.nextLine().trim();
+                        String edgeNode1 = readLine();
                         System.out.print("Enter second node name: ");
-                        String edgeNode2 = scanner.nextLine().trim();
-                        CountDownLatch deleteEdgeLatch = new CountDownLatch(1);
-                        Platform.runLater(() -> {
-                            deleteEdge(edgeNode1, edgeNode2);
-                            deleteEdgeLatch.countDown();
-                        });
-                        try {
-                            deleteEdgeLatch.await();
-                        } catch (InterruptedException e) {
-                            System.out.println("Operation interrupted");
-                        }
+                        String edgeNode2 = readLine();
+                        deleteEdge(edgeNode1, edgeNode2);
                         break;
                         
                     case "5":
+                        if (headless) {
+                            printCurrentGraph();
+                            break;
+                        }
                         Platform.runLater(() -> {
                             if (!primaryStage.isShowing()) {
                                 primaryStage.show();
@@ -145,301 +187,843 @@ public class App extends Application {
                         
                     case "6":
                         System.out.print("Enter starting node: ");
-                        String startNode = scanner.nextLine().trim();
-                        findAllReachableNodes(startNode);
+                        String startNode = readLine();
+                        System.out.print("Enter maximum hops (empty for no limit): ");
+                        String maxHops = readLine();
+                        System.out.print("Enter maximum results (empty for no limit): ");
+                        String maxResults = readLine();
+                        findAllReachableNodes(startNode, parseLimit(maxHops), parseLimit(maxResults));
                         break;
                         
                     case "7":
                         System.out.println("Goodbye!");
+                        layout.stop();
+                        stopServer();
+                        closeJournal();
+                        if (headless) {
+                            return;
+                        }
                         Platform.runLater(() -> {
                             primaryStage.close();
                             Platform.exit();
                         });
                         return;
                         
+                    case "8":
+                        System.out.print("Enter starting node: ");
+                        String routeStart = readLine();
+                        System.out.print("Enter destination node: ");
+                        String routeEnd = readLine();
+                        findRoute(routeStart, routeEnd);
+                        break;
+                        
+                    case "9":
+                        System.out.print("Enter starting node: ");
+                        String parallelStart = readLine();
+                        findAllReachableNodesParallel(parallelStart);
+                        break;
+                        
+                    case "10":
+                        System.out.print("Enter first node name: ");
+                        String connectedNode1 = readLine();
+                        System.out.print("Enter second node name: ");
+                        String connectedNode2 = readLine();
+                        checkConnected(connectedNode1, connectedNode2);
+                        break;
+                        
+                    case "11":
+                        System.out.print("Enter edge list file path: ");
+                        Path edgeList = Paths.get(readLine());
+                        if (graph.nodeCount() > 0) {
+                            System.out.print("This replaces all " + graph.nodeCount() + " nodes in the graph. Continue? (y/n): ");
+                            if (!readLine().equalsIgnoreCase("y")) {
+                                System.out.println("Import cancelled");
+                                break;
+                            }
+                        }
+                        importEdgeList(edgeList);
+                        break;
+                        
+                    case "12":
+                        System.out.print("Enter snapshot file path: ");
+                        saveSnapshot(Paths.get(readLine()));
+                        break;
+                        
+                    case "13":
+                        System.out.print("Enter snapshot file path: ");
+                        loadSnapshot(Paths.get(readLine()));
+                        break;
+                        
+                    case "14":
+                        toggleLayout();
+                        break;
+                        
+                    case "15":
+                        System.out.print("Enter batch file path (empty to type edits, ending with an empty line): ");
+                        String batchFile = readLine();
+                        runBatch(batchFile.isEmpty() ? readBatchLines() : Files.readAllLines(Paths.get(batchFile)));
+                        break;
+                        
+                    case "16":
+                        System.out.print("Enter starting node: ");
+                        String fastestStart = readLine();
+                        System.out.print("Enter destination node: ");
+                        String fastestEnd = readLine();
+                        findFastestRoute(fastestStart, fastestEnd);
+                        break;
+                        
+                    case "17":
+                        System.out.print("Enter starting nodes separated by commas (empty for all nodes): ");
+                        String origins = readLine();
+                        findReachabilityFromMany(origins.isEmpty() ? snapshot().nodeNames() : Arrays.asList(origins.split("\\s*,\\s*")));
+                        break;
+                        
+                    case "18":
+                        toggleServer();
+                        break;
+                        
+                    case "19":
+                        showStatistics();
+                        break;
+                        
+                    case "20":
+                        System.out.print("Enter timetable file path: ");
+                        loadTimetable(Paths.get(readLine()));
+                        break;
+                        
+                    case "21":
+                        System.out.print("Enter starting node: ");
+                        String timetableStart = readLine();
+                        System.out.print("Enter destination node: ");
+                        String timetableEnd = readLine();
+                        System.out.print("Enter departure time (HH:MM): ");
+                        int departure = Timetable.parseTime(readLine());
+                        System.out.print("Enter latest departure for a range of times (empty for one journey): ");
+                        String windowEnd = readLine();
+                        if (windowEnd.isEmpty()) {
+                            findEarliestArrival(timetableStart, timetableEnd, departure);
+                        } else {
+                            findArrivalProfile(timetableStart, timetableEnd, departure, Timetable.parseTime(windowEnd));
+                        }
+                        break;
+                        
+                    case "22":
+                        System.out.print("Enter number of sampled nodes for betweenness (empty for exact): ");
+                        String sampleInput = readLine();
+                        int samples = parseLimit(sampleInput);
+                        if (samples < 1) {
+                            throw new IllegalArgumentException("Not a sample size: " + sampleInput);
+                        }
+                        findCriticalNodes(samples);
+                        break;
+                        
                     default:
                         System.out.println("Invalid command number: " + input);
+                        continue;
                 }
+                Metrics.histogram("cli.command." + input).recordSince(commandStart);
             } catch (Exception e) {
                 System.out.println("Error: " + e.getMessage());
             }
         }
     }
     
-    private void findAllReachableNodes(String initialState) {
-        if (!nodes.containsKey(initialState)) {
+    /**
+     * Prints stations as the traversal finds them, so output starts before
+     * the search is done, and keeps them in the route cache for next time.
+     */
+    private void findAllReachableNodes(String initialState, int maxHops, int maxResults) {
+        GraphSnapshot current = graph.snapshot();
+        int source = current.idOf(initialState);
+        if (source < 0) {
             System.out.println("Initial state '" + initialState + "' does not exist!");
             return;
         }
 
-        List<String> reachableNodesInOrder = findAllReachableNodesBFS(initialState);
-
+        // the start station is not listed, and one more tells whether the list was cut short
+        long listed = (long) maxResults + 1;
+        int limit = (int) Math.min(listed + 1, BfsTraversal.UNLIMITED);
+        int[] cached = routeCache.getReachable(current.version(), source, maxHops, limit);
+        PrimitiveIterator.OfInt stations = cached != null ? Arrays.stream(cached).iterator()
+                : current.traverse(initialState, maxHops, limit);
+        int[] found = new int[16];
+        int count = 0;
         StringBuilder output = new StringBuilder("Reachable : " + initialState + " -> ");
+        while (stations.hasNext()) {
+            int id = stations.nextInt();
+            if (cached == null) {
+                if (count == found.length) {
+                    found = Arrays.copyOf(found, count * 2);
+                }
+                found[count] = id;
+            }
+            if (count++ == 0 || count > listed) {
+                continue;
+            }
+            if (count > 2) {
+                output.append(" -> ");
+            }
+            output.append(current.nameOf(id));
+            if (output.length() >= OUTPUT_CHUNK) {
+                System.out.print(output);
+                output.setLength(0);
+            }
+        }
+        System.out.println(output);
+        if (count > listed) {
+            System.out.println("(stopped after " + maxResults + " stations, more are reachable)");
+        }
+        if (cached == null) {
+            routeCache.putReachable(current.version(), source, maxHops, limit, Arrays.copyOf(found, count));
+        }
+    }
 
-        reachableNodesInOrder.remove(initialState);
+    private void findRoute(String from, String to) {
+        GraphSnapshot current = snapshot();
+        long version = current.version();
+        int source = current.idOf(from);
+        if (source < 0) {
+            System.out.println("Node '" + from + "' does not exist!");
+            return;
+        }
+        
+        int target = current.idOf(to);
+        if (target < 0) {
+            System.out.println("Node '" + to + "' does not exist!");
+            return;
+        }
+        
+        int[] route = routeCache.getRoute(version, source, target);
+        String searched = "from cache";
+        if (route == null) {
+            route = routeFinder.route(source, target);
+            routeCache.putRoute(version, source, target, route);
+            searched = "visited " + routeFinder.visitedCount() + " nodes";
+        }
+        
+        if (route.length == 0) {
+            System.out.println("No route from " + from + " to " + to);
+            return;
+        }
+        
+        List<String> names = new ArrayList<>(route.length);
+        for (int id : route) {
+            names.add(current.nameOf(id));
+        }
+        System.out.println("Route : " + String.join(" -> ", names)
+                + " (" + (route.length - 1) + " hops, " + searched + ")");
+    }
 
-        output.append(String.join(" -> ", reachableNodesInOrder));
+    private void findFastestRoute(String from, String to) {
+        GraphSnapshot current = snapshot();
+        int source = current.idOf(from);
+        if (source < 0) {
+            System.out.println("Node '" + from + "' does not exist!");
+            return;
+        }
+        
+        int target = current.idOf(to);
+        if (target < 0) {
+            System.out.println("Node '" + to + "' does not exist!");
+            return;
+        }
+        
+        long dijkstraStart = System.nanoTime();
+        weightedRouter.dijkstra(source, target);
+        long dijkstraTime = System.nanoTime() - dijkstraStart;
+        int dijkstraSettled = weightedRouter.settledCount();
+        
+        long aStarStart = System.nanoTime();
+        int[] route = weightedRouter.aStar(source, target);
+        long aStarTime = System.nanoTime() - aStarStart;
+        
+        if (route.length == 0) {
+            System.out.println("No route from " + from + " to " + to);
+            return;
+        }
+        
+        List<String> names = new ArrayList<>(route.length);
+        for (int id : route) {
+            names.add(current.nameOf(id));
+        }
+        System.out.println("Fastest route : " + String.join(" -> ", names));
+        System.out.printf("Travel time %.1f, distance %.1f (%d hops)%n",
+                weightedRouter.totalTime(), weightedRouter.totalDistance(), route.length - 1);
+        System.out.printf("Dijkstra settled %d nodes in %.3f ms, A* settled %d nodes in %.3f ms%n",
+                dijkstraSettled, dijkstraTime / 1e6, weightedRouter.settledCount(), aStarTime / 1e6);
+    }
 
-        System.out.println(output.toString());
+    private void loadTimetable(Path file) throws IOException {
+        long start = System.nanoTime();
+        Timetable loaded = Timetable.read(file, graph);
+        connectionScan = new ConnectionScan(loaded);
+        System.out.printf("Loaded %d trips with %d connections between %d stations in %.1f ms%n",
+                loaded.tripCount(), loaded.connectionCount(), loaded.stationCount(), (System.nanoTime() - start) / 1e6);
     }
 
-    private List<String> findAllReachableNodesBFS(String start) {
-        List<String> reachableNodesInOrder = new ArrayList<>();
-        Queue<String> queue = new LinkedList<>();
-        Set<String> visited = new HashSet<>();
+    private void findEarliestArrival(String from, String to, int departure) {
+        if (connectionScan == null) {
+            System.out.println("No timetable loaded!");
+            return;
+        }
+        
+        long start = System.nanoTime();
+        Journey journey = connectionScan.earliestArrival(from, to, departure);
+        long time = System.nanoTime() - start;
+        if (journey == null) {
+            System.out.println("No train from " + from + " to " + to + " after " + Timetable.formatTime(departure));
+            return;
+        }
+        
+        for (int i = 0; i < journey.legCount(); i++) {
+            System.out.println(Timetable.formatTime(journey.departure(i)) + " " + journey.boardAt(i)
+                    + " -> " + Timetable.formatTime(journey.arrival(i)) + " " + journey.alightAt(i)
+                    + " (" + journey.trip(i) + ")");
+        }
+        System.out.printf("Arrive %s at %s (%d connections scanned in %.3f ms)%n",
+                to, Timetable.formatTime(journey.arrival()), connectionScan.scannedCount(), time / 1e6);
+    }
 
-        queue.offer(start);
-        visited.add(start);
-        reachableNodesInOrder.add(start);
+    private void findArrivalProfile(String from, String to, int windowStart, int windowEnd) {
+        if (connectionScan == null) {
+            System.out.println("No timetable loaded!");
+            return;
+        }
+        
+        long start = System.nanoTime();
+        ArrivalProfile profile = connectionScan.profile(from, to, windowStart, windowEnd);
+        long time = System.nanoTime() - start;
+        if (profile.size() == 0) {
+            System.out.println("No train from " + from + " to " + to + " after " + Timetable.formatTime(windowStart));
+            return;
+        }
+        
+        for (int i = 0; i < profile.size(); i++) {
+            System.out.println("Leave " + Timetable.formatTime(profile.departure(i))
+                    + ", arrive " + Timetable.formatTime(profile.arrival(i)));
+        }
+        System.out.printf("%d journeys (%d connections scanned in %.3f ms)%n",
+                profile.size(), connectionScan.scannedCount(), time / 1e6);
+    }
 
-        while (!queue.isEmpty()) {
-            String current = queue.poll();
-            List<String> neighbors = getNeighbors(current);
+    private void findAllReachableNodesParallel(String initialState) {
+        GraphSnapshot current = snapshot();
+        if (!current.containsNode(initialState)) {
+            System.out.println("Initial state '" + initialState + "' does not exist!");
+            return;
+        }
+        
+        long sequentialStart = System.nanoTime();
+        List<String> sequential = current.bfs(initialState);
+        long sequentialTime = System.nanoTime() - sequentialStart;
+        
+        long parallelStart = System.nanoTime();
+        List<String> parallel = parallelBfs.reachable(initialState);
+        long parallelTime = System.nanoTime() - parallelStart;
+        
+        // stations within a level come out in id order, not discovery order
+        System.out.println("Reachable : " + String.join(" -> ", parallel));
+        System.out.printf("Sequential %.3f ms, parallel %.3f ms, speed-up %.2fx (%d nodes, %d levels, %d bottom-up)%n",
+                sequentialTime / 1e6, parallelTime / 1e6, (double) sequentialTime / Math.max(1, parallelTime),
+                sequential.size(), parallelBfs.levelCount(), parallelBfs.bottomUpSteps());
+    }
 
-            for (String neighbor : neighbors) {
-                if (!visited.contains(neighbor)) {
-                    visited.add(neighbor);
-                    queue.offer(neighbor);
-                    reachableNodesInOrder.add(neighbor);
+    private void findReachabilityFromMany(List<String> origins) {
+        GraphSnapshot current = snapshot();
+        for (String origin : origins) {
+            if (!current.containsNode(origin)) {
+                System.out.println("Node '" + origin + "' does not exist!");
+                return;
+            }
+        }
+        
+        boolean withHops = (long) origins.size() * current.idCount() <= MultiSourceBfs.MAX_HOP_CELLS;
+        long batchedStart = System.nanoTime();
+        ReachabilityMatrix matrix = multiSourceBfs.reachable(origins, withHops);
+        long batchedTime = System.nanoTime() - batchedStart;
+        
+        long separateStart = System.nanoTime();
+        for (String origin : origins) {
+            current.bfs(origin);
+        }
+        long separateTime = System.nanoTime() - separateStart;
+        
+        int shown = Math.min(origins.size(), 20);
+        for (int row = 0; row < shown; row++) {
+            String line = origins.get(row) + " : reaches " + matrix.reachableCount(row) + " nodes";
+            if (withHops) {
+                int farthest = 0;
+                for (int id = 0; id < current.idCount(); id++) {
+                    farthest = Math.max(farthest, matrix.hops(row, id));
                 }
+                line += ", farthest " + farthest + " hops away";
+            }
+            System.out.println(line);
+        }
+        if (shown < origins.size()) {
+            System.out.println("... and " + (origins.size() - shown) + " more");
+        }
+        System.out.printf("Batched %.3f ms, one BFS per node %.3f ms, speed-up %.2fx (%d starting nodes%s)%n",
+                batchedTime / 1e6, separateTime / 1e6, (double) separateTime / Math.max(1, batchedTime),
+                origins.size(), withHops ? ", with hop counts" : "");
+    }
+
+    /**
+     * Lists the nodes and edges whose closure disconnects the graph, worst
+     * first, then the nodes on the most shortest paths, estimated from
+     * {@code samples} starting nodes on a large graph.
+     */
+    private void findCriticalNodes(int samples) {
+        GraphSnapshot current = snapshot();
+        NetworkCriticality criticality = new NetworkCriticality(current);
+        long cutsStart = System.nanoTime();
+        NetworkCuts cuts = criticality.cuts();
+        long cutsTime = System.nanoTime() - cutsStart;
+        
+        System.out.println("Nodes whose closure disconnects the graph:");
+        int shown = Math.min(cuts.articulationPointCount(), CRITICAL_SHOWN);
+        for (int i = 0; i < shown; i++) {
+            System.out.println(current.nameOf(cuts.articulationPoint(i)) + " : cuts off "
+                    + cuts.articulationPointCutOff(i) + " nodes");
+        }
+        if (shown < cuts.articulationPointCount()) {
+            System.out.println("... and " + (cuts.articulationPointCount() - shown) + " more");
+        }
+        System.out.println("Edges whose closure disconnects the graph:");
+        shown = Math.min(cuts.bridgeCount(), CRITICAL_SHOWN);
+        for (int i = 0; i < shown; i++) {
+            System.out.println(current.nameOf(cuts.bridgeFrom(i)) + " - " + current.nameOf(cuts.bridgeTo(i))
+                    + " : cuts off " + cuts.bridgeCutOff(i) + " nodes");
+        }
+        if (shown < cuts.bridgeCount()) {
+            System.out.println("... and " + (cuts.bridgeCount() - shown) + " more");
+        }
+        System.out.printf("%d critical nodes, %d critical edges (%.3f ms)%n",
+                cuts.articulationPointCount(), cuts.bridgeCount(), cutsTime / 1e6);
+        
+        long betweennessStart = System.nanoTime();
+        double[] scores = criticality.betweenness(samples, BETWEENNESS_SEED);
+        long betweennessTime = System.nanoTime() - betweennessStart;
+        System.out.println("Nodes on the most shortest paths:");
+        for (int id : criticality.highest(scores, CRITICAL_SHOWN)) {
+            System.out.printf("%s : betweenness %.1f%n", current.nameOf(id), scores[id]);
+        }
+        System.out.printf("Betweenness %s in %.3f ms%n", samples < current.nodeCount()
+                ? "estimated from " + samples + " of " + current.nodeCount() + " nodes" : "over all nodes",
+                betweennessTime / 1e6);
+    }
+
+    private void checkConnected(String node1Name, String node2Name) {
+        // the index is updated under the graph's lock, by whichever thread is editing
+        synchronized (graph) {
+            if (!graph.containsNode(node1Name)) {
+                System.out.println("Node '" + node1Name + "' does not exist!");
+                return;
+            }
+            
+            if (!graph.containsNode(node2Name)) {
+                System.out.println("Node '" + node2Name + "' does not exist!");
+                return;
             }
+            
+            if (connectivity.connected(node1Name, node2Name)) {
+                System.out.println(node1Name + " and " + node2Name + " are connected (component of "
+                        + connectivity.componentSize(node1Name) + " nodes)");
+            } else {
+                System.out.println(node1Name + " and " + node2Name + " are not connected ("
+                        + connectivity.componentSize(node1Name) + " and " + connectivity.componentSize(node2Name) + " nodes)");
+            }
+            System.out.println("Components in graph: " + connectivity.componentCount());
+        }
+    }
+
+    private void importEdgeList(Path file) throws IOException {
+        long start = System.nanoTime();
+        EdgeListImporter importer = new EdgeListImporter();
+        importer.load(file, graph);
+        System.out.printf("Imported %d nodes and %d edges in %.1f ms (%d lines skipped)%n",
+                importer.nodeCount(), importer.edgeCount(), (System.nanoTime() - start) / 1e6, importer.skippedLines());
+    }
+    
+    private void saveSnapshot(Path file) throws IOException {
+        long start = System.nanoTime();
+        int nodeCount;
+        int edgeCount;
+        // hold off the server's edits, as a journal checkpoint does, so the file is not torn
+        synchronized (graph) {
+            GraphBinaryFormat.write(graph, file);
+            nodeCount = graph.nodeCount();
+            edgeCount = graph.edgeCount();
         }
+        System.out.printf("Saved %d nodes and %d edges in %.1f ms%n",
+                nodeCount, edgeCount, (System.nanoTime() - start) / 1e6);
+    }
+    
+    private void loadSnapshot(Path file) throws IOException {
+        long start = System.nanoTime();
+        GraphBinaryFormat.read(file, graph);
+        System.out.printf("Loaded %d nodes and %d edges in %.1f ms%n",
+                graph.nodeCount(), graph.edgeCount(), (System.nanoTime() - start) / 1e6);
+    }
 
-        return reachableNodesInOrder;
+    private List<String> readBatchLines() {
+        System.out.println("add-node,NAME[,X,Y] | remove-node,NAME | move-node,NAME,X,Y | add-edge,NAME1,NAME2 | remove-edge,NAME1,NAME2");
+        List<String> lines = new ArrayList<>();
+        while (scanner.hasNextLine()) {
+            String line = scanner.nextLine();
+            if (line.trim().isEmpty()) {
+                break;
+            }
+            lines.add(line);
+        }
+        commandStart = Metrics.start();
+        return lines;
     }
     
-    private List<String> getNeighbors(String nodeName) {
-        List<String> neighbors = new ArrayList<>();
-        
-        for (EdgeView edge : edges) {
-            if (edge.node1Name.equals(nodeName)) {
-                neighbors.add(edge.node2Name);
-            } else if (edge.node2Name.equals(nodeName)) {
-                neighbors.add(edge.node1Name);
+    private void runBatch(List<String> lines) throws IOException {
+        GraphBatch batch = GraphBatch.parse(lines);
+        for (String name : batch.addedNodeNames()) {
+            double requiredRadius = requiredRadius(name);
+            if (requiredRadius > globalRadius) {
+                globalRadius = requiredRadius;
+                placer.setRadius(globalRadius);
+                updateAllNodeRadii();
             }
         }
         
-        return neighbors;
+        long start = System.nanoTime();
+        BatchResult result = graph.apply(batch, placer);
+        commit();
+        System.out.printf("Batch of %d edits: %d applied, %d failed in %.1f ms%n",
+                result.size(), result.appliedCount(), result.failedCount(), (System.nanoTime() - start) / 1e6);
+        int shown = 0;
+        for (int i = 0; i < result.size() && shown < 10; i++) {
+            if (result.result(i) != MutationResult.OK) {
+                System.out.println("  edit " + (i + 1) + ": " + result.result(i));
+                shown++;
+            }
+        }
     }
     
+    private void toggleServer() throws IOException {
+        if (server != null) {
+            stopServer();
+            System.out.println("Query server stopped");
+            return;
+        }
+        System.out.print("Enter port (empty for " + DEFAULT_SERVER_PORT + "): ");
+        String port = readLine();
+        RouteServer started = new RouteServer(graph, placer, journal, routeCache);
+        started.start(port.isEmpty() ? DEFAULT_SERVER_PORT : Integer.parseInt(port));
+        server = started;
+        System.out.println("Query server listening on localhost:" + server.port());
+    }
+    
+    private void stopServer() {
+        if (server == null) {
+            return;
+        }
+        try {
+            server.close();
+        } catch (IOException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+        server = null;
+    }
+    
+    private void toggleLayout() throws IOException {
+        if (!layout.isRunning()) {
+            layout.start();
+            System.out.println("Auto-layout started on " + graph.nodeCount() + " nodes (enter 14 again to stop)");
+            return;
+        }
+        layout.stop();
+        commit();
+        System.out.println("Auto-layout stopped after " + layout.iterations() + " iterations, positions saved");
+    }
+    
+    /**
+     * Called on the layout thread. Only the newest frame is kept, and a
+     * scene update is posted only when none is pending, so a busy FX thread
+     * just sees fewer frames.
+     */
+    private void showLayoutFrame(ForceLayout.Frame frame) {
+        if (headless) {
+            return;
+        }
+        if (pendingFrame.getAndSet(frame) == null) {
+            Platform.runLater(() -> {
+                ForceLayout.Frame latest = pendingFrame.getAndSet(null);
+                for (int id = 0; id < latest.names.length && id < latest.xs.length; id++) {
+                    NodeView nodeView = nodes.get(id);
+                    // a frame from before a reload may name another station under this id
+                    if (nodeView != null && latest.names[id] != null && latest.names[id].equals(nodeView.name)) {
+                        nodeView.moveTo(latest.xs[id], latest.ys[id]);
+                    }
+                }
+                updateEdgeEndpoints(null);
+                canvas.markAllDirty();
+            });
+        }
+    }
+    
+    /** Redraws the edges touching {@code movedNodes}, or every edge when it is null. */
+    private void updateEdgeEndpoints(BitSet movedNodes) {
+        for (EdgeView edge : edges) {
+            if (movedNodes != null && !movedNodes.get(edge.node1) && !movedNodes.get(edge.node2)) {
+                continue;
+            }
+            NodeView from = nodes.get(edge.node1);
+            NodeView to = nodes.get(edge.node2);
+            if (from != null && to != null) {
+                edge.setEndpoints(from.x, from.y, to.x, to.y);
+            }
+        }
+    }
+
+    /**
+     * The latest snapshot, with the searchers bound to it. Queries read only
+     * this, never the live graph, which the server's threads may be editing.
+     */
+    private GraphSnapshot snapshot() {
+        GraphSnapshot latest = graph.snapshot();
+        if (latest != searched) {
+            searched = latest;
+            routeFinder = new RouteFinder(latest);
+            weightedRouter = new WeightedRouter(latest);
+            parallelBfs = new ParallelBfs(latest);
+            multiSourceBfs = new MultiSourceBfs(latest);
+        }
+        return latest;
+    }
     
     private void printCurrentGraph() {
+        GraphSnapshot current = snapshot();
         System.out.println("\n" + "=".repeat(50));
         System.out.println("CURRENT GRAPH STATUS");
         System.out.println("=".repeat(50));
         
-        if (nodes.isEmpty()) {
+        if (current.nodeCount() == 0) {
             System.out.println("No nodes in graph");
         } else {
-            System.out.println("Nodes (" + nodes.size() + "): " + String.join(", ", nodes.keySet()));
+            System.out.println("Nodes (" + current.nodeCount() + "): " + String.join(", ", current.nodeNames()));
         }
         
-        if (!edges.isEmpty()) {
-            System.out.println("\nEdges (" + edges.size() + "):");
-            for (EdgeView edge : edges) {
-                System.out.println("  " + edge.node1Name + " <-> " + edge.node2Name);
+        if (current.edgeCount() > 0) {
+            System.out.println("\nEdges (" + current.edgeCount() + "):");
+            for (int a = 0; a < current.idCount(); a++) {
+                int[] row = current.neighbors(a);
+                for (int i = 0; i < current.degree(a); i++) {
+                    if (a < row[i]) {
+                        System.out.printf("  %s <-> %s (time %.1f, distance %.1f)%n", current.nameOf(a), current.nameOf(row[i]),
+                                current.travelTimes(a)[i], current.distances(a)[i]);
+                    }
+                }
             }
         } else {
             System.out.println("\nNo edges in graph");
         }
     }
 
-    private void createNode(String name) {
-        if (nodes.containsKey(name)) {
+    private void createNode(String name) throws IOException {
+        if (graph.snapshot().containsNode(name)) {
             System.out.println("Node '" + name + "' already exists!");
             return;
         }
         
-        Text tempText = new Text(name);
-        double textWidth = tempText.getBoundsInLocal().getWidth();
-        double requiredRadius = Math.max(25, textWidth / 2 + 10);
+        double requiredRadius = requiredRadius(name);
         
         if (requiredRadius > globalRadius) {
             globalRadius = requiredRadius;
+            placer.setRadius(globalRadius);
             updateAllNodeRadii();
         }
 
-        double x, y;
-        boolean validPosition = false;
-        int attempts = 0;
-        double margin = globalRadius + 20;
-
-        do {
-            x = margin + random.nextDouble() * (graphPane.getPrefWidth() - 2 * margin);
-            y = margin + random.nextDouble() * (graphPane.getPrefHeight() - 2 * margin);
-            validPosition = isValidNodePosition(x, y);
-            attempts++;
-        } while (!validPosition && attempts < 200);
-
-        if (!validPosition) {
-            double[] gridPosition = findGridPosition();
-            x = gridPosition[0];
-            y = gridPosition[1];
+        // placed inside the graph's lock, so a concurrent server edit cannot take the same spot
+        if (graph.apply(new GraphBatch().addNode(name), placer).result(0) == MutationResult.NODE_EXISTS) {
+            System.out.println("Node '" + name + "' already exists!");
+            return;
         }
-        
-        NodeView nodeView = new NodeView(name, x, y, globalRadius);
-        nodeView.addToPane(graphPane);
-        nodes.put(name, nodeView);
+        commit();
         
         System.out.println("Created node: " + name);
     }
     
-    private boolean isValidNodePosition(double x, double y) {
-        for (NodeView existingNode : nodes.values()) {
-            double distance = Math.sqrt(Math.pow(x - existingNode.x, 2) + Math.pow(y - existingNode.y, 2));
-            if (distance < MIN_NODE_DISTANCE) {
-                return false;
-            }
-        }
-        
-        for (EdgeView edge : edges) {
-            double distanceToEdge = distanceFromPointToLine(x, y, 
-                edge.line.getStartX(), edge.line.getStartY(),
-                edge.line.getEndX(), edge.line.getEndY());
-            if (distanceToEdge < globalRadius + 10) {
-                return false;
-            }
+    private double requiredRadius(String name) {
+        if (headless) {
+            return 25;
         }
-        
-        return true;
+        Text tempText = new Text(name);
+        double textWidth = tempText.getBoundsInLocal().getWidth();
+        return Math.max(25, textWidth / 2 + 10);
     }
     
-    private double distanceFromPointToLine(double px, double py, double x1, double y1, double x2, double y2) {
-        double A = px - x1;
-        double B = py - y1;
-        double C = x2 - x1;
-        double D = y2 - y1;
-        
-        double dot = A * C + B * D;
-        double lenSq = C * C + D * D;
-        
-        if (lenSq == 0) {
-            return Math.sqrt(A * A + B * B);
-        }
-        
-        double param = dot / lenSq;
-        
-        double xx, yy;
-        if (param < 0) {
-            xx = x1;
-            yy = y1;
-        } else if (param > 1) {
-            xx = x2;
-            yy = y2;
-        } else {
-            xx = x1 + param * C;
-            yy = y1 + param * D;
+    private void deleteNode(String name) throws IOException {
+        if (graph.removeNode(name) == MutationResult.NODE_NOT_FOUND) {
+            System.out.println("Node '" + name + "' does not exist!");
+            return;
         }
+        commit();
         
-        double dx = px - xx;
-        double dy = py - yy;
-        return Math.sqrt(dx * dx + dy * dy);
+        System.out.println("Deleted node: " + name);
     }
     
-    private double[] findGridPosition() {
-        double margin = globalRadius + 20;
-        double spacing = MIN_NODE_DISTANCE;
-        int cols = (int)((graphPane.getPrefWidth() - 2 * margin) / spacing);
-        int rows = (int)((graphPane.getPrefHeight() - 2 * margin) / spacing);
-        
-        for (int row = 0; row < rows; row++) {
-            for (int col = 0; col < cols; col++) {
-                double x = margin + col * spacing;
-                double y = margin + row * spacing;
-                
-                if (isValidNodePosition(x, y)) {
-                    return new double[]{x, y};
-                }
+    private String readLine() {
+        String line = scanner.nextLine().trim();
+        commandStart = Metrics.start();
+        return line;
+    }
+    
+    private void showStatistics() {
+        if (!Metrics.enabled()) {
+            Metrics.setEnabled(true);
+            System.out.println("Started collecting statistics (enter 19 again to show them)");
+            return;
+        }
+        System.out.printf("%-28s %8s %10s %10s %10s %10s %10s%n", "Operation (ms)", "count", "mean", "p50", "p99", "p99.9", "max");
+        for (LatencyHistogram histogram : Metrics.histograms()) {
+            if (histogram.count() == 0) {
+                continue;
             }
+            System.out.printf("%-28s %8d %10.3f %10.3f %10.3f %10.3f %10.3f%n", histogram.name(), histogram.count(),
+                    histogram.mean() / 1e6, histogram.valueAtPercentile(50) / 1e6, histogram.valueAtPercentile(99) / 1e6,
+                    histogram.valueAtPercentile(99.9) / 1e6, histogram.max() / 1e6);
+        }
+        for (Map.Entry<String, Long> counter : Metrics.counters().entrySet()) {
+            System.out.printf("%-28s %8d%n", counter.getKey(), counter.getValue());
+        }
+        System.out.printf("Route cache: %d results, hit rate %.1f%% (%d hits, %d misses), %d evicted, %d invalidated%n",
+                routeCache.size(), routeCache.hitRate() * 100, routeCache.hitCount(), routeCache.missCount(),
+                routeCache.evictionCount(), routeCache.invalidationCount());
+        System.out.print("Enter r to reset, off to stop collecting, or nothing to continue: ");
+        String answer = readLine();
+        if (answer.equals("r")) {
+            Metrics.reset();
+            System.out.println("Statistics reset");
+        } else if (answer.equals("off")) {
+            Metrics.setEnabled(false);
+            System.out.println("Stopped collecting statistics");
         }
-
-        double x = margin + random.nextDouble() * (graphPane.getPrefWidth() - 2 * margin);
-        double y = margin + random.nextDouble() * (graphPane.getPrefHeight() - 2 * margin);
-        return new double[]{x, y};
     }
     
-    private void deleteNode(String name) {
-        NodeView nodeView = nodes.get(name);
-        if (nodeView == null) {
-            System.out.println("Node '" + name + "' does not exist!");
-            return;
+    private static int parseLimit(String input) {
+        if (input.isEmpty()) {
+            return BfsTraversal.UNLIMITED;
         }
-        
-        edges.removeIf(edge -> {
-            if (edge.connectsNode(name)) {
-                edge.removeFromPane(graphPane);
-                return true;
+        try {
+            int limit = Integer.parseInt(input);
+            if (limit >= 0) {
+                return limit;
             }
-            return false;
-        });
-        
-        nodeView.removeFromPane(graphPane);
-        nodes.remove(name);
-        
-        System.out.println("Deleted node: " + name);
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Not a limit: " + input);
     }
     
-    private void createEdge(String node1Name, String node2Name) {
-        if (!nodes.containsKey(node1Name)) {
-            System.out.println("Node '" + node1Name + "' does not exist!");
-            return;
+    /** Empty input means "use the default", which the graph spells NaN. */
+    private static double parseWeight(String input) {
+        if (input.isEmpty()) {
+            return Double.NaN;
         }
-        
-        if (!nodes.containsKey(node2Name)) {
-            System.out.println("Node '" + node2Name + "' does not exist!");
+        try {
+            return Double.parseDouble(input);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + input);
+        }
+    }
+    
+    private void createEdge(String node1Name, String node2Name, double travelTime, double distance) throws IOException {
+        // checked by the graph under its lock, since a server edit may add or remove either node meanwhile
+        MutationResult result = graph.addEdge(node1Name, node2Name, travelTime, distance);
+        if (result == MutationResult.NODE_NOT_FOUND) {
+            String missing = graph.snapshot().containsNode(node1Name) ? node2Name : node1Name;
+            System.out.println("Node '" + missing + "' does not exist!");
             return;
         }
         
-        if (node1Name.equals(node2Name)) {
+        if (result == MutationResult.SELF_LOOP) {
             System.out.println("Cannot create edge from node to itself!");
             return;
         }
         
-        for (EdgeView edge : edges) {
-            if (edge.connects(node1Name, node2Name)) {
-                System.out.println("Edge '" + node1Name + " - " + node2Name + "' already exists!");
-                return;
-            }
+        if (result == MutationResult.EDGE_EXISTS) {
+            System.out.println("Edge '" + node1Name + " - " + node2Name + "' already exists!");
+            return;
         }
+        commit();
         
-        NodeView n1 = nodes.get(node1Name);
-        NodeView n2 = nodes.get(node2Name);
-        
-        EdgeView edgeView = new EdgeView(node1Name, node2Name, n1.x, n1.y, n2.x, n2.y);
-        edgeView.addToPane(graphPane);
-        edges.add(edgeView);
-
-        for (NodeView node : nodes.values()) {
-            node.circle.toFront();
-            node.label.toFront();
+        System.out.println("Created edge: " + node1Name + " - " + node2Name);
+    }
+    
+    private void deleteEdge(String node1Name, String node2Name) throws IOException {
+        if (graph.removeEdge(node1Name, node2Name) == MutationResult.EDGE_NOT_FOUND) {
+            System.out.println("Edge '" + node1Name + " - " + node2Name + "' does not exist!");
+            return;
         }
+        commit();
         
-        System.out.println("Created edge: " + node1Name + " - " + node2Name);
+        System.out.println("Deleted edge: " + node1Name + " - " + node2Name);
     }
     
-    private void deleteEdge(String node1Name, String node2Name) {
-        EdgeView toRemove = null;
-        for (EdgeView edge : edges) {
-            if (edge.connects(node1Name, node2Name)) {
-                toRemove = edge;
-                break;
+    private void updateAllNodeRadii() {
+        if (headless) {
+            return;
+        }
+        double radius = globalRadius;
+        Platform.runLater(() -> {
+            for (NodeView node : nodes) {
+                node.updateRadius(radius);
             }
+            canvas.markAllDirty();
+        });
+    }
+    
+    /**
+     * Restores the graph saved in the data directory, falling back to the
+     * preset stations on first start, and journals every later edit there.
+     */
+    private void loadGraph() {
+        Path dataDir = Paths.get(System.getProperty("ets.dataDir", "ets-data"));
+        try {
+            journal = GraphJournal.open(dataDir, graph);
+        } catch (IOException e) {
+            System.out.println("Could not open journal in " + dataDir + ", edits will not be saved: " + e.getMessage());
         }
         
-        if (toRemove == null) {
-            System.out.println("Edge '" + node1Name + " - " + node2Name + "' does not exist!");
+        if (journal == null || !journal.recovered()) {
+            initializePresetGraph();
+            try {
+                commit();
+            } catch (IOException e) {
+                System.out.println("Error: " + e.getMessage());
+            }
             return;
         }
         
-        toRemove.removeFromPane(graphPane);
-        edges.remove(toRemove);
-        
-        System.out.println("Deleted edge: " + node1Name + " - " + node2Name);
+        for (String name : graph.nodeNames()) {
+            globalRadius = Math.max(globalRadius, requiredRadius(name));
+        }
+        placer.setRadius(globalRadius);
+        updateAllNodeRadii();
+        System.out.println("Restored graph with " + graph.nodeCount() + " nodes and " + graph.edgeCount() + " edges from " + dataDir);
     }
     
-    private void updateAllNodeRadii() {
-        for (NodeView node : nodes.values()) {
-            node.updateRadius(globalRadius);
+    /** Returns once the edits made so far are durable. */
+    private void commit() throws IOException {
+        if (journal != null) {
+            journal.sync();
+        }
+    }
+    
+    private void closeJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.out.println("Error: " + e.getMessage());
         }
     }
     
@@ -448,13 +1032,11 @@ public class App extends Application {
         double maxRequiredRadius = 25; 
         
         for (String nodeName : presetNodes) {
-            Text tempText = new Text(nodeName);
-            double textWidth = tempText.getBoundsInLocal().getWidth();
-            double requiredRadius = Math.max(25, textWidth / 2 + 10);
-            maxRequiredRadius = Math.max(maxRequiredRadius, requiredRadius);
+            maxRequiredRadius = Math.max(maxRequiredRadius, requiredRadius(nodeName));
         }
         
         globalRadius = maxRequiredRadius;
+        placer.setRadius(globalRadius);
 
         double[][] positions = {
             {450, 500}, 
@@ -465,35 +1047,253 @@ public class App extends Application {
         };
         
         for (int i = 0; i < presetNodes.length; i++) {
-            String name = presetNodes[i];
-            double x = positions[i][0];
-            double y = positions[i][1];
-            
-            NodeView nodeView = new NodeView(name, x, y, globalRadius);
-            nodeView.addToPane(graphPane);
-            nodes.put(name, nodeView);
+            graph.addNode(presetNodes[i], positions[i][0], positions[i][1]);
         }
         
-        createPresetEdge("Ipoh", "Kampar");
-        createPresetEdge("Ipoh", "Seremban");
-        createPresetEdge("Batu Gajah", "Kuala Lumpur");
-        createPresetEdge("Batu Gajah", "Ipoh");
+        graph.addEdge("Ipoh", "Kampar");
+        graph.addEdge("Ipoh", "Seremban");
+        graph.addEdge("Batu Gajah", "Kuala Lumpur");
+        graph.addEdge("Batu Gajah", "Ipoh");
         
         System.out.println("Initialized preset graph with " + presetNodes.length + " nodes and 4 edges");
     }
     
-    private void createPresetEdge(String node1Name, String node2Name) {
-        NodeView n1 = nodes.get(node1Name);
-        NodeView n2 = nodes.get(node2Name);
+    /**
+     * Mirrors graph changes onto the scene. Events arrive on whichever thread
+     * edited the graph, so everything read from the graph is captured there and
+     * only the scene update itself is posted to the FX thread.
+     */
+    private class ViewUpdater implements GraphListener {
+        
+        // guarded by itself; ids set in pendingMoves have their position in movedXs/movedYs
+        private final BitSet pendingMoves = new BitSet();
+        private double[] movedXs = new double[0];
+        private double[] movedYs = new double[0];
+        private List<Runnable> batchUpdates;
+        private Set<Long> batchEdgeRemovals = new HashSet<>();
+        // outside a batch: removals since the last other update, already posted as one pass; guarded by this
+        private Set<Long> edgeRemovals;
+        
+        /** Runs a scene update on the FX thread, or holds it until the current batch is done. */
+        private void post(Runnable update) {
+            if (batchUpdates == null) {
+                synchronized (this) {
+                    // later removals must come after this update, so they start a pass of their own
+                    edgeRemovals = null;
+                }
+                runOnFxThread(update);
+                return;
+            }
+            if (!batchEdgeRemovals.isEmpty()) {
+                // keep removals ahead of whatever the batch does next
+                flushEdgeRemovals();
+            }
+            batchUpdates.add(update);
+        }
+        
+        private void flushEdgeRemovals() {
+            Set<Long> removals = batchEdgeRemovals;
+            batchEdgeRemovals = new HashSet<>();
+            batchUpdates.add(() -> removeEdgeViews(removals));
+        }
+        
+        private void removeEdgeViews(Set<Long> removals) {
+            edges.removeIf(edge -> {
+                if (removals.contains(edgeKey(edge.node1, edge.node2))) {
+                    canvas.markDirty(edge);
+                    return true;
+                }
+                return false;
+            });
+        }
+        
+        @Override
+        public void batchStarted() {
+            batchUpdates = new ArrayList<>();
+        }
+        
+        @Override
+        public void batchFinished() {
+            if (!batchEdgeRemovals.isEmpty()) {
+                flushEdgeRemovals();
+            }
+            List<Runnable> updates = batchUpdates;
+            batchUpdates = null;
+            if (!updates.isEmpty()) {
+                post(() -> updates.forEach(Runnable::run));
+            }
+        }
+        
+        @Override
+        public void nodeAdded(int id) {
+            String name = graph.nameOf(id);
+            double x = graph.x(id);
+            double y = graph.y(id);
+            double radius = globalRadius;
+            post(() -> {
+                NodeView nodeView = new NodeView(name, x, y, radius);
+                nodes.put(id, nodeView);
+                canvas.markDirty(nodeView);
+            });
+        }
+        
+        @Override
+        public void nodeRemoved(int id) {
+            post(() -> {
+                NodeView nodeView = nodes.remove(id);
+                if (nodeView != null) {
+                    canvas.markDirty(nodeView);
+                }
+            });
+        }
+        
+        @Override
+        public void nodeMoved(int id) {
+            // moves come in bursts when a layout is applied, so collect them
+            // and redraw once
+            boolean schedule;
+            synchronized (pendingMoves) {
+                schedule = pendingMoves.isEmpty();
+                if (id >= movedXs.length) {
+                    int length = Math.max(id + 1, 2 * movedXs.length);
+                    movedXs = Arrays.copyOf(movedXs, length);
+                    movedYs = Arrays.copyOf(movedYs, length);
+                }
+                pendingMoves.set(id);
+                movedXs[id] = graph.x(id);
+                movedYs[id] = graph.y(id);
+            }
+            if (!schedule) {
+                return;
+            }
+            post(() -> {
+                BitSet moves;
+                double[] xs;
+                double[] ys;
+                synchronized (pendingMoves) {
+                    moves = (BitSet) pendingMoves.clone();
+                    xs = Arrays.copyOf(movedXs, moves.length());
+                    ys = Arrays.copyOf(movedYs, moves.length());
+                    pendingMoves.clear();
+                }
+                for (int moved = moves.nextSetBit(0); moved >= 0; moved = moves.nextSetBit(moved + 1)) {
+                    NodeView nodeView = nodes.get(moved);
+                    if (nodeView != null) {
+                        nodeView.moveTo(xs[moved], ys[moved]);
+                    }
+                }
+                updateEdgeEndpoints(moves);
+                canvas.markAllDirty();
+            });
+        }
+        
+        @Override
+        public void edgeAdded(int node1, int node2) {
+            double x1 = graph.x(node1);
+            double y1 = graph.y(node1);
+            double x2 = graph.x(node2);
+            double y2 = graph.y(node2);
+            post(() -> {
+                EdgeView edgeView = new EdgeView(node1, node2, x1, y1, x2, y2);
+                edges.add(edgeView);
+                canvas.markDirty(edgeView);
+            });
+        }
         
-        EdgeView edgeView = new EdgeView(node1Name, node2Name, n1.x, n1.y, n2.x, n2.y);
-        edgeView.addToPane(graphPane);
-        edges.add(edgeView);
+        @Override
+        public void edgeRemoved(int node1, int node2) {
+            if (batchUpdates != null) {
+                // one pass over the edge list for a whole run of removals
+                batchEdgeRemovals.add(edgeKey(node1, node2));
+                return;
+            }
+            // deleting a node removes its edges one by one; take them all off the scene in one pass
+            Set<Long> removals;
+            boolean schedule;
+            synchronized (this) {
+                schedule = edgeRemovals == null;
+                if (schedule) {
+                    edgeRemovals = new HashSet<>();
+                }
+                removals = edgeRemovals;
+                removals.add(edgeKey(node1, node2));
+            }
+            if (!schedule) {
+                return;
+            }
+            runOnFxThread(() -> {
+                synchronized (this) {
+                    // nothing is added to the set once it is no longer current
+                    if (edgeRemovals == removals) {
+                        edgeRemovals = null;
+                    }
+                }
+                removeEdgeViews(removals);
+            });
+        }
         
-        for (NodeView node : nodes.values()) {
-            node.circle.toFront();
-            node.label.toFront();
+        @Override
+        public void graphReloaded() {
+            int idCount = graph.idCount();
+            String[] names = new String[idCount];
+            double[] xs = new double[idCount];
+            double[] ys = new double[idCount];
+            List<int[]> edgeIds = new ArrayList<>(graph.edgeCount());
+            for (int a = 0; a < idCount; a++) {
+                if (!graph.isLive(a)) {
+                    continue;
+                }
+                names[a] = graph.nameOf(a);
+                xs[a] = graph.x(a);
+                ys[a] = graph.y(a);
+                int[] row = graph.neighbors(a);
+                for (int i = 0; i < graph.degree(a); i++) {
+                    if (a < row[i]) {
+                        edgeIds.add(new int[]{a, row[i]});
+                    }
+                }
+            }
+            double radius = globalRadius;
+            runOnFxThread(() -> {
+                nodes.clear();
+                edges.clear();
+                for (int[] edge : edgeIds) {
+                    int a = edge[0];
+                    int b = edge[1];
+                    edges.add(new EdgeView(a, b, xs[a], ys[a], xs[b], ys[b]));
+                }
+                for (int id = 0; id < idCount; id++) {
+                    if (names[id] != null) {
+                        nodes.put(id, new NodeView(names[id], xs[id], ys[id], radius));
+                    }
+                }
+                canvas.zoomToFit();
+            });
+        }
+    }
+    
+    /** Platform.runLater, timing how long the update waits in the FX queue. */
+    private static void runOnFxThread(Runnable update) {
+        long posted = Metrics.start();
+        if (posted == 0) {
+            Platform.runLater(update);
+            return;
         }
+        Platform.runLater(() -> {
+            FX_QUEUE_WAIT.recordSince(posted);
+            update.run();
+        });
+    }
+    
+    private static long edgeKey(int node1, int node2) {
+        return (long) Math.min(node1, node2) << 32 | Math.max(node1, node2);
+    }
+    
+    static void runHeadless() {
+        App app = new App();
+        app.headless = true;
+        app.loadGraph();
+        app.startCLI();
     }
     
     public static void main(String[] args) {
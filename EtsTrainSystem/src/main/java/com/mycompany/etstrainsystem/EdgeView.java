@@ -1,36 +1,31 @@
 package com.mycompany.etstrainsystem;
 
-import javafx.scene.layout.Pane;
-import javafx.scene.paint.Color;
-import javafx.scene.shape.Line;
-
+/**
+ * What {@link GraphCanvas} needs to draw one line. Touched only on the FX
+ * thread.
+ */
 public class EdgeView {
-    public String node1Name, node2Name;
-    public Line line;
-    
-    public EdgeView(String node1Name, String node2Name, double x1, double y1, double x2, double y2) {
-        this.node1Name = node1Name;
-        this.node2Name = node2Name;
-        
-        line = new Line(x1, y1, x2, y2);
-        line.setStroke(Color.BLACK);
-        line.setStrokeWidth(2);
-    }
+    public int node1, node2;
+    public double x1, y1, x2, y2;
     
-    public void addToPane(Pane pane) {
-        pane.getChildren().add(line);
+    public EdgeView(int node1, int node2, double x1, double y1, double x2, double y2) {
+        this.node1 = node1;
+        this.node2 = node2;
+        setEndpoints(x1, y1, x2, y2);
     }
     
-    public void removeFromPane(Pane pane) {
-        pane.getChildren().remove(line);
+    public void setEndpoints(double x1, double y1, double x2, double y2) {
+        this.x1 = x1;
+        this.y1 = y1;
+        this.x2 = x2;
+        this.y2 = y2;
     }
     
-    public boolean connectsNode(String nodeName) {
-        return node1Name.equals(nodeName) || node2Name.equals(nodeName);
+    public boolean connectsNode(int node) {
+        return node1 == node || node2 == node;
     }
     
-    public boolean connects(String n1, String n2) {
-        return (node1Name.equals(n1) && node2Name.equals(n2)) ||
-               (node1Name.equals(n2) && node2Name.equals(n1));
+    public boolean connects(int a, int b) {
+        return (node1 == a && node2 == b) || (node1 == b && node2 == a);
     }
 }
@@ -0,0 +1,228 @@
+package com.mycompany.etstrainsystem;
+
+import java.util.Collection;
+import javafx.animation.AnimationTimer;
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+
+/**
+ * Draws the stations and lines onto a single {@link Canvas} instead of
+ * keeping a scene-graph node per element. Only what intersects the visible
+ * viewport is drawn, and after a local change only the dirty rectangle is
+ * cleared and redrawn. Scrolling zooms around the cursor and dragging pans;
+ * labels are dropped when zoomed out far enough that they would be
+ * unreadable, and tiny stations are drawn as plain squares.
+ *
+ * Every method must be called on the FX thread.
+ */
+public class GraphCanvas extends Pane {
+
+    private static final double MIN_LABEL_RADIUS = 12;
+    private static final double MIN_CIRCLE_RADIUS = 2;
+    private static final double STROKE = 2;
+
+    private final Canvas canvas = new Canvas();
+    private final Iterable<NodeView> nodes;
+    private final Collection<EdgeView> edges;
+    private final Font font = Font.getDefault();
+    private double scale = 1;
+    private double offsetX;
+    private double offsetY;
+    private double dragX;
+    private double dragY;
+
+    private boolean fullyDirty = true;
+    private double dirtyMinX = Double.MAX_VALUE;
+    private double dirtyMinY = Double.MAX_VALUE;
+    private double dirtyMaxX = -Double.MAX_VALUE;
+    private double dirtyMaxY = -Double.MAX_VALUE;
+
+    public GraphCanvas(Iterable<NodeView> nodes, Collection<EdgeView> edges) {
+        this.nodes = nodes;
+        this.edges = edges;
+        getChildren().add(canvas);
+
+        setOnScroll(event -> {
+            double factor = Math.pow(1.0015, event.getDeltaY());
+            double worldX = toWorldX(event.getX());
+            double worldY = toWorldY(event.getY());
+            scale = Math.max(1e-4, Math.min(20, scale * factor));
+            offsetX = worldX - event.getX() / scale;
+            offsetY = worldY - event.getY() / scale;
+            markAllDirty();
+        });
+        setOnMousePressed(event -> {
+            dragX = event.getX();
+            dragY = event.getY();
+        });
+        setOnMouseDragged(event -> {
+            offsetX -= (event.getX() - dragX) / scale;
+            offsetY -= (event.getY() - dragY) / scale;
+            dragX = event.getX();
+            dragY = event.getY();
+            markAllDirty();
+        });
+
+        new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                redraw();
+            }
+        }.start();
+    }
+
+    /** Fits the whole graph into the window. */
+    public void zoomToFit() {
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (NodeView node : nodes) {
+            minX = Math.min(minX, node.x - node.radius);
+            minY = Math.min(minY, node.y - node.radius);
+            maxX = Math.max(maxX, node.x + node.radius);
+            maxY = Math.max(maxY, node.y + node.radius);
+        }
+        if (minX > maxX || getWidth() <= 0 || getHeight() <= 0) {
+            return;
+        }
+        scale = Math.min(1, Math.min(getWidth() / (maxX - minX + 40), getHeight() / (maxY - minY + 40)));
+        offsetX = (minX + maxX) / 2 - getWidth() / 2 / scale;
+        offsetY = (minY + maxY) / 2 - getHeight() / 2 / scale;
+        markAllDirty();
+    }
+
+    public void markDirty(NodeView node) {
+        double extent = node.radius + STROKE;
+        markDirty(node.x - extent, node.y - extent, node.x + extent, node.y + extent);
+    }
+
+    public void markDirty(EdgeView edge) {
+        markDirty(Math.min(edge.x1, edge.x2) - STROKE, Math.min(edge.y1, edge.y2) - STROKE,
+                Math.max(edge.x1, edge.x2) + STROKE, Math.max(edge.y1, edge.y2) + STROKE);
+    }
+
+    /** Schedules the world rectangle for redrawing on the next pulse. */
+    public void markDirty(double minX, double minY, double maxX, double maxY) {
+        dirtyMinX = Math.min(dirtyMinX, minX);
+        dirtyMinY = Math.min(dirtyMinY, minY);
+        dirtyMaxX = Math.max(dirtyMaxX, maxX);
+        dirtyMaxY = Math.max(dirtyMaxY, maxY);
+    }
+
+    public void markAllDirty() {
+        fullyDirty = true;
+    }
+
+    @Override
+    protected void layoutChildren() {
+        if (canvas.getWidth() != getWidth() || canvas.getHeight() != getHeight()) {
+            canvas.setWidth(getWidth());
+            canvas.setHeight(getHeight());
+            markAllDirty();
+        }
+    }
+
+    private void redraw() {
+        double minX;
+        double minY;
+        double maxX;
+        double maxY;
+        if (fullyDirty) {
+            minX = toWorldX(0);
+            minY = toWorldY(0);
+            maxX = toWorldX(canvas.getWidth());
+            maxY = toWorldY(canvas.getHeight());
+        } else if (dirtyMinX <= dirtyMaxX) {
+            // never redraw past the viewport
+            minX = Math.max(dirtyMinX, toWorldX(0));
+            minY = Math.max(dirtyMinY, toWorldY(0));
+            maxX = Math.min(dirtyMaxX, toWorldX(canvas.getWidth()));
+            maxY = Math.min(dirtyMaxY, toWorldY(canvas.getHeight()));
+        } else {
+            return;
+        }
+        fullyDirty = false;
+        dirtyMinX = Double.MAX_VALUE;
+        dirtyMinY = Double.MAX_VALUE;
+        dirtyMaxX = -Double.MAX_VALUE;
+        dirtyMaxY = -Double.MAX_VALUE;
+        if (minX > maxX || minY > maxY) {
+            return;
+        }
+
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        double left = toScreenX(minX);
+        double top = toScreenY(minY);
+        double width = (maxX - minX) * scale;
+        double height = (maxY - minY) * scale;
+        gc.save();
+        gc.beginPath();
+        gc.rect(left, top, width, height);
+        gc.clip();
+        gc.setFill(Color.WHITE);
+        gc.fillRect(left, top, width, height);
+
+        // every line in one path: one stroke call instead of one per edge
+        gc.setStroke(Color.BLACK);
+        gc.setLineWidth(Math.max(0.5, STROKE * Math.min(1, scale)));
+        gc.beginPath();
+        for (EdgeView edge : edges) {
+            if (Math.max(edge.x1, edge.x2) < minX || Math.min(edge.x1, edge.x2) > maxX
+                    || Math.max(edge.y1, edge.y2) < minY || Math.min(edge.y1, edge.y2) > maxY) {
+                continue;
+            }
+            gc.moveTo(toScreenX(edge.x1), toScreenY(edge.y1));
+            gc.lineTo(toScreenX(edge.x2), toScreenY(edge.y2));
+        }
+        gc.stroke();
+
+        gc.setFont(font);
+        gc.setTextAlign(TextAlignment.CENTER);
+        gc.setTextBaseline(VPos.CENTER);
+        gc.setLineWidth(STROKE);
+        for (NodeView node : nodes) {
+            double radius = node.radius;
+            if (node.x + radius < minX || node.x - radius > maxX || node.y + radius < minY || node.y - radius > maxY) {
+                continue;
+            }
+            double x = toScreenX(node.x);
+            double y = toScreenY(node.y);
+            double screenRadius = radius * scale;
+            if (screenRadius < MIN_CIRCLE_RADIUS) {
+                gc.setFill(Color.STEELBLUE);
+                gc.fillRect(x - 1, y - 1, 2, 2);
+                continue;
+            }
+            gc.setFill(Color.LIGHTBLUE);
+            gc.fillOval(x - screenRadius, y - screenRadius, 2 * screenRadius, 2 * screenRadius);
+            gc.strokeOval(x - screenRadius, y - screenRadius, 2 * screenRadius, 2 * screenRadius);
+            if (screenRadius >= MIN_LABEL_RADIUS) {
+                gc.setFill(Color.BLACK);
+                gc.fillText(node.name, x, y, 2 * screenRadius);
+            }
+        }
+        gc.restore();
+    }
+
+    private double toScreenX(double worldX) {
+        return (worldX - offsetX) * scale;
+    }
+
+    private double toScreenY(double worldY) {
+        return (worldY - offsetY) * scale;
+    }
+
+    private double toWorldX(double screenX) {
+        return screenX / scale + offsetX;
+    }
+
+    private double toWorldY(double screenY) {
+        return screenY / scale + offsetY;
+    }
+}
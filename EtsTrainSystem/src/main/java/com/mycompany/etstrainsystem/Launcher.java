@@ -0,0 +1,20 @@
+package com.mycompany.etstrainsystem;
+
+import javafx.application.Application;
+import java.util.Arrays;
+
+/**
+ * Entry point that does not extend {@link Application}, so the java launcher
+ * does not start the FX toolkit before main runs. With {@code --headless} the
+ * CLI runs against the graph engine alone and no display is needed.
+ */
+public class Launcher {
+
+    public static void main(String[] args) {
+        if (Arrays.asList(args).contains("--headless")) {
+            App.runHeadless();
+        } else {
+            Application.launch(App.class, args);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.mycompany.etstrainsystem;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Station views indexed by graph id, so the scene finds a station's view
+ * with an array read rather than a name lookup. Touched only on the FX
+ * thread.
+ */
+public class NodeViewTable implements Iterable<NodeView> {
+
+    private NodeView[] views = new NodeView[16];
+
+    public NodeView get(int id) {
+        return id < views.length ? views[id] : null;
+    }
+
+    public void put(int id, NodeView view) {
+        if (id >= views.length) {
+            views = Arrays.copyOf(views, Math.max(id + 1, views.length * 2));
+        }
+        views[id] = view;
+    }
+
+    public NodeView remove(int id) {
+        NodeView view = get(id);
+        if (view != null) {
+            views[id] = null;
+        }
+        return view;
+    }
+
+    public void clear() {
+        Arrays.fill(views, null);
+    }
+
+    /** Iterates the views in id order, skipping empty slots. */
+    @Override
+    public Iterator<NodeView> iterator() {
+        return new Iterator<NodeView>() {
+            private int next = advance(0);
+
+            private int advance(int id) {
+                while (id < views.length && views[id] == null) {
+                    id++;
+                }
+                return id;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < views.length;
+            }
+
+            @Override
+            public NodeView next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                NodeView view = views[next];
+                next = advance(next + 1);
+                return view;
+            }
+        };
+    }
+}
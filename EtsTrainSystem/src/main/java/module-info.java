@@ -1,4 +1,5 @@
 module com.mycompany.etstrainsystem {
     requires javafx.controls;
+    requires com.mycompany.etstrainsystem.engine;
     exports com.mycompany.etstrainsystem;
 }